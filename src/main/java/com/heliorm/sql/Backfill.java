@@ -0,0 +1,216 @@
+package com.heliorm.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * A column change done in expand, backfill and contract phases, so that no single statement rewrites the whole table
+ * in one transaction.
+ * <p>
+ * A NOT NULL column is added as a nullable column without a default, its default is set, the existing rows are set to
+ * the default in batches, and the NOT NULL constraint is added at the end without blocking writes. A column type change adds a nullable shadow column of the new type, which the
+ * modeller keeps in sync with the column for rows written while the change runs, fills the shadow column from the
+ * column in batches, and then swaps the shadow column in for the column.
+ * <p>
+ * Batches are ranges of the primary key, each committed on its own, sized to the target latency of the options. The
+ * modeller's lag throttle is checked before each batch.
+ */
+final class Backfill {
+
+    private final SqlModeller modeller;
+    private final ModellerSession session;
+    private final BackfillOptions options;
+
+    Backfill(SqlModeller modeller, ModellerSession session, BackfillOptions options) {
+        this.modeller = modeller;
+        this.session = session;
+        this.options = options;
+    }
+
+    /**
+     * Check if a column can be added with a backfill. It must be a NOT NULL column with a default, outside the
+     * primary key, in a table with a primary key.
+     *
+     * @param column The column
+     * @return Can it?
+     */
+    static boolean canAdd(Column column) {
+        return !column.isNullable() && column.getDefault() != null && !column.isKey() && !column.isAutoIncrement()
+                && !getKey(column.getTable()).isEmpty();
+    }
+
+    /**
+     * Check if a column can be modified with a backfill. The change must be a type change of a column outside the
+     * primary key and all indexes, in a table with a primary key. ENUM and SET columns are left to the modeller.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @return Can it?
+     */
+    static boolean canModify(Column current, Column changed) {
+        if (!current.getName().equals(changed.getName()) || current.isKey() || changed.isKey() || changed.isAutoIncrement()
+                || current instanceof EnumColumn || current instanceof SetColumn
+                || changed instanceof EnumColumn || changed instanceof SetColumn) {
+            return false;
+        }
+        for (var index : current.getTable().getIndexes()) {
+            for (var column : index.getColumns()) {
+                if (column.getName().equals(current.getName())) {
+                    return false;
+                }
+            }
+        }
+        return !getKey(current.getTable()).isEmpty();
+    }
+
+    /**
+     * Add a NOT NULL column with a default. The column is added as a nullable column without a default, which both
+     * databases do without touching the existing rows, the default is set, the existing rows are set to the default
+     * in batches, and the NOT NULL constraint is added in a way that allows concurrent writes.
+     *
+     * @param column The column
+     * @throws SQLException Thrown if the change fails
+     */
+    void addColumn(Column column) throws SQLException, SqlModellerException {
+        var table = column.getTable();
+        modeller.executeUpdate(session, table, modeller.makeAddColumnQuery(copyColumn(column, column.getName(), true, null)));
+        modeller.executeUpdate(session, table, modeller.makeSetDefaultQuery(column));
+        var name = modeller.getColumnName(column);
+        fill(table, getKey(table), format("%s = DEFAULT", name), format("%s IS NULL", name));
+        for (var sql : modeller.makeSetNotNullQueries(column)) {
+            modeller.executeUpdate(session, table, sql);
+        }
+    }
+
+    /**
+     * Change the type of a column through a shadow column.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @throws SQLException Thrown if the change fails
+     */
+    void modifyColumn(Column current, Column changed) throws SQLException, SqlModellerException {
+        var table = changed.getTable();
+        var shadow = copyColumn(changed, modeller.makeTempColumnName(session, changed.getName(), "__new"), true, changed.getDefault());
+        modeller.executeUpdate(session, table, modeller.makeAddColumnQuery(shadow));
+        try {
+            for (var sql : modeller.makeBackfillSyncQueries(current, shadow, changed)) {
+                modeller.executeUpdate(session, table, sql);
+            }
+            fill(current.getTable(), getKey(current.getTable()), format("%s = %s", modeller.getColumnName(shadow),
+                    modeller.makeBackfillExpression(modeller.getColumnName(current), changed)), null);
+        } catch (SQLException | SqlModellerException ex) {
+            try {
+                for (var sql : modeller.makeDropBackfillSyncQueries(current, shadow)) {
+                    modeller.executeUpdate(session, table, sql);
+                }
+                modeller.executeUpdate(session, table, modeller.makeDeleteColumnQuery(shadow));
+            } catch (SQLException cleanup) {
+                ex.addSuppressed(cleanup);
+            }
+            throw ex;
+        }
+        modeller.swapBackfillColumn(session, current, shadow, changed);
+    }
+
+    /**
+     * Update the rows of a table in batches of primary key order. The last key of each batch is read first, so that
+     * each update is a bounded range of the primary key. Each batch is committed on its own by auto commit, so this
+     * refuses to run inside a transaction, which it would otherwise commit.
+     *
+     * @param table     The table
+     * @param key       The primary key columns
+     * @param set       The SET clause
+     * @param condition An extra condition on the rows to update, or null
+     * @throws SQLException         Thrown if an update fails
+     * @throws SqlModellerException Thrown if waiting for replicas takes too long
+     */
+    private void fill(Table table, List<Column> key, String set, String condition) throws SQLException, SqlModellerException {
+        var con = session.getConnection();
+        if (!con.getAutoCommit()) {
+            throw new SQLException(format("Can't backfill table '%s' inside a transaction", table.getName()));
+        }
+        var tableName = modeller.getTableName(table);
+        var keyList = key.stream().map(modeller::getColumnName).collect(Collectors.joining(","));
+        var params = key.stream().map(c -> "?").collect(Collectors.joining(","));
+        var after = format("(%s) > (%s)", keyList, params);
+        var upTo = format("(%s) <= (%s)", keyList, params);
+        var size = options.getInitialBatchSize();
+        Object[] lower = null;
+        while (true) {
+            modeller.awaitReplication(session);
+            Object[] upper;
+            try (var stmt = con.prepareStatement(format("SELECT %s FROM %s%s ORDER BY %s LIMIT 1 OFFSET %d",
+                    keyList, tableName, lower == null ? "" : " WHERE " + after, keyList, size - 1))) {
+                bind(stmt, 1, lower);
+                try (var rs = stmt.executeQuery()) {
+                    upper = rs.next() ? readKey(rs, key.size()) : null;
+                }
+            }
+            var where = new ArrayList<String>();
+            if (lower != null) {
+                where.add(after);
+            }
+            if (upper != null) {
+                where.add(upTo);
+            }
+            if (condition != null) {
+                where.add(condition);
+            }
+            var start = System.nanoTime();
+            try (var stmt = con.prepareStatement(format("UPDATE %s SET %s%s", tableName, set,
+                    where.isEmpty() ? "" : " WHERE " + String.join(" AND ", where)))) {
+                bind(stmt, bind(stmt, 1, lower), upper);
+                stmt.executeUpdate();
+            }
+            if (upper == null) {
+                return;
+            }
+            lower = upper;
+            size = options.nextBatchSize(size, Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    private static Object[] readKey(ResultSet rs, int size) throws SQLException {
+        var values = new Object[size];
+        for (int i = 0; i < size; ++i) {
+            values[i] = rs.getObject(i + 1);
+        }
+        return values;
+    }
+
+    private static int bind(PreparedStatement stmt, int idx, Object[] values) throws SQLException {
+        if (values != null) {
+            for (var value : values) {
+                stmt.setObject(idx++, value);
+            }
+        }
+        return idx;
+    }
+
+    private static List<Column> getKey(Table table) {
+        return table.getColumns().stream()
+                .filter(Column::isKey)
+                .toList();
+    }
+
+    /**
+     * Make a copy of a column with another name, nullability and default, outside the primary key.
+     *
+     * @param column   The column
+     * @param name     The name of the copy
+     * @param nullable Is the copy nullable?
+     * @param def      The default of the copy, or null for none
+     * @return The copy
+     */
+    static SqlColumn copyColumn(Column column, String name, boolean nullable, String def) {
+        return SqlColumn.copyOf(column.getTable(), column, name, nullable, def, false);
+    }
+}
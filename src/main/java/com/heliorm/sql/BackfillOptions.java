@@ -0,0 +1,130 @@
+package com.heliorm.sql;
+
+import java.time.Duration;
+
+import static java.lang.String.format;
+
+/**
+ * The options for changing columns with a batched backfill instead of one statement that rewrites the table. Rows
+ * are updated in batches of primary key order, each committed on its own, and the batch size is adjusted after every
+ * batch to bring its duration close to the target latency, staying between the minimum and maximum batch size.
+ * <p>
+ * Options are immutable, each method that changes an option returns new options.
+ */
+public final class BackfillOptions {
+
+    private static final BackfillOptions DEFAULTS = new BackfillOptions(1000, 100, 100000, Duration.ofMillis(500));
+
+    private final int initialBatchSize;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final Duration targetLatency;
+
+    private BackfillOptions(int initialBatchSize, int minBatchSize, int maxBatchSize, Duration targetLatency) {
+        this.initialBatchSize = initialBatchSize;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetLatency = targetLatency;
+    }
+
+    /**
+     * Get the default options. These start with batches of 1000 rows, keep batches between 100 and 100000 rows, and
+     * aim for batches of 500ms.
+     *
+     * @return The options
+     */
+    public static BackfillOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Set the number of rows in the first batch.
+     *
+     * @param initialBatchSize The number of rows
+     * @return The new options
+     */
+    public BackfillOptions withInitialBatchSize(int initialBatchSize) {
+        if (initialBatchSize < 1) {
+            throw new IllegalArgumentException(format("Invalid initial batch size %d", initialBatchSize));
+        }
+        return new BackfillOptions(initialBatchSize, minBatchSize, maxBatchSize, targetLatency);
+    }
+
+    /**
+     * Set the smallest and largest number of rows in a batch.
+     *
+     * @param minBatchSize The smallest number of rows
+     * @param maxBatchSize The largest number of rows
+     * @return The new options
+     */
+    public BackfillOptions withBatchSizeLimits(int minBatchSize, int maxBatchSize) {
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize) {
+            throw new IllegalArgumentException(format("Invalid batch size limits %d to %d", minBatchSize, maxBatchSize));
+        }
+        return new BackfillOptions(initialBatchSize, minBatchSize, maxBatchSize, targetLatency);
+    }
+
+    /**
+     * Set the time each batch should take.
+     *
+     * @param targetLatency The time
+     * @return The new options
+     */
+    public BackfillOptions withTargetLatency(Duration targetLatency) {
+        if (targetLatency.isNegative() || targetLatency.isZero()) {
+            throw new IllegalArgumentException(format("Invalid target latency %s", targetLatency));
+        }
+        return new BackfillOptions(initialBatchSize, minBatchSize, maxBatchSize, targetLatency);
+    }
+
+    /**
+     * Get the number of rows in the first batch.
+     *
+     * @return The number of rows
+     */
+    public int getInitialBatchSize() {
+        return Math.clamp(initialBatchSize, minBatchSize, maxBatchSize);
+    }
+
+    /**
+     * Get the smallest number of rows in a batch.
+     *
+     * @return The number of rows
+     */
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    /**
+     * Get the largest number of rows in a batch.
+     *
+     * @return The number of rows
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Get the time each batch should take.
+     *
+     * @return The time
+     */
+    public Duration getTargetLatency() {
+        return targetLatency;
+    }
+
+    /**
+     * Work out the size of the next batch from the size and duration of the last one. The size changes in proportion
+     * to how far the duration was from the target, but at most halves or doubles from one batch to the next.
+     *
+     * @param size     The size of the last batch
+     * @param duration The duration of the last batch
+     * @return The size of the next batch
+     */
+    int nextBatchSize(int size, Duration duration) {
+        var nanos = Math.max(duration.toNanos(), 1);
+        var scaled = (long) (size * ((double) targetLatency.toNanos() / nanos));
+        scaled = Math.clamp(scaled, size / 2, (long) size * 2);
+        return Math.clamp(scaled, minBatchSize, maxBatchSize);
+    }
+}
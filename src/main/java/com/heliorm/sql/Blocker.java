@@ -0,0 +1,23 @@
+package com.heliorm.sql;
+
+import java.time.Duration;
+
+import static java.lang.String.format;
+
+/**
+ * A session that holds locks on a table, which a DDL statement on the table would have to wait for.
+ *
+ * @param id    The id of the session, the connection id on MySQL and the backend pid on PostgreSQL
+ * @param user  The user the session is connected as
+ * @param state The state of the session, like 'idle in transaction'
+ * @param age   How long the session's transaction, or its current statement if it has no transaction, has run
+ * @param query The last statement the session ran, if known
+ */
+public record Blocker(long id, String user, String state, Duration age, String query) {
+
+    @Override
+    public String toString() {
+        return format("session %d (%s, %s for %s%s)", id, user, state, age,
+                query == null ? "" : ": " + query);
+    }
+}
@@ -0,0 +1,140 @@
+package com.heliorm.sql;
+
+import java.time.Duration;
+
+import static java.lang.String.format;
+
+/**
+ * The policy for DDL on a table that other sessions hold locks on. Before a DDL statement is run outside a
+ * transaction, the modeller looks for sessions that hold locks on the table with a transaction, or statement, that
+ * has run for at least the minimum age. Such a session would hold the statement up, and with it every query on the
+ * table queued behind the statement's lock request. Depending on the action, the modeller then waits for the
+ * blockers to go away, skips the change of the table, or aborts it.
+ * <p>
+ * Options are immutable, each method that changes an option returns new options.
+ */
+public final class BlockerPolicy {
+
+    /**
+     * What to do about a table that is blocked.
+     */
+    public enum Action {
+        /**
+         * Wait until the table is no longer blocked, checking every check interval, and abort if it is still blocked
+         * after the maximum wait.
+         */
+        WAIT,
+        /**
+         * Leave the table unchanged. A table is only skipped before any of a migration plan's changes to it are
+         * applied. Once some of them are, a blocked statement is aborted, so that the table is not left half changed
+         * without the caller knowing.
+         */
+        SKIP,
+        /**
+         * Fail with a retryable SqlModellerException.
+         */
+        ABORT
+    }
+
+    private final Action action;
+    private final Duration minAge;
+    private final Duration checkInterval;
+    private final Duration maxWait;
+
+    private BlockerPolicy(Action action, Duration minAge, Duration checkInterval, Duration maxWait) {
+        this.action = action;
+        this.minAge = minAge;
+        this.checkInterval = checkInterval;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Create a policy with an action. Sessions whose transaction has run for 10s or more count as blockers, and
+     * waiting checks every second for up to 5 minutes.
+     *
+     * @param action The action
+     * @return The policy
+     */
+    public static BlockerPolicy of(Action action) {
+        if (action == null) {
+            throw new IllegalArgumentException("Invalid action null");
+        }
+        return new BlockerPolicy(action, Duration.ofSeconds(10), Duration.ofSeconds(1), Duration.ofMinutes(5));
+    }
+
+    /**
+     * Set how long a session's transaction must have run for the session to count as a blocker. Shorter transactions
+     * are left to finish while the statement waits for its locks.
+     *
+     * @param minAge The time
+     * @return The new policy
+     */
+    public BlockerPolicy withMinAge(Duration minAge) {
+        if (minAge.isNegative()) {
+            throw new IllegalArgumentException(format("Invalid minimum age %s", minAge));
+        }
+        return new BlockerPolicy(action, minAge, checkInterval, maxWait);
+    }
+
+    /**
+     * Set the time between checks while waiting for blockers to go away.
+     *
+     * @param checkInterval The time
+     * @return The new policy
+     */
+    public BlockerPolicy withCheckInterval(Duration checkInterval) {
+        if (checkInterval.isNegative() || checkInterval.isZero()) {
+            throw new IllegalArgumentException(format("Invalid check interval %s", checkInterval));
+        }
+        return new BlockerPolicy(action, minAge, checkInterval, maxWait);
+    }
+
+    /**
+     * Set the longest time to wait for blockers to go away before aborting.
+     *
+     * @param maxWait The time
+     * @return The new policy
+     */
+    public BlockerPolicy withMaxWait(Duration maxWait) {
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException(format("Invalid maximum wait %s", maxWait));
+        }
+        return new BlockerPolicy(action, minAge, checkInterval, maxWait);
+    }
+
+    /**
+     * Get what to do about a table that is blocked.
+     *
+     * @return The action
+     */
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * Get how long a session's transaction must have run for the session to count as a blocker.
+     *
+     * @return The time
+     */
+    public Duration getMinAge() {
+        return minAge;
+    }
+
+    /**
+     * Get the time between checks while waiting for blockers to go away.
+     *
+     * @return The time
+     */
+    public Duration getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * Get the longest time to wait for blockers to go away before aborting.
+     *
+     * @return The time
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+}
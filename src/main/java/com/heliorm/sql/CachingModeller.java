@@ -0,0 +1,307 @@
+package com.heliorm.sql;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+
+/**
+ * A caching modeller wraps a modeller and keeps the table and database models it reads, so that repeated reads don't
+ * go to the database catalog. Cached models expire after a time to live, and the least recently used models are
+ * evicted when the cache is full.
+ * <p>
+ * All DDL issued through the wrapped modeller, whether through this class, the modeller itself, a session or a
+ * verifier, invalidates the models of the changed table and its database straight away. Changes made to the database
+ * by other means are only seen once the cached models expire, or after invalidate is called.
+ * <p>
+ * Each read returns its own copy of the cached models, so a caller can't change what other callers are given. A
+ * caching modeller should be closed when it is no longer used, so that the wrapped modeller stops telling it about
+ * changes.
+ * <p>
+ * A caching modeller is thread safe.
+ */
+public final class CachingModeller implements AutoCloseable {
+
+    private final SqlModeller modeller;
+    private final long ttl;
+    private final Map<Key, Entry<Table>> tables;
+    private final Map<String, Entry<Database>> databases;
+    private final Consumer<Table> listener = this::invalidate;
+    private long generation;
+
+    /**
+     * Create a new caching modeller.
+     *
+     * @param modeller The modeller to wrap
+     * @param ttl      The time a model is kept before it is read again
+     * @param maxSize  The maximum number of table models kept
+     */
+    public CachingModeller(SqlModeller modeller, Duration ttl, int maxSize) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException(format("Invalid time to live %s", ttl));
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException(format("Invalid maximum size %d", maxSize));
+        }
+        this.modeller = modeller;
+        this.ttl = ttl.toNanos();
+        this.tables = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry<Table>> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.databases = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<Database>> eldest) {
+                return size() > maxSize;
+            }
+        };
+        modeller.addChangeListener(listener);
+    }
+
+    /**
+     * Read a database from SQL, or from the cache, and return a model for it.
+     *
+     * @param name The name of the database to read
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public Database readDatabase(String name) throws SqlModellerException {
+        long gen;
+        synchronized (this) {
+            var entry = databases.get(name);
+            if (entry != null && entry.isLive()) {
+                return copyOf(entry.model());
+            }
+            gen = generation;
+        }
+        var database = modeller.readDatabase(name);
+        synchronized (this) {
+            if (gen == generation) {
+                databases.put(name, new Entry<>(database, expiry()));
+                for (var table : database.getTables()) {
+                    tables.put(new Key(name, table.getName()), new Entry<>(table, expiry()));
+                }
+            }
+        }
+        return copyOf(database);
+    }
+
+    /**
+     * Read a table from SQL, or from the cache, and return a model for it.
+     *
+     * @param database The database for the table
+     * @param name     The name of the table
+     * @return The table model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public Table readTable(Database database, String name) throws SqlModellerException {
+        var key = new Key(database.getName(), name);
+        long gen;
+        synchronized (this) {
+            var entry = tables.get(key);
+            if (entry != null && entry.isLive()) {
+                return copyOf(entry.model());
+            }
+            gen = generation;
+        }
+        var table = modeller.readTable(database, name);
+        synchronized (this) {
+            if (gen == generation) {
+                tables.put(key, new Entry<>(table, expiry()));
+            }
+        }
+        return copyOf(table);
+    }
+
+    /**
+     * Check if a table exists in SQL. A table with a cached model exists.
+     *
+     * @param table The table
+     * @return Does it exist?
+     * @throws SqlModellerException Thrown if there is a problem
+     */
+    public boolean tableExists(Table table) throws SqlModellerException {
+        synchronized (this) {
+            var entry = tables.get(new Key(table.getDatabase().getName(), table.getName()));
+            if (entry != null && entry.isLive()) {
+                return true;
+            }
+        }
+        return modeller.tableExists(table);
+    }
+
+    /**
+     * Create a table based on a table model.
+     *
+     * @param table The table model
+     * @throws SqlModellerException Thrown if there is a problem creating the table
+     */
+    public void createTable(Table table) throws SqlModellerException {
+        modeller.createTable(table);
+    }
+
+    /**
+     * Delete a table from SQL
+     *
+     * @param table The table model
+     * @throws SqlModellerException Thrown if there is a problem deleting the table
+     */
+    public void deleteTable(Table table) throws SqlModellerException {
+        modeller.deleteTable(table);
+    }
+
+    /**
+     * Add a column to a table.
+     *
+     * @param column The column to add
+     * @throws SqlModellerException Thrown if there is a problem adding the column
+     */
+    public void addColumn(Column column) throws SqlModellerException {
+        modeller.addColumn(column);
+    }
+
+    /**
+     * Rename a column.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem reaming the column
+     */
+    public void renameColumn(Column current, Column changed) throws SqlModellerException {
+        modeller.renameColumn(current, changed);
+    }
+
+    /**
+     * Delete a column from SQL
+     *
+     * @param column The column to delete
+     * @throws SqlModellerException Thrown if there is a problem deleting the column
+     */
+    public void deleteColumn(Column column) throws SqlModellerException {
+        modeller.deleteColumn(column);
+    }
+
+    /**
+     * Modify a column in SQL.
+     *
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem modifying the model
+     */
+    public void modifyColumn(Column changed) throws SqlModellerException {
+        modeller.modifyColumn(changed);
+    }
+
+    /**
+     * Modify a column in SQL.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem modifying the model
+     */
+    public void modifyColumn(Column current, Column changed) throws SqlModellerException {
+        modeller.modifyColumn(current, changed);
+    }
+
+    /**
+     * Add an index to a SQL table.
+     *
+     * @param index The index to add
+     */
+    public void addIndex(Index index) throws SqlModellerException {
+        modeller.addIndex(index);
+    }
+
+    /**
+     * Rename an index on a SQL table.
+     *
+     * @param current The index to modify
+     * @param changed The changed index
+     */
+    public void renameIndex(Index current, Index changed) throws SqlModellerException {
+        modeller.renameIndex(current, changed);
+    }
+
+    /**
+     * Modify an index on a SQL table
+     *
+     * @param index The index to modify
+     */
+    public void modifyIndex(Index index) throws SqlModellerException {
+        modeller.modifyIndex(index);
+    }
+
+    /**
+     * Remove an index from a SQL table.
+     *
+     * @param index The index to remove
+     */
+    public void removeIndex(Index index) throws SqlModellerException {
+        modeller.removeIndex(index);
+    }
+
+    /**
+     * Remove the cached model of a table, and of its database, so that they are read again.
+     *
+     * @param table The table
+     */
+    public synchronized void invalidate(Table table) {
+        var database = table.getDatabase().getName();
+        tables.remove(new Key(database, table.getName()));
+        databases.remove(database);
+        generation++;
+    }
+
+    /**
+     * Remove all cached models.
+     */
+    public synchronized void invalidateAll() {
+        tables.clear();
+        databases.clear();
+        generation++;
+    }
+
+    /**
+     * Stop listening for changes made through the wrapped modeller, and remove all cached models.
+     */
+    @Override
+    public void close() {
+        modeller.removeChangeListener(listener);
+        invalidateAll();
+    }
+
+    /**
+     * Get the modeller wrapped by this caching modeller.
+     *
+     * @return The modeller
+     */
+    public SqlModeller getModeller() {
+        return modeller;
+    }
+
+    private static Table copyOf(Table table) {
+        return table instanceof SqlTable sqlTable ? sqlTable.copyTo(table.getDatabase()) : table;
+    }
+
+    private static Database copyOf(Database database) {
+        return database instanceof SqlDatabase sqlDatabase ? sqlDatabase.copy() : database;
+    }
+
+    private long expiry() {
+        return System.nanoTime() + ttl;
+    }
+
+    private record Key(String database, String table) {
+    }
+
+    private record Entry<T>(T model, long expiry) {
+
+        boolean isLive() {
+            return System.nanoTime() - expiry < 0;
+        }
+    }
+
+}
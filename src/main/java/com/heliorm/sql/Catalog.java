@@ -0,0 +1,103 @@
+package com.heliorm.sql;
+
+import java.sql.JDBCType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The column, key and index definitions of the tables in a database, read from the database catalog with a few set
+ * based queries. Modellers that support bulk reading fill this in, and the table models are then built from it in
+ * memory instead of querying the catalog table by table.
+ */
+public final class Catalog {
+
+    private final Map<String, Entry> tables = new LinkedHashMap<>();
+
+    /**
+     * Add a column definition to a table.
+     *
+     * @param table  The table name
+     * @param column The column definition
+     */
+    public void addColumn(String table, ColumnInfo column) {
+        entry(table).columns.add(column);
+    }
+
+    /**
+     * Mark a column in a table as part of the primary key.
+     *
+     * @param table  The table name
+     * @param column The column name
+     */
+    public void addKey(String table, String column) {
+        entry(table).keys.add(column);
+    }
+
+    /**
+     * Add a column to an index on a table. The index is created when the first column is added.
+     *
+     * @param table  The table name
+     * @param index  The index name
+     * @param column The column name
+     * @param unique Is the index unique?
+     */
+    public void addIndex(String table, String index, String column, boolean unique) {
+        entry(table).indexes.computeIfAbsent(index, k -> new IndexInfo(unique, new ArrayList<>())).columns().add(column);
+    }
+
+    /**
+     * Get the names of the tables in the catalog, in the order they were first added.
+     *
+     * @return The table names
+     */
+    Set<String> getTables() {
+        return tables.keySet();
+    }
+
+    List<ColumnInfo> getColumns(String table) {
+        return tables.get(table).columns;
+    }
+
+    Set<String> getKeys(String table) {
+        return tables.get(table).keys;
+    }
+
+    Map<String, IndexInfo> getIndexes(String table) {
+        return tables.get(table).indexes;
+    }
+
+    private Entry entry(String table) {
+        return tables.computeIfAbsent(table, k -> new Entry());
+    }
+
+    /**
+     * The definition of a column as read from the catalog.
+     *
+     * @param name          The column name
+     * @param jdbcType      The JDBC type of the column
+     * @param typeName      The database specific type name
+     * @param size          The column size (length, precision or bits depending on the type)
+     * @param decimalDigits The number of decimal digits for decimal types
+     * @param nullable      Can the column be null?
+     * @param autoIncrement Is the column auto-incremented?
+     * @param defaultValue  The default value as returned by the database, or null
+     * @param values        The allowed values for ENUM and SET columns, or null if not known
+     */
+    public record ColumnInfo(String name, JDBCType jdbcType, String typeName, int size, int decimalDigits,
+                             boolean nullable, boolean autoIncrement, String defaultValue, Set<String> values) {
+    }
+
+    record IndexInfo(boolean unique, List<String> columns) {
+    }
+
+    private static final class Entry {
+        private final List<ColumnInfo> columns = new ArrayList<>();
+        private final Set<String> keys = new HashSet<>();
+        private final Map<String, IndexInfo> indexes = new LinkedHashMap<>();
+    }
+
+}
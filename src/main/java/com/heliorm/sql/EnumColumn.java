@@ -5,7 +5,9 @@ import java.util.Set;
 /** Column representing an enum */
 public interface EnumColumn extends Column{
 
-    /** Get the allowed enum values.
+    /** Get the allowed enum values. Values are declared in iteration order when a column is created or values are
+     * added, so an ordered set like LinkedHashSet keeps the declaration order. The values are compared as a set, so
+     * the same values in another order are not a change.
      *
      * @return The values
      */
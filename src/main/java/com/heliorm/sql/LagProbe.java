@@ -0,0 +1,22 @@
+package com.heliorm.sql;
+
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * A probe that reads how far the replicas of a database are behind it, so that schema changes and backfills can wait
+ * for them to catch up.
+ */
+@FunctionalInterface
+public interface LagProbe {
+
+    /**
+     * Read the replication lag of the most lagging replica. A replica that is not replicating is infinitely behind,
+     * which is returned as ChronoUnit.FOREVER.getDuration().
+     *
+     * @param session The session the work runs on
+     * @return The lag, or zero if there are no replicas
+     * @throws SQLException Thrown if the lag can't be read
+     */
+    Duration readLag(ModellerSession session) throws SQLException;
+}
@@ -0,0 +1,103 @@
+package com.heliorm.sql;
+
+import java.time.Duration;
+
+import static java.lang.String.format;
+
+/**
+ * A throttle that pauses schema changes and backfills while the replication lag read by a probe is above a maximum.
+ * The lag is read at most once per check interval, and while it is too high the work waits one check interval at a
+ * time until it is back under the maximum, giving up with an error once it has waited for the maximum wait.
+ * <p>
+ * A throttle is immutable, each method that changes an option returns a new throttle.
+ */
+public final class LagThrottle {
+
+    private final LagProbe probe;
+    private final Duration maxLag;
+    private final Duration checkInterval;
+    private final Duration maxWait;
+
+    private LagThrottle(LagProbe probe, Duration maxLag, Duration checkInterval, Duration maxWait) {
+        this.probe = probe;
+        this.maxLag = maxLag;
+        this.checkInterval = checkInterval;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Create a throttle that reads the lag every second, and waits at most 10 minutes at a time.
+     *
+     * @param probe  The lag probe
+     * @param maxLag The largest lag at which work goes on
+     * @return The throttle
+     */
+    public static LagThrottle of(LagProbe probe, Duration maxLag) {
+        if (maxLag.isNegative()) {
+            throw new IllegalArgumentException(format("Invalid maximum lag %s", maxLag));
+        }
+        return new LagThrottle(probe, maxLag, Duration.ofSeconds(1), Duration.ofMinutes(10));
+    }
+
+    /**
+     * Set how often the lag is read.
+     *
+     * @param checkInterval The time between reads
+     * @return The new throttle
+     */
+    public LagThrottle withCheckInterval(Duration checkInterval) {
+        if (checkInterval.isNegative() || checkInterval.isZero()) {
+            throw new IllegalArgumentException(format("Invalid check interval %s", checkInterval));
+        }
+        return new LagThrottle(probe, maxLag, checkInterval, maxWait);
+    }
+
+    /**
+     * Set the longest time work waits for the replicas to catch up before it fails.
+     *
+     * @param maxWait The time
+     * @return The new throttle
+     */
+    public LagThrottle withMaxWait(Duration maxWait) {
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException(format("Invalid maximum wait %s", maxWait));
+        }
+        return new LagThrottle(probe, maxLag, checkInterval, maxWait);
+    }
+
+    /**
+     * Get the lag probe.
+     *
+     * @return The probe
+     */
+    public LagProbe getProbe() {
+        return probe;
+    }
+
+    /**
+     * Get the largest lag at which work goes on.
+     *
+     * @return The lag
+     */
+    public Duration getMaxLag() {
+        return maxLag;
+    }
+
+    /**
+     * Get how often the lag is read.
+     *
+     * @return The time between reads
+     */
+    public Duration getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * Get the longest time work waits for the replicas to catch up before it fails.
+     *
+     * @return The time
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+}
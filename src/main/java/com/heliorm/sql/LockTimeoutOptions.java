@@ -0,0 +1,136 @@
+package com.heliorm.sql;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.lang.String.format;
+
+/**
+ * The options for bounding how long DDL statements wait for locks. Each statement is run with the lock timeout, so
+ * that a statement queued behind a long running transaction gives up instead of blocking every query queued behind
+ * it. A statement that times out waiting for a lock, or is chosen as a deadlock victim, is retried after a jittered
+ * backoff that starts at the initial backoff and doubles up to the maximum backoff, until the deadline has passed.
+ * <p>
+ * Options are immutable, each method that changes an option returns new options.
+ */
+public final class LockTimeoutOptions {
+
+    private static final LockTimeoutOptions DEFAULTS = new LockTimeoutOptions(Duration.ofSeconds(2),
+            Duration.ofMillis(100), Duration.ofSeconds(10), Duration.ofMinutes(5));
+
+    private final Duration lockTimeout;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration deadline;
+
+    private LockTimeoutOptions(Duration lockTimeout, Duration initialBackoff, Duration maxBackoff, Duration deadline) {
+        this.lockTimeout = lockTimeout;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Get the default options. These wait 2s for locks, back off from 100ms up to 10s between attempts, and give up
+     * retrying after 5 minutes.
+     *
+     * @return The options
+     */
+    public static LockTimeoutOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Set the time a statement waits for locks before it fails.
+     *
+     * @param lockTimeout The time
+     * @return The new options
+     */
+    public LockTimeoutOptions withLockTimeout(Duration lockTimeout) {
+        if (lockTimeout.isNegative() || lockTimeout.isZero()) {
+            throw new IllegalArgumentException(format("Invalid lock timeout %s", lockTimeout));
+        }
+        return new LockTimeoutOptions(lockTimeout, initialBackoff, maxBackoff, deadline);
+    }
+
+    /**
+     * Set the shortest and longest time to back off between attempts.
+     *
+     * @param initialBackoff The time before the first retry
+     * @param maxBackoff     The longest time between retries
+     * @return The new options
+     */
+    public LockTimeoutOptions withBackoff(Duration initialBackoff, Duration maxBackoff) {
+        if (initialBackoff.isNegative() || initialBackoff.isZero() || maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException(format("Invalid backoff %s to %s", initialBackoff, maxBackoff));
+        }
+        return new LockTimeoutOptions(lockTimeout, initialBackoff, maxBackoff, deadline);
+    }
+
+    /**
+     * Set the time, from the first attempt, after which a statement is no longer retried.
+     *
+     * @param deadline The time
+     * @return The new options
+     */
+    public LockTimeoutOptions withDeadline(Duration deadline) {
+        if (deadline.isNegative()) {
+            throw new IllegalArgumentException(format("Invalid deadline %s", deadline));
+        }
+        return new LockTimeoutOptions(lockTimeout, initialBackoff, maxBackoff, deadline);
+    }
+
+    /**
+     * Get the time a statement waits for locks before it fails.
+     *
+     * @return The time
+     */
+    public Duration getLockTimeout() {
+        return lockTimeout;
+    }
+
+    /**
+     * Get the time before the first retry.
+     *
+     * @return The time
+     */
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * Get the longest time between retries.
+     *
+     * @return The time
+     */
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * Get the time, from the first attempt, after which a statement is no longer retried.
+     *
+     * @return The time
+     */
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Work out the time to back off before a retry. This is the initial backoff doubled for each earlier retry, up
+     * to the maximum backoff, with a random jitter that takes off up to half of it, so that modellers blocked by the
+     * same transaction don't all retry at once.
+     *
+     * @param retry The number of the retry, starting at 0
+     * @return The time
+     */
+    Duration backoff(int retry) {
+        var nanos = initialBackoff.toNanos();
+        var max = maxBackoff.toNanos();
+        for (int i = 0; i < retry && nanos < max; ++i) {
+            nanos = nanos > max / 2 ? max : nanos * 2;
+        }
+        nanos = Math.min(nanos, max);
+        return Duration.ofNanos(ThreadLocalRandom.current().nextLong(nanos / 2, nanos + 1));
+    }
+}
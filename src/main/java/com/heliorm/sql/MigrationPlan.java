@@ -0,0 +1,223 @@
+package com.heliorm.sql;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * An ordered list of the steps needed to bring a database into sync with a model, as worked out by the verifier
+ * without changing the database. A plan is immutable, and can be inspected, logged and kept before it is applied.
+ */
+public final class MigrationPlan {
+
+    private final List<Step> steps;
+
+    private MigrationPlan(List<Step> steps) {
+        this.steps = List.copyOf(steps);
+    }
+
+    /**
+     * Create a plan from a list of steps, for example to apply a plan that was edited or built by hand.
+     *
+     * @param steps The steps, in the order they are applied
+     * @return The plan
+     */
+    public static MigrationPlan of(List<Step> steps) {
+        if (steps == null) {
+            throw new IllegalArgumentException("Invalid steps null");
+        }
+        for (int i = 0; i < steps.size(); ++i) {
+            if (steps.get(i) == null) {
+                throw new IllegalArgumentException(format("Invalid step null at %d", i));
+            }
+        }
+        return new MigrationPlan(steps);
+    }
+
+    /**
+     * Get the steps of the plan, in the order they are applied.
+     *
+     * @return The steps
+     */
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Check if the plan has no steps, which means the database is in sync with the model.
+     *
+     * @return Is it empty?
+     */
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return steps.stream()
+                .map(step -> step.toAction().getMessage())
+                .collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * A step in a migration plan.
+     */
+    public sealed interface Step {
+
+        /**
+         * Get the table changed by the step.
+         *
+         * @return The table
+         */
+        Table table();
+
+        /**
+         * Get the action reported when the step is applied.
+         *
+         * @return The action
+         */
+        Action toAction();
+    }
+
+    /**
+     * Create a table.
+     *
+     * @param table The table model
+     */
+    public record CreateTable(Table table) implements Step {
+
+        @Override
+        public Action toAction() {
+            return Action.createTable(table);
+        }
+    }
+
+    /**
+     * Add a column to a table.
+     *
+     * @param column The column to add
+     */
+    public record AddColumn(Column column) implements Step {
+
+        @Override
+        public Table table() {
+            return column.getTable();
+        }
+
+        @Override
+        public Action toAction() {
+            return Action.addColumn(column);
+        }
+    }
+
+    /**
+     * Rename a column.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     */
+    public record RenameColumn(Column current, Column changed) implements Step {
+
+        @Override
+        public Table table() {
+            return changed.getTable();
+        }
+
+        @Override
+        public Action toAction() {
+            return Action.renameColumn(current, changed);
+        }
+    }
+
+    /**
+     * Modify a column.
+     *
+     * @param current The current column, or null if only the changed column is known
+     * @param changed The changed column
+     */
+    public record ModifyColumn(Column current, Column changed) implements Step {
+
+        @Override
+        public Table table() {
+            return changed.getTable();
+        }
+
+        @Override
+        public Action toAction() {
+            return Action.modifyColumn(changed);
+        }
+    }
+
+    /**
+     * Delete a column from a table.
+     *
+     * @param column The column to delete
+     */
+    public record DeleteColumn(Column column) implements Step {
+
+        @Override
+        public Table table() {
+            return column.getTable();
+        }
+
+        @Override
+        public Action toAction() {
+            return Action.deleteColumn(column);
+        }
+    }
+
+    /**
+     * Add an index to a table.
+     *
+     * @param index The index to add
+     */
+    public record AddIndex(Index index) implements Step {
+
+        @Override
+        public Table table() {
+            return index.getTable();
+        }
+
+        @Override
+        public Action toAction() {
+            return Action.addIndex(index);
+        }
+    }
+
+    /**
+     * Modify an index on a table.
+     *
+     * @param index The changed index
+     */
+    public record ModifyIndex(Index index) implements Step {
+
+        @Override
+        public Table table() {
+            return index.getTable();
+        }
+
+        @Override
+        public Action toAction() {
+            return Action.modifyIndex(index);
+        }
+    }
+
+    /**
+     * Delete an index from a table.
+     *
+     * @param index The index to delete
+     */
+    public record DeleteIndex(Index index) implements Step {
+
+        @Override
+        public Table table() {
+            return index.getTable();
+        }
+
+        @Override
+        public Action toAction() {
+            return Action.deleteIndex(index);
+        }
+    }
+}
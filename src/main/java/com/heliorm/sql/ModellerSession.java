@@ -0,0 +1,339 @@
+package com.heliorm.sql;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * A modelling session pins one connection from the modeller's connection supplier, so that a whole read or
+ * synchronization pass runs on it instead of taking a connection for every operation. The database meta data and
+ * prepared catalog statements are cached for the life of the session.
+ * <p>
+ * A session is not thread safe, and must be closed to release its connection.
+ */
+public final class ModellerSession implements AutoCloseable {
+
+    private final SqlModeller modeller;
+    private final Connection con;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private DatabaseMetaData metaData;
+    private long lastLagCheck;
+    private ThrottleStats throttleStats = ThrottleStats.NONE;
+    private final List<Table> skippedTables = new ArrayList<>();
+
+    ModellerSession(SqlModeller modeller, Connection con) {
+        this.modeller = modeller;
+        this.con = con;
+    }
+
+    /**
+     * Read a database from SQL and return a model for it.
+     *
+     * @param name The name of the database to read
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public Database readDatabase(String name) throws SqlModellerException {
+        return modeller.readDatabase(this, name);
+    }
+
+    /**
+     * Read the tables selected by a filter from a database in SQL and return a model for them.
+     *
+     * @param name   The name of the database to read
+     * @param filter The table filter
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public Database readDatabaseFiltered(String name, TableFilter filter) throws SqlModellerException {
+        return modeller.readDatabaseFiltered(this, name, filter);
+    }
+
+    /**
+     * Read a database from SQL and return a model for it, reading again only the tables that changed since a
+     * previous model was read.
+     *
+     * @param name     The name of the database to read
+     * @param previous The previous model, or null
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public Database readDatabase(String name, Database previous) throws SqlModellerException {
+        return modeller.readDatabase(this, name, previous);
+    }
+
+    /**
+     * Read a table from SQL and return a model for it.
+     *
+     * @param database The database for the table
+     * @param name     The name of the table
+     * @return The table model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public Table readTable(Database database, String name) throws SqlModellerException {
+        return modeller.readTable(this, database, name);
+    }
+
+    /**
+     * Check if a table exists in SQL
+     *
+     * @param table The table
+     * @return Does it exist?
+     * @throws SqlModellerException Thrown if there is a problem
+     */
+    public boolean tableExists(Table table) throws SqlModellerException {
+        return modeller.tableExists(this, table);
+    }
+
+    /**
+     * Create a table based on a table model.
+     *
+     * @param table The table model
+     * @throws SqlModellerException Thrown if there is a problem creating the table
+     */
+    public void createTable(Table table) throws SqlModellerException {
+        modeller.createTable(this, table);
+    }
+
+    /**
+     * Delete a table from SQL
+     *
+     * @param table The table model
+     * @throws SqlModellerException Thrown if there is a problem deleting the table
+     */
+    public void deleteTable(Table table) throws SqlModellerException {
+        modeller.deleteTable(this, table);
+    }
+
+    /**
+     * Add a column to a table.
+     *
+     * @param column The column to add
+     * @throws SqlModellerException Thrown if there is a problem adding the column
+     */
+    public void addColumn(Column column) throws SqlModellerException {
+        modeller.addColumn(this, column);
+    }
+
+    /**
+     * Rename a column.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem reaming the column
+     */
+    public void renameColumn(Column current, Column changed) throws SqlModellerException {
+        modeller.renameColumn(this, current, changed);
+    }
+
+    /**
+     * Delete a column from SQL
+     *
+     * @param column The column to delete
+     * @throws SqlModellerException Thrown if there is a problem deleting the column
+     */
+    public void deleteColumn(Column column) throws SqlModellerException {
+        modeller.deleteColumn(this, column);
+    }
+
+    /**
+     * Modify a column in SQL.
+     *
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem modifying the model
+     */
+    public void modifyColumn(Column changed) throws SqlModellerException {
+        modeller.modifyColumn(this, changed);
+    }
+
+    /**
+     * Modify a column in SQL.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem modifying the model
+     */
+    public void modifyColumn(Column current, Column changed) throws SqlModellerException {
+        modeller.modifyColumn(this, current, changed);
+    }
+
+    /**
+     * Add an index to a SQL table.
+     *
+     * @param index The index to add
+     */
+    public void addIndex(Index index) throws SqlModellerException {
+        modeller.addIndex(this, index);
+    }
+
+    /**
+     * Rename an index on a SQL table.
+     *
+     * @param current The index to modify
+     * @param changed The changed index
+     */
+    public void renameIndex(Index current, Index changed) throws SqlModellerException {
+        modeller.renameIndex(this, current, changed);
+    }
+
+    /**
+     * Modify an index on a SQL table
+     *
+     * @param index The index to modify
+     */
+    public void modifyIndex(Index index) throws SqlModellerException {
+        modeller.modifyIndex(this, index);
+    }
+
+    /**
+     * Remove an index from a SQL table.
+     *
+     * @param index The index to remove
+     */
+    public void removeIndex(Index index) throws SqlModellerException {
+        modeller.removeIndex(this, index);
+    }
+
+    /**
+     * Apply the steps of a migration plan that change one table, with as few statements as the database allows.
+     * The table is left unchanged if the modeller's blocker policy is to skip blocked tables and other sessions
+     * block it.
+     *
+     * @param table The table
+     * @param steps The steps that change the table
+     * @return True if the steps were applied, false if the table was skipped
+     * @throws SqlModellerException Thrown if there is a problem changing the table
+     */
+    public boolean alterTable(Table table, List<MigrationPlan.Step> steps) throws SqlModellerException {
+        if (modeller.isSkipped(this, table)) {
+            skippedTables.add(table);
+            return false;
+        }
+        modeller.alterTable(this, table, steps);
+        return true;
+    }
+
+    /**
+     * Prepare the database for the synchronization of a set of tables, by creating the objects the tables share or
+     * depend on.
+     *
+     * @param tables The tables that will be synchronized
+     * @throws SqlModellerException Thrown if there is a problem preparing the database
+     */
+    public void prepareTables(Collection<Table> tables) throws SqlModellerException {
+        modeller.prepareTables(this, tables);
+    }
+
+    /**
+     * Get the connection pinned by this session.
+     *
+     * @return The connection
+     */
+    public Connection getConnection() {
+        return con;
+    }
+
+    /**
+     * Get the database meta data for the session's connection. It is read once and cached.
+     *
+     * @return The meta data
+     * @throws SQLException Thrown if the meta data can't be read
+     */
+    public DatabaseMetaData getMetaData() throws SQLException {
+        if (metaData == null) {
+            metaData = con.getMetaData();
+        }
+        return metaData;
+    }
+
+    /**
+     * Get a prepared statement for the given SQL. Statements are prepared once and cached for the life of the
+     * session, so callers must not close them.
+     *
+     * @param sql The SQL
+     * @return The prepared statement
+     * @throws SQLException Thrown if the statement can't be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        var stmt = statements.get(sql);
+        if (stmt == null || stmt.isClosed()) {
+            stmt = con.prepareStatement(sql);
+            statements.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * Get the statistics on how the replication lag throttle held back the work run on this session.
+     *
+     * @return The statistics
+     */
+    public ThrottleStats getThrottleStats() {
+        return throttleStats;
+    }
+
+    /**
+     * Get the tables left unchanged on this session because other sessions blocked them.
+     *
+     * @return The tables
+     */
+    public List<Table> getSkippedTables() {
+        return List.copyOf(skippedTables);
+    }
+
+    /**
+     * Check if the replication lag is due to be read again, and if so note that it is being read now.
+     *
+     * @param interval The time between reads
+     * @return Is it due?
+     */
+    boolean isLagCheckDue(Duration interval) {
+        var now = System.nanoTime();
+        if (throttleStats.checks() > 0 && now - lastLagCheck < interval.toNanos()) {
+            return false;
+        }
+        lastLagCheck = now;
+        return true;
+    }
+
+    /**
+     * Add a lag reading, and the time waited because of it, to the throttle statistics.
+     *
+     * @param lag    The highest lag read
+     * @param waited The time slept waiting for the lag to drop, zero if work went on straight away
+     */
+    void recordLag(Duration lag, Duration waited) {
+        var stats = throttleStats;
+        throttleStats = new ThrottleStats(stats.checks() + 1,
+                stats.pauses() + (waited.isZero() ? 0 : 1),
+                stats.throttled().plus(waited),
+                lag.compareTo(stats.maxLag()) > 0 ? lag : stats.maxLag());
+    }
+
+    /**
+     * Close the session, its cached statements and its connection.
+     *
+     * @throws SqlModellerException Thrown if there is a problem closing the connection
+     */
+    @Override
+    public void close() throws SqlModellerException {
+        try (con) {
+            for (var stmt : statements.values()) {
+                stmt.close();
+            }
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error closing session (%s)", ex.getMessage()), ex);
+        } finally {
+            statements.clear();
+        }
+    }
+}
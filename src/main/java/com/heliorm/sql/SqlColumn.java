@@ -26,6 +26,35 @@ abstract class SqlColumn implements Column {
         this.defaultValue = defaultValue;
     }
 
+    /**
+     * Make a copy of a column, with another name, nullability and default, in a table. The copy is not part of the
+     * primary key.
+     *
+     * @param table         The table of the copy
+     * @param column        The column
+     * @param name          The name of the copy
+     * @param nullable      Is the copy nullable?
+     * @param def           The default of the copy, or null for none
+     * @param autoIncrement Is the copy auto increment, if it is an integer column?
+     * @return The copy
+     */
+    static SqlColumn copyOf(Table table, Column column, String name, boolean nullable, String def, boolean autoIncrement) {
+        var type = column.getJdbcType();
+        return switch (column) {
+            case EnumColumn c -> new SqlEnumColumn(table, name, nullable, def, c.getEnumValues());
+            case SetColumn c -> new SqlSetColumn(table, name, nullable, def, c.getSetValues());
+            case StringColumn c -> new SqlStringColumn(table, name, type, nullable, def, c.getLength());
+            case BinaryColumn c -> new SqlBinaryColumn(table, name, type, nullable, def, c.getLength());
+            case DecimalColumn c -> new SqlDecimalColumn(table, name, type, nullable, def, c.getPrecision(), c.getScale());
+            case BitColumn c -> new SqlBitColumn(table, name, nullable, def, c.getBits());
+            case BooleanColumn ignored -> new SqlBooleanColumn(table, name, nullable, def);
+            case DateTimeColumn ignored -> new SqlDateTimeColumn(table, name, type, nullable, def);
+            case TimeStampColumn ignored -> new SqlTimeStampColumn(table, name, type, nullable, def);
+            case DoubleColumn ignored -> new SqlDoubleColumn(table, name, type, nullable, def);
+            default -> new SqlIntegerColumn(table, name, type, nullable, def, autoIncrement);
+        };
+    }
+
     void setKey(boolean key) {
         this.key = key;
     }
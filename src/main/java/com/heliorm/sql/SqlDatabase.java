@@ -1,15 +1,18 @@
 package com.heliorm.sql;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-/** Implementation of Database that is populated by reading from SQL
+/** Implementation of Database that is populated by reading from SQL. Tables can be added concurrently.
  *
  */
 final class SqlDatabase implements Database {
 
     private final String name;
-    private final Set<Table> tables = new HashSet<>();
+    private final Set<Table> tables = ConcurrentHashMap.newKeySet();
+    private volatile Map<String, String> changeMarkers;
 
     public SqlDatabase(String name) {
         this.name = name;
@@ -19,6 +22,31 @@ final class SqlDatabase implements Database {
         tables.add(table);
     }
 
+    /** Get the catalog change markers of the tables, as they were when the database was read.
+     *
+     * @return The markers by table name, or null if they were not read
+     */
+    Map<String, String> getChangeMarkers() {
+        return changeMarkers;
+    }
+
+    void setChangeMarkers(Map<String, String> changeMarkers) {
+        this.changeMarkers = changeMarkers;
+    }
+
+    /** Make a copy of the database, with copies of its tables, and the same change markers.
+     *
+     * @return The copy
+     */
+    SqlDatabase copy() {
+        var copy = new SqlDatabase(name);
+        copy.setChangeMarkers(changeMarkers);
+        for (var table : tables) {
+            copy.addTable(table instanceof SqlTable sqlTable ? sqlTable.copyTo(copy) : table);
+        }
+        return copy;
+    }
+
     @Override
     public String getName() {
         return name;
@@ -26,6 +54,6 @@ final class SqlDatabase implements Database {
 
     @Override
     public Set<Table> getTables() {
-        return tables;
+        return Collections.unmodifiableSet(tables);
     }
 }
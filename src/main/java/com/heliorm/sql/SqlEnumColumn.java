@@ -1,6 +1,7 @@
 package com.heliorm.sql;
 
 import java.sql.JDBCType;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /** Implementation of enum column that is populated by reading from SQL
@@ -12,7 +13,7 @@ final class SqlEnumColumn extends SqlColumn implements EnumColumn{
 
     SqlEnumColumn(Table table, String name, boolean nullable, String defaultValue, Set<String> enumValues) {
         super(table, name, JDBCType.OTHER,  nullable, defaultValue, false);
-        this.enumValues = enumValues;
+        this.enumValues = new LinkedHashSet<>(enumValues);
     }
 
     @Override
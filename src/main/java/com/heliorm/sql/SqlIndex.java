@@ -45,4 +45,10 @@ final class SqlIndex implements Index {
     void addColunm(Column column) {
         columns.put(column.getName(), column);
     }
+
+    void replaceColumn(String name, Column column) {
+        if (columns.remove(name) != null) {
+            columns.put(column.getName(), column);
+        }
+    }
 }
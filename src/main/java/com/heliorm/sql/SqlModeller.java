@@ -7,13 +7,25 @@ import java.sql.Connection;
 import java.sql.JDBCType;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.lang.String.format;
 
@@ -24,6 +36,11 @@ import static java.lang.String.format;
 public abstract class SqlModeller {
 
     private final Supplier<Connection> supplier;
+    private final List<Consumer<Table>> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile BackfillOptions backfillOptions;
+    private volatile LagThrottle lagThrottle;
+    private volatile LockTimeoutOptions lockTimeoutOptions;
+    private volatile BlockerPolicy blockerPolicy;
 
 
     /**
@@ -33,7 +50,19 @@ public abstract class SqlModeller {
      * @return The modeller
      */
     public static SqlModeller mysql(Supplier<Connection> supplier, boolean anonymousDb) {
-        return new MysqlModeller(supplier, anonymousDb);
+        return mysql(supplier, anonymousDb, false);
+    }
+
+    /**
+     * Create a modeller for MySQL/MariaDB databases.
+     *
+     * @param supplier    A supplier of SQL connections.
+     * @param anonymousDb Leave the database name out of table names
+     * @param bulkRead    Read whole databases from information_schema with a few set based queries
+     * @return The modeller
+     */
+    public static SqlModeller mysql(Supplier<Connection> supplier, boolean anonymousDb, boolean bulkRead) {
+        return new MysqlModeller(supplier, anonymousDb, bulkRead);
     }
 
     public static SqlModeller mysql(Supplier<Connection> supplier) {
@@ -47,7 +76,28 @@ public abstract class SqlModeller {
      * @return The modeller
      */
     public static SqlModeller postgres(Supplier<Connection> supplier) {
-        return new PostgresModeller(supplier);
+        return postgres(supplier, false);
+    }
+
+    /**
+     * Create a modeller for PostgreSQL databases.
+     *
+     * @param supplier A supplier of SQL connections.
+     * @param bulkRead Read whole databases from pg_catalog with a few queries in one snapshot
+     * @return The modeller
+     */
+    public static SqlModeller postgres(Supplier<Connection> supplier, boolean bulkRead) {
+        return new PostgresModeller(supplier, bulkRead);
+    }
+
+    /**
+     * Open a session that pins one connection, so that a whole read or synchronization pass can run on it. The
+     * session must be closed to release the connection.
+     *
+     * @return The session
+     */
+    public final ModellerSession openSession() {
+        return new ModellerSession(this, con());
     }
 
     /**
@@ -58,39 +108,1089 @@ public abstract class SqlModeller {
      * @throws SqlModellerException Thrown if there is a problem reading the model
      */
     public final Database readDatabase(String name) throws SqlModellerException {
+        try (var session = openSession()) {
+            return session.readDatabase(name);
+        }
+    }
+
+    /**
+     * Read the tables selected by a filter from a database in SQL and return a model for them. The filter's LIKE
+     * patterns are pushed down into the catalog queries where the modeller can, so that only the selected part of a
+     * large database is read.
+     *
+     * @param name   The name of the database to read
+     * @param filter The table filter
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public final Database readDatabaseFiltered(String name, TableFilter filter) throws SqlModellerException {
+        try (var session = openSession()) {
+            return session.readDatabaseFiltered(name, filter);
+        }
+    }
+
+    /**
+     * Read a database from SQL and return a model for it, reading the tables concurrently on virtual threads. Each
+     * table is read on its own session, and at most maxConnections sessions are open at any time, so that the
+     * connection pool is not starved. If the modeller reads the catalog in bulk the tables are not read one by one and
+     * this is the same as readDatabase(name).
+     *
+     * @param name           The name of the database to read
+     * @param maxConnections The maximum number of connections to use at the same time
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public final Database readDatabase(String name, int maxConnections) throws SqlModellerException {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException(format("Invalid maximum connections %d", maxConnections));
+        }
+        var database = new SqlDatabase(name);
+        var names = new ArrayList<String>();
+        try (var session = openSession()) {
+            var catalog = readCatalog(session, name, TableFilter.all());
+            if (catalog != null) {
+                for (var table : catalog.getTables()) {
+                    database.addTable(makeTable(database, table, catalog));
+                }
+                return database;
+            }
+            names.addAll(readTableNames(session, name, TableFilter.all()));
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error scanning database '%s' (%s)", name, ex.getMessage()), ex);
+        }
+        var permits = new Semaphore(maxConnections);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<?>>();
+            for (var table : names) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try (var session = openSession()) {
+                        database.addTable(readTable(session, database, table));
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+            try {
+                for (var future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException ex) {
+                futures.forEach(future -> future.cancel(true));
+                if (ex.getCause() instanceof SqlModellerException sme) {
+                    throw sme;
+                }
+                throw new SqlModellerException(format("Error scanning database '%s' (%s)", name, ex.getCause().getMessage()), ex.getCause());
+            } catch (InterruptedException ex) {
+                futures.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new SqlModellerException(format("Interrupted scanning database '%s'", name), ex);
+            }
+        }
+        return database;
+    }
+
+    /**
+     * Read a database from SQL and return a model for it, reading again only the tables that changed since a
+     * previous model was read. Changes are detected with one query for markers kept in the database catalog, and the
+     * models of unchanged tables are taken over from the previous model. If the previous model is null, or was not
+     * read with this method, or the modeller does not support change markers, all the tables are read.
+     *
+     * @param name     The name of the database to read
+     * @param previous The previous model, or null
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public final Database readDatabase(String name, Database previous) throws SqlModellerException {
+        try (var session = openSession()) {
+            return session.readDatabase(name, previous);
+        }
+    }
+
+    /**
+     * Read a database from SQL and return a lazy model for it. Only the table names are read up front. The columns
+     * and indexes of a table are read, on a session of their own, the first time they are asked for, and are then
+     * kept. A failure to read them is thrown as an IllegalStateException at that point.
+     *
+     * @param name The name of the database to read
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public final Database readDatabaseLazy(String name) throws SqlModellerException {
         var database = new SqlDatabase(name);
-        try (var con = con()) {
-            var dbm = con.getMetaData();
-            try (var tables = dbm.getTables(name, null, null, new String[]{"TABLE"})) {
-                while (tables.next()) {
-                    database.addTable(readTable(database, tables.getString("TABLE_NAME")));
+        try (var session = openSession()) {
+            for (var table : readTableNames(session, name, TableFilter.all())) {
+                database.addTable(new SqlTable(database, table, lazy -> {
+                    try (var tableSession = openSession()) {
+                        loadTable(tableSession, lazy);
+                    }
+                }));
+            }
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error scanning database '%s' (%s)", name, ex.getMessage()), ex);
+        }
+        return database;
+    }
+
+    /**
+     * Read a database from SQL as a stream of table models. The table names are read up front, and each table is
+     * read when the stream reaches it. The tables are not kept by the modeller or by their database model, so a
+     * caller that lets go of each table can work through a very large database in constant memory. The database model
+     * returned by getDatabase() on the tables has no tables.
+     * <p>
+     * The stream holds a session, so it must be closed and must not be made parallel. A failure to read a table is thrown as an IllegalStateException
+     * when the stream reaches it.
+     *
+     * @param name The name of the database to read
+     * @return The stream of tables
+     * @throws SqlModellerException Thrown if there is a problem reading the table names
+     */
+    public final Stream<Table> streamDatabase(String name) throws SqlModellerException {
+        var database = new SqlDatabase(name);
+        var session = openSession();
+        try {
+            return readTableNames(session, name, TableFilter.all()).stream()
+                    .map(table -> {
+                        try {
+                            return readTable(session, database, table);
+                        } catch (SqlModellerException ex) {
+                            throw new IllegalStateException(ex.getMessage(), ex);
+                        }
+                    })
+                    .onClose(() -> {
+                        try {
+                            session.close();
+                        } catch (SqlModellerException ex) {
+                            throw new IllegalStateException(ex.getMessage(), ex);
+                        }
+                    });
+        } catch (SQLException ex) {
+            session.close();
+            throw new SqlModellerException(format("Error scanning database '%s' (%s)", name, ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Read a table from SQL and return a model for it.
+     *
+     * @param database The database for the table
+     * @param name     The name of the table
+     * @return The table model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    public final Table readTable(Database database, String name) throws SqlModellerException {
+        try (var session = openSession()) {
+            return session.readTable(database, name);
+        }
+    }
+
+    /**
+     * Check if a table exists in SQL
+     *
+     * @param table The table
+     * @return Does it exist?
+     * @throws SqlModellerException Thrown if there is a problem
+     */
+    public final boolean tableExists(Table table) throws SqlModellerException {
+        try (var session = openSession()) {
+            return session.tableExists(table);
+        }
+    }
+
+    /**
+     * Create a table based on a table model.
+     *
+     * @param table The table model
+     * @throws SqlModellerException Thrown if there is a problem creating the table
+     */
+    public final void createTable(Table table) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.createTable(table);
+        }
+    }
+
+    /**
+     * Delete a table from SQL
+     *
+     * @param table The table model
+     * @throws SqlModellerException Thrown if there is a problem deleting the table
+     */
+    public final void deleteTable(Table table) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.deleteTable(table);
+        }
+    }
+
+    /**
+     * Add a column to a table.
+     *
+     * @param column The column to add
+     * @throws SqlModellerException Thrown if there is a problem adding the column
+     */
+    public final void addColumn(Column column) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.addColumn(column);
+        }
+    }
+
+    /**
+     * Rename a column.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem reaming the column
+     */
+    public final void renameColumn(Column current, Column changed) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.renameColumn(current, changed);
+        }
+    }
+
+    /**
+     * Delete a column from SQL
+     *
+     * @param column The column to delete
+     * @throws SqlModellerException Thrown if there is a problem deleting the column
+     */
+    public final void deleteColumn(Column column) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.deleteColumn(column);
+        }
+    }
+
+    /**
+     * Modify a column in SQL.
+     *
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem modifying the model
+     */
+    public final void modifyColumn(Column changed) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.modifyColumn(changed);
+        }
+    }
+
+    /**
+     * Modify a column in SQL.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem modifying the model
+     */
+    public final void modifyColumn(Column current, Column changed) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.modifyColumn(current, changed);
+        }
+    }
+
+    /**
+     * Add an index to a SQL table.
+     *
+     * @param index The index to add
+     */
+    public final void addIndex(Index index) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.addIndex(index);
+        }
+    }
+
+    /**
+     * Rename an index on a SQL table.
+     *
+     * @param current The index to modify
+     * @param changed The changed index
+     */
+    public final void renameIndex(Index current, Index changed) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.renameIndex(current, changed);
+        }
+    }
+
+    /**
+     * Modify an index on a SQL table
+     *
+     * @param index The index to modify
+     */
+    public final void modifyIndex(Index index) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.modifyIndex(index);
+        }
+    }
+
+    /**
+     * Check if a modeller supports SET types
+     *
+     * @return True if it does
+     */
+    public abstract boolean supportsSet();
+
+    /**
+     * Remove an index from a SQL table.
+     *
+     * @param index The index to remove
+     */
+    public final void removeIndex(Index index) throws SqlModellerException {
+        try (var session = openSession()) {
+            session.removeIndex(index);
+        }
+    }
+
+    /**
+     * Apply the steps of a migration plan that change one table, with as few statements as the database allows.
+     *
+     * @param table The table
+     * @param steps The steps that change the table
+     * @return True if the steps were applied, false if the table was skipped because other sessions block it
+     * @throws SqlModellerException Thrown if there is a problem changing the table
+     */
+    public final boolean alterTable(Table table, List<MigrationPlan.Step> steps) throws SqlModellerException {
+        try (var session = openSession()) {
+            return session.alterTable(table, steps);
+        }
+    }
+
+    /**
+     * Create a new modeller with the given connection supplier and driver.
+     *
+     * @param supplier The connection supplier
+     */
+    protected SqlModeller(Supplier<Connection> supplier) {
+        this.supplier = supplier;
+    }
+
+    /**
+     * Modify a column in SQL on a session.
+     *
+     * @param session The session
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem modifying the model
+     */
+    protected void modifyColumn(ModellerSession session, Column changed) throws SqlModellerException {
+        try {
+            for (var sql : makeModifyColumnQuery(changed)) {
+                executeUpdate(session, changed.getTable(), sql);
+            }
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error modifying column '%s' in table '%s' (%s)", changed.getName(), changed.getTable().getName(), ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Modify a column in SQL on a session.
+     *
+     * @param session The session
+     * @param current The current column
+     * @param changed The changed column
+     * @throws SqlModellerException Thrown if there is a problem modifying the model
+     */
+    protected void modifyColumn(ModellerSession session, Column current, Column changed) throws SqlModellerException {
+        try {
+            var options = getBackfillOptions(session);
+            if (options != null && !typesAreCompatible(current, changed) && Backfill.canModify(current, changed)) {
+                new Backfill(this, session, options).modifyColumn(current, changed);
+                return;
+            }
+            for (var sql : makeModifyColumnQuery(current, changed)) {
+                executeUpdate(session, changed.getTable(), sql);
+            }
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error modifying column '%s' in table '%s' (%s)", current.getName(), current.getTable().getName(), ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Modify an index on a SQL table on a session.
+     *
+     * @param session The session
+     * @param index   The index to modify
+     */
+    protected abstract void modifyIndex(ModellerSession session, Index index) throws SqlModellerException;
+
+    /**
+     * Apply the steps of a migration plan that change one table on a session. The default applies the steps one by
+     * one. Modellers override this to combine the steps into multi-clause ALTER TABLE statements where the database
+     * allows it.
+     *
+     * @param session The session
+     * @param table   The table
+     * @param steps   The steps that change the table
+     * @throws SqlModellerException Thrown if there is a problem changing the table
+     */
+    protected void alterTable(ModellerSession session, Table table, List<MigrationPlan.Step> steps) throws SqlModellerException {
+        for (var step : steps) {
+            applyStep(session, step);
+        }
+    }
+
+    /**
+     * Prepare the database for the synchronization of a set of tables, by creating the objects the tables share or
+     * depend on. This is called once, before the tables are synchronized in parallel. The default does nothing.
+     *
+     * @param session The session
+     * @param tables  The tables that will be synchronized
+     * @throws SqlModellerException Thrown if there is a problem preparing the database
+     */
+    protected void prepareTables(ModellerSession session, Collection<Table> tables) throws SqlModellerException {
+    }
+
+    /**
+     * Apply one step of a migration plan on a session.
+     *
+     * @param session The session
+     * @param step    The step
+     * @throws SqlModellerException Thrown if there is a problem applying the step
+     */
+    protected final void applyStep(ModellerSession session, MigrationPlan.Step step) throws SqlModellerException {
+        switch (step) {
+            case MigrationPlan.CreateTable s -> createTable(session, s.table());
+            case MigrationPlan.AddColumn s -> addColumn(session, s.column());
+            case MigrationPlan.RenameColumn s -> renameColumn(session, s.current(), s.changed());
+            case MigrationPlan.ModifyColumn s -> {
+                if (s.current() == null) {
+                    modifyColumn(session, s.changed());
+                } else {
+                    modifyColumn(session, s.current(), s.changed());
+                }
+            }
+            case MigrationPlan.DeleteColumn s -> deleteColumn(session, s.column());
+            case MigrationPlan.AddIndex s -> addIndex(session, s.index());
+            case MigrationPlan.ModifyIndex s -> modifyIndex(session, s.index());
+            case MigrationPlan.DeleteIndex s -> removeIndex(session, s.index());
+        }
+    }
+
+    /**
+     * Execute statements that together change the structure of a table, reporting errors against the table.
+     *
+     * @param session The session
+     * @param table   The table that is changed
+     * @param queries The statements
+     * @throws SqlModellerException Thrown if a statement fails
+     */
+    protected final void executeUpdates(ModellerSession session, Table table, List<String> queries) throws SqlModellerException {
+        try {
+            for (var sql : queries) {
+                executeUpdate(session, table, sql);
+            }
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error altering table '%s' (%s)", table.getName(), ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Execute a statement that changes the structure of a table. All the DDL issued by the modeller goes through
+     * here. Outside a transaction it first waits for lagging replicas, if a lag throttle is set, then deals with
+     * sessions that block the table according to the blocker policy, if one is set, and runs the
+     * statement with the lock timeout, if lock timeout options are set, retrying it while it times out waiting for
+     * locks or is chosen as a deadlock victim, until the deadline of the options has passed. A failed statement is
+     * reported with a SQL exception that keeps the statement and whether it can be retried.
+     *
+     * @param session The session
+     * @param table   The table that is changed
+     * @param sql     The statement
+     * @throws SQLException         Thrown if the statement fails
+     * @throws SqlModellerException Thrown if waiting for replicas or server load takes too long
+     */
+    protected final void executeUpdate(ModellerSession session, Table table, String sql) throws SQLException, SqlModellerException {
+        executeUpdate(session, table, sql, null);
+    }
+
+    /**
+     * Execute a statement that changes the structure of a table, like executeUpdate(session, table, sql), with a
+     * cleanup that is run before each retry, for statements that leave something behind when they fail.
+     *
+     * @param session The session
+     * @param table   The table that is changed
+     * @param sql     The statement
+     * @param cleanup The cleanup run before each retry, or null
+     * @throws SQLException         Thrown if the statement or the cleanup fails
+     * @throws SqlModellerException Thrown if waiting for replicas or server load takes too long
+     */
+    protected final void executeUpdate(ModellerSession session, Table table, String sql, RetryCleanup cleanup) throws SQLException, SqlModellerException {
+        var options = lockTimeoutOptions;
+        var autoCommit = session.getConnection().getAutoCommit();
+        var start = System.nanoTime();
+        for (int retry = 0; ; ++retry) {
+            if (autoCommit) {
+                awaitReplication(session);
+                awaitBlockers(session, table, sql);
+            }
+            try {
+                if (autoCommit && options != null) {
+                    executeWithLockTimeout(session, table, sql, options.getLockTimeout());
+                } else {
+                    executeStatement(session, table, sql);
+                }
+                return;
+            } catch (StatementException ex) {
+                throw ex;
+            } catch (SQLException ex) {
+                var retryable = isLockTimeout(ex);
+                if (!retryable || !autoCommit || options == null) {
+                    throw new StatementException(sql, retryable, ex);
+                }
+                var backoff = options.backoff(retry);
+                if (Duration.ofNanos(System.nanoTime() - start).plus(backoff).compareTo(options.getDeadline()) > 0) {
+                    throw new StatementException(sql, true, ex);
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException iex) {
+                    Thread.currentThread().interrupt();
+                    var stmtEx = new StatementException(sql, true, ex);
+                    stmtEx.addSuppressed(iex);
+                    throw stmtEx;
+                }
+                if (cleanup != null) {
+                    cleanup.run();
+                }
+            } finally {
+                for (var listener : changeListeners) {
+                    listener.accept(table);
+                }
+            }
+        }
+    }
+
+    /**
+     * A cleanup run before a failed statement is retried.
+     */
+    @FunctionalInterface
+    protected interface RetryCleanup {
+
+        void run() throws SQLException, SqlModellerException;
+    }
+
+    /**
+     * Run statements that change the structure of a table in one transaction that the modeller owns, with the same
+     * bounds on waiting as executeUpdate gives single statements. Before each attempt it waits for lagging replicas
+     * and deals with sessions that block the table, and then sets the lock timeout for the transaction, if lock
+     * timeout options are set. When a statement times out waiting for a lock, or is chosen as a deadlock victim, the
+     * whole transaction is rolled back and run again after a backoff, until the deadline of the options has passed.
+     * The lock timeout is reset and auto commit turned back on afterwards.
+     * <p>
+     * Inside a caller's transaction the work is run as it is, and left for the caller to commit.
+     *
+     * @param session The session
+     * @param table   The table that is changed
+     * @param work    The statements to run, through executeUpdate
+     * @throws SQLException         Thrown if the transaction fails
+     * @throws SqlModellerException Thrown if waiting for replicas or server load takes too long
+     */
+    protected final void executeTransaction(ModellerSession session, Table table, Transaction work) throws SQLException, SqlModellerException {
+        var con = session.getConnection();
+        if (!con.getAutoCommit()) {
+            work.run();
+            return;
+        }
+        var options = lockTimeoutOptions;
+        var start = System.nanoTime();
+        for (int retry = 0; ; ++retry) {
+            awaitReplication(session);
+            awaitBlockers(session, table, format("transaction on table %s", getTableName(table)));
+            Duration backoff;
+            con.setAutoCommit(false);
+            try {
+                if (options != null) {
+                    try (var stmt = con.createStatement()) {
+                        stmt.executeUpdate(makeTransactionLockTimeoutQuery(options.getLockTimeout()));
+                    }
+                }
+                work.run();
+                con.commit();
+                return;
+            } catch (StatementException ex) {
+                if (!ex.isRetryable() || options == null) {
+                    throw ex;
+                }
+                backoff = options.backoff(retry);
+                if (Duration.ofNanos(System.nanoTime() - start).plus(backoff).compareTo(options.getDeadline()) > 0) {
+                    throw ex;
+                }
+            } finally {
+                endTransaction(session, options != null);
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException(format("Interrupted retrying a transaction on table '%s'", table.getName()), ex);
+            }
+        }
+    }
+
+    /**
+     * Roll back what is left of a transaction started by executeTransaction, reset the lock timeout if it was set, and
+     * turn auto commit back on.
+     *
+     * @param session          The session
+     * @param resetLockTimeout Was the lock timeout set?
+     * @throws SQLException Thrown if the connection can't be restored
+     */
+    private void endTransaction(ModellerSession session, boolean resetLockTimeout) throws SQLException {
+        var con = session.getConnection();
+        try {
+            con.rollback();
+            var reset = resetLockTimeout ? makeResetTransactionLockTimeoutQuery() : null;
+            if (reset != null) {
+                try (var stmt = con.createStatement()) {
+                    stmt.executeUpdate(reset);
+                }
+            }
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Statements run in one transaction by executeTransaction.
+     */
+    @FunctionalInterface
+    protected interface Transaction {
+
+        void run() throws SQLException, SqlModellerException;
+    }
+
+    /**
+     * Run a statement with a lock timeout set on the session, and reset the lock timeout afterwards.
+     *
+     * @param session     The session
+     * @param table       The table that is changed
+     * @param sql         The statement
+     * @param lockTimeout The lock timeout
+     * @throws SQLException Thrown if the statement fails
+     */
+    private void executeWithLockTimeout(ModellerSession session, Table table, String sql, Duration lockTimeout) throws SQLException, SqlModellerException {
+        try (var stmt = session.getConnection().createStatement()) {
+            stmt.executeUpdate(makeLockTimeoutQuery(lockTimeout));
+        }
+        SQLException failure = null;
+        try {
+            executeStatement(session, table, sql);
+        } catch (SQLException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            try (var stmt = session.getConnection().createStatement()) {
+                stmt.executeUpdate(makeResetLockTimeoutQuery());
+            } catch (SQLException ex) {
+                if (failure == null) {
+                    throw ex;
+                }
+                failure.addSuppressed(ex);
+            }
+        }
+    }
+
+    /**
+     * Run a statement that changes the structure of a table on the database. Modellers override this to control how
+     * the database applies the change.
+     *
+     * @param session The session
+     * @param table   The table that is changed
+     * @param sql     The statement
+     * @throws SQLException         Thrown if the statement fails
+     * @throws SqlModellerException Thrown if waiting for replicas or server load takes too long
+     */
+    protected void executeStatement(ModellerSession session, Table table, String sql) throws SQLException, SqlModellerException {
+        try (var stmt = session.getConnection().createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    /**
+     * Set the options for changing columns with a batched backfill. With options set, a NOT NULL column with a
+     * default is added as a nullable column that is filled in batches before the constraint is added, and a column
+     * type change is done through a shadow column that is filled in batches and then swapped in, so that neither
+     * rewrites the table in one statement. This applies to all changes made through the modeller, including those
+     * made by a verifier. The default, null, applies such changes with one statement.
+     *
+     * @param backfillOptions The options, or null
+     */
+    public void setBackfillOptions(BackfillOptions backfillOptions) {
+        this.backfillOptions = backfillOptions;
+    }
+
+    /**
+     * Set the throttle that holds back schema changes and backfills while replicas lag behind. With a throttle set,
+     * the lag is checked before each DDL statement run outside a transaction, and between the chunks and batches of
+     * shadow table changes and backfills. The default, null, never waits.
+     *
+     * @param lagThrottle The throttle, or null
+     */
+    public void setLagThrottle(LagThrottle lagThrottle) {
+        this.lagThrottle = lagThrottle;
+    }
+
+    /**
+     * Set the options for bounding how long DDL statements wait for locks. With options set, each DDL statement run
+     * outside a transaction waits no longer than the lock timeout for its locks, and is retried with a backoff while
+     * it fails on a lock timeout or deadlock, so that a schema change queued behind a long running transaction
+     * doesn't stall the queries queued behind it. The default, null, leaves the database's lock timeout in place.
+     *
+     * @param lockTimeoutOptions The options, or null
+     */
+    public void setLockTimeoutOptions(LockTimeoutOptions lockTimeoutOptions) {
+        this.lockTimeoutOptions = lockTimeoutOptions;
+    }
+
+    /**
+     * Set the policy for DDL on tables that other sessions hold locks on. With a policy set, the modeller looks for
+     * long running transactions holding locks on a table before each DDL statement run outside a transaction on it,
+     * and waits for them, skips the table, or aborts, so that a statement queued behind such a transaction doesn't
+     * hold up all other queries on the table. The default, null, runs statements without looking.
+     *
+     * @param blockerPolicy The policy, or null
+     */
+    public void setBlockerPolicy(BlockerPolicy blockerPolicy) {
+        this.blockerPolicy = blockerPolicy;
+    }
+
+    /**
+     * Check if a table change is skipped because other sessions block the table and the blocker policy is to skip
+     * blocked tables.
+     *
+     * @param session The session
+     * @param table   The table
+     * @return Is it skipped?
+     * @throws SqlModellerException Thrown if the sessions can't be read
+     */
+    final boolean isSkipped(ModellerSession session, Table table) throws SqlModellerException {
+        var policy = blockerPolicy;
+        if (policy == null || policy.getAction() != BlockerPolicy.Action.SKIP) {
+            return false;
+        }
+        try {
+            return !findBlockers(session, table, policy).isEmpty();
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error reading sessions blocking table '%s' (%s)", table.getName(), ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Deal with sessions that block a table before running a statement on it, according to the blocker policy.
+     * Waiting gives up after the maximum wait of the policy. A statement that is not run because the table is blocked
+     * fails with an exception that marks it as retryable.
+     *
+     * @param session The session
+     * @param table   The table
+     * @param sql     The statement
+     * @throws SQLException Thrown if the table is blocked and the statement is not run, or the sessions can't be read
+     */
+    private void awaitBlockers(ModellerSession session, Table table, String sql) throws SQLException {
+        var policy = blockerPolicy;
+        if (policy == null) {
+            return;
+        }
+        var start = System.nanoTime();
+        while (true) {
+            var blockers = findBlockers(session, table, policy);
+            if (blockers.isEmpty()) {
+                return;
+            }
+            if (policy.getAction() != BlockerPolicy.Action.WAIT
+                    || Duration.ofNanos(System.nanoTime() - start).plus(policy.getCheckInterval()).compareTo(policy.getMaxWait()) > 0) {
+                throw new StatementException(sql, true, new SQLException(format("Table '%s' is blocked by %s", table.getName(),
+                        blockers.stream().map(Blocker::toString).collect(Collectors.joining(", ")))));
+            }
+            try {
+                Thread.sleep(policy.getCheckInterval());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException(format("Interrupted waiting for sessions blocking table '%s'", table.getName()), ex);
+            }
+        }
+    }
+
+    private List<Blocker> findBlockers(ModellerSession session, Table table, BlockerPolicy policy) throws SQLException {
+        return readBlockers(session, table).stream()
+                .filter(blocker -> blocker.age().compareTo(policy.getMinAge()) >= 0)
+                .toList();
+    }
+
+    /**
+     * Wait while the replication lag read by the throttle is above its maximum, recording the wait in the session's
+     * throttle statistics. The lag is read at most once per check interval of the throttle. A probe that reads no lag
+     * is taken to mean the replicas are not replicating.
+     *
+     * @param session The session
+     * @throws SQLException         Thrown if the lag can't be read, or the wait is interrupted
+     * @throws SqlModellerException Thrown if the replicas still lag after the maximum wait of the throttle
+     */
+    protected final void awaitReplication(ModellerSession session) throws SQLException, SqlModellerException {
+        var throttle = lagThrottle;
+        if (throttle == null || !session.isLagCheckDue(throttle.getCheckInterval())) {
+            return;
+        }
+        var start = System.nanoTime();
+        var slept = Duration.ZERO;
+        var worst = Duration.ZERO;
+        while (true) {
+            var lag = throttle.getProbe().readLag(session);
+            if (lag == null) {
+                lag = ChronoUnit.FOREVER.getDuration();
+            }
+            if (lag.compareTo(worst) > 0) {
+                worst = lag;
+            }
+            if (lag.compareTo(throttle.getMaxLag()) <= 0) {
+                session.recordLag(worst, slept);
+                return;
+            }
+            var waited = Duration.ofNanos(System.nanoTime() - start);
+            if (waited.plus(throttle.getCheckInterval()).compareTo(throttle.getMaxWait()) > 0) {
+                session.recordLag(worst, slept);
+                throw new SqlModellerException(format("Replicas still lag %s behind after waiting %s for them to catch up",
+                        lag.equals(ChronoUnit.FOREVER.getDuration()) ? "infinitely" : lag, waited));
+            }
+            var sleep = System.nanoTime();
+            try {
+                Thread.sleep(throttle.getCheckInterval());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for replicas to catch up", ex);
+            } finally {
+                slept = slept.plusNanos(System.nanoTime() - sleep);
+            }
+        }
+    }
+
+    /**
+     * Make the name of a temporary column next to a column, shortening the column's name so that the name stays
+     * within the database's limit on column names.
+     *
+     * @param session The session
+     * @param name    The name of the column
+     * @param suffix  The suffix that marks the temporary column
+     * @return The name
+     * @throws SQLException Thrown if the limit can't be read
+     */
+    protected final String makeTempColumnName(ModellerSession session, String name, String suffix) throws SQLException {
+        var max = session.getMetaData().getMaxColumnNameLength();
+        if (max > suffix.length() && name.length() + suffix.length() > max) {
+            name = name.substring(0, max - suffix.length());
+        }
+        return name + suffix;
+    }
+
+    /**
+     * Check if a migration plan step will be applied with a batched backfill. Modellers that combine steps into
+     * one statement apply such steps on their own instead.
+     *
+     * @param session The session
+     * @param step    The step
+     * @return Will it?
+     * @throws SqlModellerException Thrown if the session's transaction state can't be read
+     */
+    protected final boolean isBackfilled(ModellerSession session, MigrationPlan.Step step) throws SqlModellerException {
+        try {
+            if (getBackfillOptions(session) == null) {
+                return false;
+            }
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error changing table '%s' (%s)", step.table().getName(), ex.getMessage()), ex);
+        }
+        return switch (step) {
+            case MigrationPlan.AddColumn s -> Backfill.canAdd(s.column());
+            case MigrationPlan.ModifyColumn s -> s.current() != null && !typesAreCompatible(s.current(), s.changed())
+                    && Backfill.canModify(s.current(), s.changed());
+            default -> false;
+        };
+    }
+
+    /**
+     * Get the backfill options that apply to a session. A backfill commits each batch on its own, so it is not used
+     * while the session is in a transaction, which it would otherwise commit.
+     *
+     * @param session The session
+     * @return The options, or null if changes are not backfilled
+     * @throws SQLException Thrown if the session's transaction state can't be read
+     */
+    private BackfillOptions getBackfillOptions(ModellerSession session) throws SQLException {
+        var options = backfillOptions;
+        return options != null && session.getConnection().getAutoCommit() ? options : null;
+    }
+
+    /**
+     * Add a listener that is told about every table the modeller changes. The listener is called after each
+     * statement, also when the statement fails, since a failed statement may have changed the table in part.
+     *
+     * @param listener The listener
+     */
+    final void addChangeListener(Consumer<Table> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with addChangeListener.
+     *
+     * @param listener The listener
+     */
+    final void removeChangeListener(Consumer<Table> listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Read a database from SQL on a session.
+     *
+     * @param session The session
+     * @param name    The name of the database to read
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    final Database readDatabase(ModellerSession session, String name) throws SqlModellerException {
+        return readDatabaseFiltered(session, name, TableFilter.all());
+    }
+
+    /**
+     * Read the tables selected by a filter from a database in SQL on a session.
+     *
+     * @param session The session
+     * @param name    The name of the database to read
+     * @param filter  The table filter
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    final Database readDatabaseFiltered(ModellerSession session, String name, TableFilter filter) throws SqlModellerException {
+        var database = new SqlDatabase(name);
+        try {
+            var catalog = readCatalog(session, name, filter);
+            if (catalog != null) {
+                for (var table : catalog.getTables()) {
+                    if (filter.test(table)) {
+                        database.addTable(makeTable(database, table, catalog));
+                    }
+                }
+                return database;
+            }
+            for (var table : readTableNames(session, name, filter)) {
+                database.addTable(readTable(session, database, table));
+            }
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error scanning database '%s' (%s)", name, ex.getMessage()), ex);
+        }
+        return database;
+    }
+
+    /**
+     * Read a database from SQL on a session, reading again only the tables that changed since a previous model was
+     * read.
+     *
+     * @param session  The session
+     * @param name     The name of the database to read
+     * @param previous The previous model, or null
+     * @return The model
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    final Database readDatabase(ModellerSession session, String name, Database previous) throws SqlModellerException {
+        try {
+            var markers = readChangeMarkers(session, name);
+            if (markers == null) {
+                return readDatabase(session, name);
+            }
+            if (!(previous instanceof SqlDatabase sqlPrevious) || sqlPrevious.getChangeMarkers() == null
+                    || !previous.getName().equals(name)) {
+                var database = (SqlDatabase) readDatabase(session, name);
+                database.setChangeMarkers(markers);
+                return database;
+            }
+            var previousMarkers = sqlPrevious.getChangeMarkers();
+            var previousTables = previous.getTables().stream()
+                    .collect(Collectors.toMap(Table::getName, table -> table));
+            var database = new SqlDatabase(name);
+            database.setChangeMarkers(markers);
+            for (var marker : markers.entrySet()) {
+                var table = previousTables.get(marker.getKey());
+                if (table instanceof SqlTable sqlTable && marker.getValue().equals(previousMarkers.get(marker.getKey()))) {
+                    database.addTable(sqlTable.copyTo(database));
+                } else {
+                    database.addTable(readTable(session, database, marker.getKey()));
+                }
+            }
+            return database;
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error scanning database '%s' (%s)", name, ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Read the names of the tables in a database selected by a filter.
+     *
+     * @param session The session
+     * @param name    The name of the database
+     * @param filter  The table filter
+     * @return The table names
+     * @throws SQLException Thrown if the names can't be read
+     */
+    private List<String> readTableNames(ModellerSession session, String name, TableFilter filter) throws SQLException {
+        var names = new ArrayList<String>();
+        try (var tables = session.getMetaData().getTables(name, null, filter.getTablePattern(), new String[]{"TABLE"})) {
+            while (tables.next()) {
+                var table = tables.getString("TABLE_NAME");
+                if (filter.test(table)) {
+                    names.add(table);
                 }
             }
-        } catch (SQLException ex) {
-            throw new SqlModellerException(format("Error scanning database '%s' (%s)", name, ex.getMessage()), ex);
         }
-        return database;
+        return names;
     }
 
     /**
-     * Read a table from SQL and return a model for it.
+     * Read a table from SQL on a session.
      *
+     * @param session  The session
      * @param database The database for the table
      * @param name     The name of the table
      * @return The table model
      * @throws SqlModellerException Thrown if there is a problem reading the model
      */
-    public final Table readTable(Database database, String name) throws SqlModellerException {
-        try (var con = con()) {
-            var dbm = con.getMetaData();
-            var table = new SqlTable(database, name);
-            var sqlColumns = new HashMap<String, SqlColumn>();
+    final Table readTable(ModellerSession session, Database database, String name) throws SqlModellerException {
+        var table = new SqlTable(database, name);
+        loadTable(session, table);
+        return table;
+    }
+
+    /**
+     * Load the columns, keys and indexes of a table model from SQL on a session.
+     *
+     * @param session The session
+     * @param table   The table model to load
+     * @throws SqlModellerException Thrown if there is a problem reading the model
+     */
+    private void loadTable(ModellerSession session, SqlTable table) throws SqlModellerException {
+        var database = table.getDatabase();
+        try {
+            var dbm = session.getMetaData();
+            var infos = new ArrayList<Catalog.ColumnInfo>();
             try (var columns = dbm.getColumns(database.getName(), null, table.getName(), "%")) {
                 while (columns.next()) {
-                    var column = getColumnFromResultSet(table, columns);
-                    sqlColumns.put(column.getName(), column);
+                    infos.add(getColumnInfoFromResultSet(columns));
+                }
+            }
+            Map<String, Set<String>> valueLists = null;
+            for (var info : infos) {
+                if (isEnumColumn(info.name(), info.jdbcType(), info.typeName()) || isSetColumn(info.name(), info.jdbcType(), info.typeName())) {
+                    valueLists = readValueLists(session, table);
+                    break;
                 }
             }
+            var sqlColumns = new HashMap<String, SqlColumn>();
+            for (var info : infos) {
+                Set<String> values = null;
+                if (valueLists != null) {
+                    values = valueLists.get(info.name());
+                    if (values == null) {
+                        values = readValueList(session, table, info);
+                    }
+                }
+                if (values != null) {
+                    info = new Catalog.ColumnInfo(info.name(), info.jdbcType(), info.typeName(), info.size(), info.decimalDigits(),
+                            info.nullable(), info.autoIncrement(), info.defaultValue(), values);
+                }
+                var column = makeColumn(table, info);
+                sqlColumns.put(column.getName(), column);
+            }
             var keyNames = new HashSet<String>();
             try (var keys = dbm.getPrimaryKeys(database.getName(), null, table.getName())) {
                 while (keys.next()) {
@@ -119,7 +1219,7 @@ public abstract class SqlModeller {
                         sqlIndex = new SqlIndex(table, index_name, !non_unique);
                         idxMap.put(index_name, sqlIndex);
                     }
-                    sqlIndex.addColunm(table.getColumn(column_name));
+                    sqlIndex.addColunm(sqlColumns.get(column_name));
                 }
             }
             for (Index index : idxMap.values()) {
@@ -127,191 +1227,151 @@ public abstract class SqlModeller {
                     table.addIndex(index);
                 }
             }
-            return table;
         } catch (SQLException ex) {
-            throw new SqlModellerException(format("Error scanning table '%s' (%s)", name, ex.getMessage()), ex);
+            throw new SqlModellerException(format("Error scanning table '%s' (%s)", table.getName(), ex.getMessage()), ex);
         }
     }
 
     /**
-     * Check if a table exists in SQL
+     * Check if a table exists in SQL on a session.
      *
-     * @param table The table
+     * @param session The session
+     * @param table   The table
      * @return Does it exist?
      * @throws SqlModellerException Thrown if there is a problem
      */
-    public final boolean tableExists(Table table) throws SqlModellerException {
-        try (var con = con()) {
-            var dbm = con.getMetaData();
-            try (var tables = dbm.getTables(getDatabaseName(table.getDatabase()), null, table.getName(), null)) {
-                return tables.next();
-            }
+    final boolean tableExists(ModellerSession session, Table table) throws SqlModellerException {
+        try (var tables = session.getMetaData().getTables(getDatabaseName(table.getDatabase()), null, table.getName(), null)) {
+            return tables.next();
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error checking table '%s' (%s)", table.getName(), ex.getMessage()), ex);
         }
     }
 
     /**
-     * Create a table based on a table model.
+     * Create a table based on a table model on a session.
      *
-     * @param table The table model
+     * @param session The session
+     * @param table   The table model
      * @throws SqlModellerException Thrown if there is a problem creating the table
      */
-    public final void createTable(Table table) throws SqlModellerException {
-        try (var con = con(); var stmt = con.createStatement()) {
-            stmt.executeUpdate(makeCreateTableQuery(table));
+    final void createTable(ModellerSession session, Table table) throws SqlModellerException {
+        try {
+            executeUpdate(session, table, makeCreateTableQuery(table));
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error creating table '%s' (%s)", table.getName(), ex.getMessage()), ex);
         }
     }
 
     /**
-     * Delete a table from SQL
+     * Delete a table from SQL on a session.
      *
-     * @param table The table model
+     * @param session The session
+     * @param table   The table model
      * @throws SqlModellerException Thrown if there is a problem deleting the table
      */
-    public final void deleteTable(Table table) throws SqlModellerException {
-        try (var con = con(); var stmt = con.createStatement()) {
-            stmt.executeUpdate(makeDeleteTableQuery(table));
+    final void deleteTable(ModellerSession session, Table table) throws SqlModellerException {
+        try {
+            executeUpdate(session, table, makeDeleteTableQuery(table));
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error deleting table '%s' (%s)", table.getName(), ex.getMessage()), ex);
         }
     }
 
     /**
-     * Add a column to a table.
+     * Add a column to a table on a session.
      *
-     * @param column The column to add
+     * @param session The session
+     * @param column  The column to add
      * @throws SqlModellerException Thrown if there is a problem adding the column
      */
-    public final void addColumn(Column column) throws SqlModellerException {
-        try (var con = con(); var stmt = con.createStatement()) {
-            stmt.executeUpdate(makeAddColumnQuery(column));
+    final void addColumn(ModellerSession session, Column column) throws SqlModellerException {
+        try {
+            var options = getBackfillOptions(session);
+            if (options != null && Backfill.canAdd(column)) {
+                new Backfill(this, session, options).addColumn(column);
+                return;
+            }
+            executeUpdate(session, column.getTable(), makeAddColumnQuery(column));
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error adding column '%s' to table '%s' (%s)", column.getName(), column.getTable().getName(), ex.getMessage()), ex);
         }
     }
 
     /**
-     * Rename a column.
+     * Rename a column on a session.
      *
+     * @param session The session
      * @param current The current column
      * @param changed The changed column
      * @throws SqlModellerException Thrown if there is a problem reaming the column
      */
-    public final void renameColumn(Column current, Column changed) throws SqlModellerException {
-        try (var con = con(); var stmt = con.createStatement()) {
-            stmt.executeUpdate(makeRenameColumnQuery(current, changed));
+    final void renameColumn(ModellerSession session, Column current, Column changed) throws SqlModellerException {
+        try {
+            executeUpdate(session, current.getTable(), makeRenameColumnQuery(current, changed));
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error renaming column '%s' in table '%s' (%s)", current.getName(), current.getTable().getName(), ex.getMessage()), ex);
         }
     }
 
     /**
-     * Delete a column from SQL
+     * Delete a column from SQL on a session.
      *
-     * @param column The column to delete
+     * @param session The session
+     * @param column  The column to delete
      * @throws SqlModellerException Thrown if there is a problem deleting the column
      */
-    public final void deleteColumn(Column column) throws SqlModellerException {
-        try (var con = con(); var stmt = con.createStatement()) {
-            stmt.executeUpdate(makeDeleteColumnQuery(column));
+    final void deleteColumn(ModellerSession session, Column column) throws SqlModellerException {
+        try {
+            executeUpdate(session, column.getTable(), makeDeleteColumnQuery(column));
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error deleting column '%s' from table '%s' (%s)", column.getName(), column.getTable().getName(), ex.getMessage()), ex);
         }
     }
 
     /**
-     * Modify a column in SQL.
-     *
-     * @param changed The changed column
-     * @throws SqlModellerException Thrown if there is a problem modifying the model
-     */
-    public void modifyColumn(Column changed) throws SqlModellerException {
-        try (var con = con(); var stmt = con.createStatement()) {
-            for (var sql : makeModifyColumnQuery(changed)) {
-                stmt.executeUpdate(sql);
-            }
-        } catch (SQLException ex) {
-            throw new SqlModellerException(format("Error modifying column '%s' in table '%s' (%s)", changed.getName(), changed.getTable().getName(), ex.getMessage()), ex);
-        }
-    }
-
-    public void modifyColumn(Column current, Column changed) throws SqlModellerException {
-        try (var con = con(); var stmt = con.createStatement()) {
-            for (var sql : makeModifyColumnQuery(current, changed)) {
-                stmt.executeUpdate(sql);
-            }
-        } catch (SQLException ex) {
-            throw new SqlModellerException(format("Error modifying column '%s' in table '%s' (%s)", current.getName(), current.getTable().getName(), ex.getMessage()), ex);
-        }
-    }
-
-
-    /**
-     * Add an index to a SQL table.
+     * Add an index to a SQL table on a session.
      *
-     * @param index The index to add
+     * @param session The session
+     * @param index   The index to add
      */
-    public final void addIndex(Index index) throws SqlModellerException {
-        try (var con = con(); var stmt = con.createStatement()) {
-            stmt.executeUpdate(makeAddIndexQuery(index));
+    protected void addIndex(ModellerSession session, Index index) throws SqlModellerException {
+        try {
+            executeUpdate(session, index.getTable(), makeAddIndexQuery(index));
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error adding index '%s' in table '%s' (%s)", index.getName(), index.getTable().getName(), ex.getMessage()), ex);
         }
     }
 
     /**
-     * Rename an index on a SQL table.
+     * Rename an index on a SQL table on a session.
      *
+     * @param session The session
      * @param current The index to modify
      * @param changed The changed index
      */
-    public final void renameIndex(Index current, Index changed) throws SqlModellerException {
-        try (var con = con(); var stmt = con.createStatement()) {
-            stmt.executeUpdate(makeRenameIndexQuery(current, changed));
+    final void renameIndex(ModellerSession session, Index current, Index changed) throws SqlModellerException {
+        try {
+            executeUpdate(session, current.getTable(), makeRenameIndexQuery(current, changed));
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error renaming index '%s' in table '%s' (%s)", current.getName(), current.getTable().getName(), ex.getMessage()), ex);
         }
     }
 
     /**
-     * Modify an index on a SQL table
-     *
-     * @param index The index to modify
-     */
-    public abstract void modifyIndex(Index index) throws SqlModellerException;
-
-    /**
-     * Check if a modeller supports SET types
-     *
-     * @return True if it does
-     */
-    public abstract boolean supportsSet();
-
-    /**
-     * Remove an index from a SQL table.
+     * Remove an index from a SQL table on a session.
      *
-     * @param index The index to remove
+     * @param session The session
+     * @param index   The index to remove
      */
-    public final void removeIndex(Index index) throws SqlModellerException {
-        try (var con = con(); var stmt = con.createStatement()) {
-            stmt.executeUpdate(makeRemoveIndexQuery(index));
+    protected void removeIndex(ModellerSession session, Index index) throws SqlModellerException {
+        try {
+            executeUpdate(session, index.getTable(), makeRemoveIndexQuery(index));
         } catch (SQLException ex) {
-            throw new SqlModellerException(format("Error removing index '%s' in table '%s' (%s)", index.getName(), index.getTable().getName(), ex.getMessage()));
+            throw new SqlModellerException(format("Error removing index '%s' in table '%s' (%s)", index.getName(), index.getTable().getName(), ex.getMessage()), ex);
         }
     }
 
-    /**
-     * Create a new modeller with the given connection supplier and driver.
-     *
-     * @param supplier The connection supplier
-     */
-    protected SqlModeller(Supplier<Connection> supplier) {
-        this.supplier = supplier;
-    }
-
     /**
      * Compare two columns by their typing. Returns true if they are essentially the same. Must be provided
      * by a database specific implementation.
@@ -326,7 +1386,7 @@ public abstract class SqlModeller {
      * Extract the allowed values of a Set type.
      *
      * @param string The string from the database.
-     * @return The set of strings.
+     * @return The set of strings, in declaration order.
      */
     protected abstract Set<String> extractSetValues(String string);
 
@@ -349,13 +1409,96 @@ public abstract class SqlModeller {
      */
     protected abstract boolean isSetColumn(String colunmName, JDBCType jdbcType, String typeName);
 
+    /**
+     * Read the possible enum values for a ENUM column
+     *
+     * @param session The session to use
+     * @param column  The column
+     * @return The set values, or an empty set if the column is not an ENUM column.
+     */
+    protected abstract Set<String> readEnumValues(ModellerSession session, EnumColumn column) throws SqlModellerException;
+
     /**
      * Read the possible enum values for a ENUM column
      *
      * @param column The column
      * @return The set values.
      */
-    protected abstract Set<String> readEnumValues(EnumColumn column) throws SqlModellerException;
+    protected Set<String> readEnumValues(EnumColumn column) throws SqlModellerException {
+        try (var session = openSession()) {
+            return readEnumValues(session, column);
+        }
+    }
+
+    /**
+     * Make a query to read set values. The query is prepared and takes the database, table and column names as
+     * parameters, in that order.
+     *
+     * @param column The column to read the values for
+     * @return The values as a string.
+     */
+    protected abstract String makeReadSetQuery(SetColumn column) throws SqlModellerException;
+
+    /**
+     * Read the possible set values for a SET column
+     *
+     * @param session The session to use
+     * @param column  The column
+     * @return The set values.
+     */
+    private Set<String> readSetValues(ModellerSession session, SetColumn column) throws SqlModellerException {
+        try {
+            var stmt = session.prepare(makeReadSetQuery(column));
+            stmt.setString(1, column.getTable().getDatabase().getName());
+            stmt.setString(2, column.getTable().getName());
+            stmt.setString(3, column.getName());
+            try (var rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return extractSetValues(rs.getString(1));
+                }
+                return Collections.emptySet();
+            }
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error reading set values from %s.%s.%s (%s)",
+                    column.getTable().getDatabase().getName(), column.getTable().getName(), column.getName(), ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Read the allowed values of all the ENUM and SET columns in a table with one query.
+     *
+     * @param session The session to use
+     * @param table   The table
+     * @return The values in declaration order, mapped by column name
+     */
+    protected abstract Map<String, Set<String>> readValueLists(ModellerSession session, Table table) throws SQLException;
+
+    /**
+     * Read the column, key and index definitions of all the tables in a database in bulk. Modellers that can read
+     * the catalog with set based queries override this. If null is returned the tables are read one by one. The
+     * filter's SQL condition should be added to the queries, the filter itself is applied to the catalog afterwards.
+     *
+     * @param session  The session to use
+     * @param database The name of the database
+     * @param filter   The table filter
+     * @return The catalog, or null if bulk reading is not supported
+     */
+    protected Catalog readCatalog(ModellerSession session, String database, TableFilter filter) throws SQLException, SqlModellerException {
+        return null;
+    }
+
+    /**
+     * Read a marker for each table in a database from the database catalog, that changes when the structure of the
+     * table changes. Modellers that can detect changes override this, the default is to return null.
+     *
+     * @param session  The session
+     * @param database The name of the database
+     * @return The markers by table name, or null if change markers are not supported
+     * @throws SQLException Thrown if the markers can't be read
+     */
+    protected Map<String, String> readChangeMarkers(ModellerSession session, String database) throws SQLException {
+        return null;
+    }
 
     /**
      * Generate SQL statement to add an index to a table.
@@ -419,7 +1562,7 @@ public abstract class SqlModeller {
      *
      * @return The connection
      */
-    protected final Connection con() {
+    private Connection con() {
         return supplier.get();
     }
 
@@ -513,14 +1656,6 @@ public abstract class SqlModeller {
      */
     protected abstract String getIndexName(Index index);
 
-    /**
-     * Make a query to read set values
-     *
-     * @param column The column to read the values for
-     * @return The values as a string.
-     */
-    protected abstract String makeReadSetQuery(SetColumn column) throws SqlModellerException;
-
     /**
      * Generate a query to rename an index.
      *
@@ -531,34 +1666,134 @@ public abstract class SqlModeller {
     protected abstract String makeRenameIndexQuery(Index current, Index changed);
 
     /**
-     * Read the possible set values for a SET column
+     * Generate a query to delete a table.
      *
-     * @param column The column
-     * @return The set values.
+     * @param table The table to delete
+     * @return The query
      */
-    private Set<String> readSetValues(SetColumn column) throws SqlModellerException {
-        var query = makeReadSetQuery(column);
-        try (var con = con(); var stmt = con.createStatement(); var ers = stmt.executeQuery(query)) {
-            if (ers.next()) {
-                return extractSetValues(ers.getString(1));
-            }
-            return Collections.emptySet();
-        } catch (SQLException ex) {
-            throw new SqlModellerException(format("Error reading set values from %s.%s.%s (%s)",
-                    column.getTable().getDatabase().getName(), column.getTable().getName(), column.getName(), ex.getMessage()), ex);
-        }
+    private String makeDeleteTableQuery(Table table) {
+        return format("DROP TABLE %s", getTableName(table));
     }
 
     /**
-     * Generate a query to delete a table.
+     * Make the SQL expression that converts the value of a column to the type of a changed column, for filling a
+     * shadow column during a batched backfill. The default relies on the database to convert the value on
+     * assignment.
      *
-     * @param table The table to delete
+     * @param source  The SQL reference to the value to convert
+     * @param changed The changed column
+     * @return The SQL expression
+     */
+    protected String makeBackfillExpression(String source, Column changed) throws SqlModellerException {
+        return source;
+    }
+
+    /**
+     * Make a query that sets the default of a column, as given by the column, without touching the existing rows.
+     *
+     * @param column The column with the default
      * @return The query
+     * @throws SqlModellerException Thrown if the default can't be expressed
      */
-    private String makeDeleteTableQuery(Table table) {
-        return format("DROP TABLE %s", getTableName(table));
+    protected abstract String makeSetDefaultQuery(Column column) throws SqlModellerException;
+
+    /**
+     * Make the queries that make a nullable column, whose rows have all been filled, NOT NULL in a way that allows
+     * concurrent writes to the table.
+     *
+     * @param column The column as it should be once it is NOT NULL
+     * @return The queries
+     * @throws SqlModellerException Thrown if the column type can't be expressed
+     */
+    protected abstract List<String> makeSetNotNullQueries(Column column) throws SqlModellerException;
+
+    /**
+     * Generate the SQL statements that keep a shadow column in sync with a column for rows inserted and updated
+     * while a batched backfill runs.
+     *
+     * @param current The column
+     * @param shadow  The shadow column
+     * @param changed The changed column, with the type of the shadow column
+     * @return The SQL statements
+     */
+    protected abstract List<String> makeBackfillSyncQueries(Column current, Column shadow, Column changed) throws SqlModellerException;
+
+    /**
+     * Generate the SQL statements that remove what the statements from makeBackfillSyncQueries() created.
+     *
+     * @param current The column
+     * @param shadow  The shadow column
+     * @return The SQL statements
+     */
+    protected abstract List<String> makeDropBackfillSyncQueries(Column current, Column shadow);
+
+    /**
+     * Swap a filled shadow column in for the column it was made for at the end of a batched backfill. The column is
+     * dropped, the shadow column takes its name and gets its nullability and default, and the sync is removed,
+     * without losing writes made in between.
+     *
+     * @param session The session
+     * @param current The column
+     * @param shadow  The shadow column
+     * @param changed The changed column
+     * @throws SQLException Thrown if the swap fails
+     */
+    protected abstract void swapBackfillColumn(ModellerSession session, Column current, Column shadow, Column changed) throws SQLException, SqlModellerException;
+
+    /**
+     * Make a query that sets the time statements on the session wait for locks before they fail.
+     *
+     * @param lockTimeout The time
+     * @return The query
+     */
+    protected abstract String makeLockTimeoutQuery(Duration lockTimeout);
+
+    /**
+     * Make a query that resets the time statements on the session wait for locks to the server's default.
+     *
+     * @return The query
+     */
+    protected abstract String makeResetLockTimeoutQuery();
+
+    /**
+     * Make a query that sets the time statements wait for locks in the current transaction. The default sets it for
+     * the session, and makeResetTransactionLockTimeoutQuery() resets it when the transaction ends.
+     *
+     * @param lockTimeout The time
+     * @return The query
+     */
+    protected String makeTransactionLockTimeoutQuery(Duration lockTimeout) {
+        return makeLockTimeoutQuery(lockTimeout);
+    }
+
+    /**
+     * Make a query that resets the lock timeout set by makeTransactionLockTimeoutQuery() after the transaction ends.
+     *
+     * @return The query, or null if the lock timeout ends with the transaction
+     */
+    protected String makeResetTransactionLockTimeoutQuery() {
+        return makeResetLockTimeoutQuery();
     }
 
+    /**
+     * Check if a statement failed because it timed out waiting for a lock or was chosen as a deadlock victim, and
+     * can be retried.
+     *
+     * @param ex The exception the statement failed with
+     * @return Did it?
+     */
+    protected abstract boolean isLockTimeout(SQLException ex);
+
+    /**
+     * Read the other sessions that hold locks on a table.
+     *
+     * @param session The session
+     * @param table   The table
+     * @return The sessions, with the age of their transactions
+     * @throws SQLException Thrown if the sessions can't be read
+     */
+    protected abstract List<Blocker> readBlockers(ModellerSession session, Table table) throws SQLException;
+
     /**
      * Generate a SQL statement to rename a column in a table.
      *
@@ -578,7 +1813,7 @@ public abstract class SqlModeller {
      * @param column The column to delete
      * @return The SQL
      */
-    private String makeDeleteColumnQuery(Column column) {
+    final String makeDeleteColumnQuery(Column column) {
         return format("ALTER TABLE %s DROP COLUMN %s",
                 getTableName(column.getTable()),
                 getColumnName(column));
@@ -624,58 +1859,124 @@ public abstract class SqlModeller {
     }
 
     /**
-     * Read a column model from a SQL result set.
+     * Build a table model from the definitions read in bulk from the catalog.
      *
-     * @param table The table for the column
-     * @param rs    The result set
-     * @return The column mode
+     * @param database The database for the table
+     * @param name     The name of the table
+     * @param catalog  The catalog
+     * @return The table model
      */
-    private SqlColumn getColumnFromResultSet(Table table, ResultSet rs) throws SqlModellerException {
-        try {
-            var jdbcType = JDBCType.valueOf(rs.getInt("DATA_TYPE"));
-            var size = rs.getInt("COLUMN_SIZE");
-            var nullable = rs.getString("IS_NULLABLE").equals("YES");
-            var autoIncrement = rs.getString("IS_AUTOINCREMENT").equals("YES");
-            var columnName = rs.getString("COLUMN_NAME");
-            var typeName = rs.getString("TYPE_NAME");
-            var defVal = rs.getString("COLUMN_DEF");
-            if (defVal != null) {
-                defVal = extractDefault(defVal);
-            }
-            if (isEnumColumn(columnName, jdbcType, typeName)) {
-                return new SqlEnumColumn(table, columnName, nullable, defVal, readEnumValues(new SqlEnumColumn(table, columnName, nullable, defVal, Collections.emptySet())));
-            } else if (isSetColumn(columnName, jdbcType, typeName)) {
-                return new SqlSetColumn(table, columnName, nullable, defVal, readSetValues(new SqlSetColumn(table, columnName, nullable, defVal, Collections.emptySet())));
-            } else if (isStringColumn(jdbcType)) {
-                return new SqlStringColumn(table, columnName, jdbcType, nullable, defVal, size);
-            } else if (isBinaryColumn(jdbcType)) {
-                return new SqlBinaryColumn(table, columnName, jdbcType, nullable, defVal, size);
-            }
-            if (isDateTimeColumn(jdbcType)) {
-                if (typeName.equals("DATETIME")) {
-                    return new SqlDateTimeColumn(table, columnName, jdbcType, nullable, defVal);
-                } else {
-                    return new SqlTimeStampColumn(table, columnName, jdbcType, nullable, defVal);
-                }
+    SqlTable makeTable(Database database, String name, Catalog catalog) throws SqlModellerException {
+        var table = new SqlTable(database, name);
+        var keys = catalog.getKeys(name);
+        for (var info : catalog.getColumns(name)) {
+            var column = makeColumn(table, info);
+            column.setKey(keys.contains(column.getName()));
+            table.addColumn(column);
+        }
+        for (var entry : catalog.getIndexes(name).entrySet()) {
+            var index = new SqlIndex(table, entry.getKey(), entry.getValue().unique());
+            for (var columnName : entry.getValue().columns()) {
+                index.addColunm(table.getColumn(columnName));
             }
-            return switch (jdbcType) {
-                case BIT -> new SqlBitColumn(table, columnName, nullable, defVal, size);
-                case BOOLEAN -> new SqlBooleanColumn(table, columnName, nullable, defVal);
-                case DECIMAL, NUMERIC ->
-                        new SqlDecimalColumn(table, columnName, jdbcType, nullable, defVal, size, rs.getInt("DECIMAL_DIGITS"));
-                case DOUBLE -> new SqlDoubleColumn(table, columnName, jdbcType, nullable, defVal);
-                case INTEGER, TINYINT, SMALLINT, BIGINT -> {
-                    if (autoIncrement) {
-                        yield new SqlIntegerColumn(table, columnName, jdbcType, nullable, defVal, true);
-                    }
-                    yield new SqlIntegerColumn(table, columnName, jdbcType, nullable, defVal, false);
-                }
-                default ->
-                        throw new SqlModellerException(format("Unsupported JDBC type %s in result set. BUG!", jdbcType.getName()));
-            };
+            table.addIndex(index);
+        }
+        return table;
+    }
+
+    /**
+     * Read a column definition from a SQL meta data result set.
+     *
+     * @param rs The result set
+     * @return The column definition
+     */
+    private Catalog.ColumnInfo getColumnInfoFromResultSet(ResultSet rs) throws SqlModellerException {
+        try {
+            return new Catalog.ColumnInfo(rs.getString("COLUMN_NAME"),
+                    JDBCType.valueOf(rs.getInt("DATA_TYPE")),
+                    rs.getString("TYPE_NAME"),
+                    rs.getInt("COLUMN_SIZE"),
+                    rs.getInt("DECIMAL_DIGITS"),
+                    rs.getString("IS_NULLABLE").equals("YES"),
+                    rs.getString("IS_AUTOINCREMENT").equals("YES"),
+                    rs.getString("COLUMN_DEF"),
+                    null);
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error reading SQL column information (%s)", ex.getMessage()), ex);
         }
     }
 
+    /**
+     * Read the allowed values of an ENUM or SET column on its own, for a column that was missed when the values for
+     * the table were read, for example because it was added in between.
+     *
+     * @param session The session
+     * @param table   The table
+     * @param info    The column definition
+     * @return The values, or null if it is not an ENUM or SET column or no values were found for it
+     */
+    private Set<String> readValueList(ModellerSession session, Table table, Catalog.ColumnInfo info) throws SqlModellerException {
+        Set<String> values = null;
+        if (isSetColumn(info.name(), info.jdbcType(), info.typeName())) {
+            values = readSetValues(session, new SqlSetColumn(table, info.name(), info.nullable(), null, Collections.emptySet()));
+        } else if (isEnumColumn(info.name(), info.jdbcType(), info.typeName())) {
+            values = readEnumValues(session, new SqlEnumColumn(table, info.name(), info.nullable(), null, Collections.emptySet()));
+        }
+        return values == null || values.isEmpty() ? null : values;
+    }
+
+    /**
+     * Create a column model from a column definition. Only columns for which allowed values were read are treated
+     * as ENUM or SET columns.
+     *
+     * @param table The table for the column
+     * @param info  The column definition
+     * @return The column model
+     */
+    private SqlColumn makeColumn(Table table, Catalog.ColumnInfo info) throws SqlModellerException {
+        var jdbcType = info.jdbcType();
+        var size = info.size();
+        var nullable = info.nullable();
+        var autoIncrement = info.autoIncrement();
+        var columnName = info.name();
+        var typeName = info.typeName();
+        var defVal = info.defaultValue();
+        if (defVal != null) {
+            defVal = extractDefault(defVal);
+        }
+        if (info.values() != null) {
+            if (isSetColumn(columnName, jdbcType, typeName)) {
+                return new SqlSetColumn(table, columnName, nullable, defVal, info.values());
+            }
+            return new SqlEnumColumn(table, columnName, nullable, defVal, info.values());
+        }
+        if (isStringColumn(jdbcType)) {
+            return new SqlStringColumn(table, columnName, jdbcType, nullable, defVal, size);
+        } else if (isBinaryColumn(jdbcType)) {
+            return new SqlBinaryColumn(table, columnName, jdbcType, nullable, defVal, size);
+        }
+        if (isDateTimeColumn(jdbcType)) {
+            if (typeName.equals("DATETIME")) {
+                return new SqlDateTimeColumn(table, columnName, jdbcType, nullable, defVal);
+            } else {
+                return new SqlTimeStampColumn(table, columnName, jdbcType, nullable, defVal);
+            }
+        }
+        return switch (jdbcType) {
+            case BIT -> new SqlBitColumn(table, columnName, nullable, defVal, size);
+            case BOOLEAN -> new SqlBooleanColumn(table, columnName, nullable, defVal);
+            case DECIMAL, NUMERIC ->
+                    new SqlDecimalColumn(table, columnName, jdbcType, nullable, defVal, size, info.decimalDigits());
+            case DOUBLE -> new SqlDoubleColumn(table, columnName, jdbcType, nullable, defVal);
+            case INTEGER, TINYINT, SMALLINT, BIGINT -> {
+                if (autoIncrement) {
+                    yield new SqlIntegerColumn(table, columnName, jdbcType, nullable, defVal, true);
+                }
+                yield new SqlIntegerColumn(table, columnName, jdbcType, nullable, defVal, false);
+            }
+            default ->
+                    throw new SqlModellerException(format("Unsupported JDBC type %s in result set. BUG!", jdbcType.getName()));
+        };
+    }
+
 }
@@ -1,15 +1,92 @@
 package com.heliorm.sql;
 
+import java.sql.SQLException;
+
 /** Exception thrown if there is a problem modelling SQL
  *
  */
 public final class SqlModellerException extends Exception {
 
+    private static final long serialVersionUID = 1L;
+
+    private final int errorCode;
+    private final String sqlState;
+    private final String sql;
+    private final boolean retryable;
+
     public SqlModellerException(String message) {
         super(message);
+        this.errorCode = 0;
+        this.sqlState = null;
+        this.sql = null;
+        this.retryable = false;
     }
 
+    /**
+     * Create an exception with a cause. If the cause is, or was caused by, a SQL exception, its vendor error code
+     * and SQL state are kept, and if it came from a DDL statement, so are the statement and if it can be retried.
+     *
+     * @param message The message
+     * @param cause   The cause
+     */
     public SqlModellerException(String message, Throwable cause) {
         super(message, cause);
+        SQLException sqlEx = null;
+        StatementException stmtEx = null;
+        for (var ex = cause; ex != null && !(ex instanceof SqlModellerException); ex = ex.getCause()) {
+            if (ex instanceof StatementException se && stmtEx == null) {
+                stmtEx = se;
+            }
+            if (ex instanceof SQLException se && sqlEx == null) {
+                sqlEx = se;
+            }
+        }
+        if (sqlEx == null && cause instanceof SqlModellerException sme) {
+            this.errorCode = sme.errorCode;
+            this.sqlState = sme.sqlState;
+            this.sql = sme.sql;
+            this.retryable = sme.retryable;
+        } else {
+            this.errorCode = sqlEx == null ? 0 : sqlEx.getErrorCode();
+            this.sqlState = sqlEx == null ? null : sqlEx.getSQLState();
+            this.sql = stmtEx == null ? null : stmtEx.getSql();
+            this.retryable = stmtEx != null && stmtEx.isRetryable();
+        }
+    }
+
+    /**
+     * Get the vendor error code of the SQL exception behind this exception.
+     *
+     * @return The error code, or 0 if there is none
+     */
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Get the SQL state of the SQL exception behind this exception.
+     *
+     * @return The SQL state, or null if there is none
+     */
+    public String getSqlState() {
+        return sqlState;
+    }
+
+    /**
+     * Get the DDL statement that failed.
+     *
+     * @return The statement, or null if the failure was not in a DDL statement
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Check if the failure was a lock timeout or deadlock that could succeed if the change is tried again later.
+     *
+     * @return Is it retryable?
+     */
+    public boolean isRetryable() {
+        return retryable;
     }
 }
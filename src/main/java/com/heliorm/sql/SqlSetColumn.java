@@ -1,6 +1,7 @@
 package com.heliorm.sql;
 
 import java.sql.JDBCType;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 
@@ -11,7 +12,7 @@ final class SqlSetColumn extends SqlColumn implements SetColumn {
 
     SqlSetColumn(Table table, String name, boolean nullable, String defVal, Set<String> setValues) {
         super(table, name, JDBCType.OTHER, nullable,  defVal,false);
-        this.setValues = setValues;
+        this.setValues = new LinkedHashSet<>(setValues);
     }
 
     @Override
@@ -5,18 +5,32 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import static java.lang.String.format;
 
-/** Implementation of Table  that is populated by reading from SQL */
+
+/** Implementation of Table  that is populated by reading from SQL. A table can be lazy, in which case its columns
+ * and indexes are loaded the first time they are asked for. */
 final class SqlTable implements Table {
 
     private final Database database;
     private final String name;
     private final Map<String, Column> columns = new HashMap<>();
     private final Map<String, Index> indexes = new HashMap<>();
+    private final Loader loader;
+    private volatile boolean loaded;
+    private boolean loading;
 
     SqlTable(Database database, String name) {
         this.database = database;
         this.name = name;
+        this.loader = null;
+        this.loaded = true;
+    }
+
+    SqlTable(Database database, String name, Loader loader) {
+        this.database = database;
+        this.name = name;
+        this.loader = loader;
     }
 
     void addColumn(Column column) {
@@ -27,6 +41,53 @@ final class SqlTable implements Table {
         indexes.put(index.getName(), index);
     }
 
+    void removeColumn(String name) {
+        columns.remove(name);
+    }
+
+    void removeIndex(String name) {
+        indexes.remove(name);
+    }
+
+    /** Replace a column, also in the indexes that use it, after it was changed in SQL.
+     *
+     * @param name   The name of the current column
+     * @param column The changed column
+     */
+    void replaceColumn(String name, Column column) {
+        columns.remove(name);
+        columns.put(column.getName(), column);
+        for (var index : indexes.values()) {
+            if (index instanceof SqlIndex sqlIndex) {
+                sqlIndex.replaceColumn(name, column);
+            }
+        }
+    }
+
+    /** Make a copy of the table, with copies of its columns and indexes, that belongs to a database. A lazy table is
+     * loaded first.
+     *
+     * @param database The database of the copy
+     * @return The copy
+     */
+    SqlTable copyTo(Database database) {
+        var copy = new SqlTable(database, name);
+        for (var column : getColumns()) {
+            var sqlColumn = SqlColumn.copyOf(copy, column, column.getName(), column.isNullable(), column.getDefault(),
+                    column.isAutoIncrement());
+            sqlColumn.setKey(column.isKey());
+            copy.addColumn(sqlColumn);
+        }
+        for (var index : getIndexes()) {
+            var sqlIndex = new SqlIndex(copy, index.getName(), index.isUnique());
+            for (var column : index.getColumns()) {
+                sqlIndex.addColunm(copy.columns.get(column.getName()));
+            }
+            copy.addIndex(sqlIndex);
+        }
+        return copy;
+    }
+
     @Override
     public Database getDatabase() {
         return database;
@@ -39,21 +100,55 @@ final class SqlTable implements Table {
 
     @Override
     public Set<Column> getColumns() {
+        load();
         return new HashSet<>(columns.values());
     }
 
     @Override
     public Set<Index> getIndexes() {
+        load();
         return new HashSet<>(indexes.values());
     }
 
     @Override
     public Column getColumn(String name) {
+        load();
         return columns.get(name);
     }
 
     @Override
     public Index getIndex(String name) {
+        load();
         return indexes.get(name);
     }
+
+    /** Load a lazy table the first time it is used. A failed load is tried again on the next use, and calls made
+     * by the loader itself see the table as it is being loaded.
+     */
+    private void load() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded && !loading) {
+                    loading = true;
+                    try {
+                        loader.load(this);
+                        loaded = true;
+                    } catch (SqlModellerException ex) {
+                        columns.clear();
+                        indexes.clear();
+                        throw new IllegalStateException(format("Error loading table '%s' (%s)", name, ex.getMessage()), ex);
+                    } finally {
+                        loading = false;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Loads the columns and indexes of a lazy table */
+    @FunctionalInterface
+    interface Loader {
+
+        void load(SqlTable table) throws SqlModellerException;
+    }
 }
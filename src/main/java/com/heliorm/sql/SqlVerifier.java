@@ -1,12 +1,20 @@
 package com.heliorm.sql;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
+import static java.lang.String.format;
+
 /**
  * Tool for verifying if a user supplied SQL data structure is the same as the one in a database.
  */
@@ -38,41 +46,248 @@ public final class SqlVerifier {
      * @return The changes made to synchronize the table.
      */
     public List<Action> synchronizeDatabaseTable(Table table) throws SqlModellerException {
-        if (!modeller.tableExists(table)) {
-            modeller.createTable(table);
-            return Collections.singletonList(Action.createTable(table));
+        try (var session = modeller.openSession()) {
+            return synchronizeDatabaseTable(session, table);
+        }
+    }
+
+    /**
+     * Verify that a table in a SQL database is the same as the abstraction supplied, and change the database
+     * to conform if not, using the given session for all the work.
+     *
+     * @param session The session
+     * @param table   The table
+     * @return The changes made to synchronize the table.
+     */
+    public List<Action> synchronizeDatabaseTable(ModellerSession session, Table table) throws SqlModellerException {
+        return apply(session, plan(session, table));
+    }
+
+    /**
+     * Verify that the tables in a SQL database are the same as the abstraction supplied, and change the database to
+     * conform if not. The objects the tables depend on, like PostgreSQL enum types, are created first, and then the
+     * tables are synchronized in parallel on virtual threads, each on its own session, with at most maxConcurrency
+     * tables at a time.
+     * <p>
+     * If a table fails, no more tables are started, the ones already started are finished, and the first failure is
+     * thrown with the others suppressed.
+     *
+     * @param database       The database
+     * @param maxConcurrency The maximum number of tables synchronized at the same time
+     * @return The changes made to each table, the time it took and how long it was throttled, in the order of the database's tables
+     */
+    public List<TableResult> synchronizeDatabase(Database database, int maxConcurrency) throws SqlModellerException {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException(format("Invalid maximum concurrency %d", maxConcurrency));
+        }
+        var tables = List.copyOf(database.getTables());
+        try (var session = modeller.openSession()) {
+            session.prepareTables(tables);
+        }
+        var permits = new Semaphore(maxConcurrency);
+        var failed = new AtomicBoolean();
+        var futures = new ArrayList<Future<TableResult>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var table : tables) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        if (failed.get()) {
+                            return null;
+                        }
+                        var start = System.nanoTime();
+                        try (var session = modeller.openSession()) {
+                            var actions = synchronizeDatabaseTable(session, table);
+                            return new TableResult(table, actions, Duration.ofNanos(System.nanoTime() - start), session.getThrottleStats(),
+                                    !session.getSkippedTables().isEmpty());
+                        }
+                    } catch (SqlModellerException | RuntimeException ex) {
+                        failed.set(true);
+                        throw ex;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+        var results = new ArrayList<TableResult>();
+        SqlModellerException error = null;
+        for (var future : futures) {
+            try {
+                var result = future.get();
+                if (result != null) {
+                    results.add(result);
+                }
+            } catch (ExecutionException ex) {
+                var cause = ex.getCause() instanceof SqlModellerException sme ? sme
+                        : new SqlModellerException(format("Error synchronizing database '%s' (%s)", database.getName(), ex.getCause().getMessage()), ex.getCause());
+                if (error == null) {
+                    error = cause;
+                } else {
+                    error.addSuppressed(cause);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SqlModellerException(format("Interrupted synchronizing database '%s'", database.getName()), ex);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return results;
+    }
+
+    /**
+     * Work out the steps needed to make a table in a SQL database the same as the abstraction supplied, without
+     * changing the database.
+     *
+     * @param table The table
+     * @return The plan
+     */
+    public MigrationPlan plan(Table table) throws SqlModellerException {
+        try (var session = modeller.openSession()) {
+            return plan(session, table);
+        }
+    }
+
+    /**
+     * Work out the steps needed to make a table in a SQL database the same as the abstraction supplied, without
+     * changing the database, using the given session.
+     *
+     * @param session The session
+     * @param table   The table
+     * @return The plan
+     */
+    public MigrationPlan plan(ModellerSession session, Table table) throws SqlModellerException {
+        return MigrationPlan.of(planTable(session, table));
+    }
+
+    /**
+     * Work out the steps needed to make the tables in a SQL database the same as the abstraction supplied, without
+     * changing the database. Tables in SQL that are not in the abstraction are left alone.
+     *
+     * @param database The database
+     * @return The plan
+     */
+    public MigrationPlan plan(Database database) throws SqlModellerException {
+        try (var session = modeller.openSession()) {
+            var steps = new ArrayList<MigrationPlan.Step>();
+            for (var table : database.getTables()) {
+                steps.addAll(planTable(session, table));
+            }
+            return MigrationPlan.of(steps);
+        }
+    }
+
+    /**
+     * Apply the steps of a plan to the database, in order.
+     *
+     * @param plan The plan
+     * @return The changes made
+     */
+    public List<Action> apply(MigrationPlan plan) throws SqlModellerException {
+        try (var session = modeller.openSession()) {
+            return apply(session, plan);
+        }
+    }
+
+    /**
+     * Apply the steps of a plan to the database, in order, using the given session. The steps for each table are
+     * handed to the modeller together, with the table model they lead to, so that it can combine them into as few
+     * statements as the database allows. The steps of tables the modeller skips because other sessions block them
+     * are left out of the changes made.
+     *
+     * @param session The session
+     * @param plan    The plan
+     * @return The changes made
+     */
+    public List<Action> apply(ModellerSession session, MigrationPlan plan) throws SqlModellerException {
+        var actions = new ArrayList<Action>();
+        var steps = plan.getSteps();
+        int start = 0;
+        while (start < steps.size()) {
+            var table = steps.get(start).table();
+            int end = start + 1;
+            while (end < steps.size() && isSameTable(table, steps.get(end).table())) {
+                end++;
+            }
+            var tableSteps = steps.subList(start, end);
+            if (session.alterTable(modelTable(tableSteps), tableSteps)) {
+                for (var step : tableSteps) {
+                    actions.add(step.toAction());
+                }
+            }
+            start = end;
+        }
+        return actions;
+    }
+
+    /**
+     * Find the table model that the steps for a table lead to. Steps that delete columns or indexes, or make missing
+     * columns nullable, refer to the table as read from SQL, so the first step that refers to another table is used.
+     */
+    private Table modelTable(List<MigrationPlan.Step> steps) {
+        return steps.stream()
+                .map(MigrationPlan.Step::table)
+                .filter(table -> !(table instanceof SqlTable))
+                .findFirst()
+                .orElse(steps.getFirst().table());
+    }
+
+    private List<MigrationPlan.Step> planTable(ModellerSession session, Table table) throws SqlModellerException {
+        var current = (SqlTable) session.readTable(table.getDatabase(), table.getName());
+        if (current.getColumns().isEmpty() && !session.tableExists(table)) {
+            return Collections.singletonList(new MigrationPlan.CreateTable(table));
         } else {
-            var actions = new ArrayList<Action>();
-            actions.addAll(synchronizeColumns(table));
-            actions.addAll(synchronizeIndexes(table));
-            return actions;
+            return planChanges(table, current);
         }
     }
 
-    private List<Action> synchronizeColumns(Table table) throws SqlModellerException {
-        Table sqlTable = modeller.readTable(table.getDatabase(), table.getName());
+    /**
+     * Work out the steps that change an existing table, as read from SQL, into the abstraction supplied.
+     *
+     * @param table   The table
+     * @param current The table as read from SQL, which is left as it is
+     * @return The steps
+     */
+    List<MigrationPlan.Step> planChanges(Table table, SqlTable current) {
+        var working = current.copyTo(current.getDatabase());
+        var steps = new ArrayList<MigrationPlan.Step>();
+        steps.addAll(planColumns(table, current, working));
+        steps.addAll(planIndexes(table, current, working));
+        return steps;
+    }
+
+    /**
+     * Work out the column changes for a table. The steps refer to the columns and indexes of the table as read from
+     * SQL, which is left as it is. A working copy of it is updated with each change instead, so that the indexes can
+     * be compared to it afterwards as it will be once the changes are applied. Indexes on deleted columns are deleted
+     * first, since databases differ in what they do with them, and are added again later if needed.
+     */
+    private List<MigrationPlan.Step> planColumns(Table table, SqlTable current, SqlTable working) {
         Map<String, Column> tableColumns = table.getColumns().stream()
                 .collect(Collectors.toMap(Column::getName, col -> col));
-        Map<String, Column> sqlColumns = sqlTable.getColumns().stream()
+        Map<String, Column> sqlColumns = current.getColumns().stream()
                 .collect(Collectors.toMap(Column::getName, col -> col));
-        List<Action> actions = new ArrayList<>();
+        List<MigrationPlan.Step> steps = new ArrayList<>();
         for (var name : tableColumns.keySet()) {
             var tableColumn = tableColumns.get(name);
             if (!sqlColumns.keySet().stream().anyMatch(key -> key.equalsIgnoreCase(name))) {
-                modeller.addColumn(tableColumn);
-                actions.add(Action.addColumn(tableColumn));
+                steps.add(new MigrationPlan.AddColumn(tableColumn));
+                working.addColumn(tableColumn);
             } else {
                 var opt = sqlColumns.keySet().stream().filter(key -> key.equalsIgnoreCase(name))
                         .map(n -> sqlColumns.get(n)).findFirst();
                 if (opt.isPresent()) {
                     var sqlColumn = opt.get();
                     if (!sqlColumn.getName().equals(tableColumn.getName())) {
-                        modeller.renameColumn(sqlColumn, tableColumn);
-                        actions.add(Action.renameColumn(sqlColumn, tableColumn));
+                        steps.add(new MigrationPlan.RenameColumn(sqlColumn, tableColumn));
                     }
                     if (isNotSame(tableColumn, sqlColumn)) {
-                        modeller.modifyColumn(sqlColumn, tableColumn);
-                        actions.add(Action.modifyColumn(tableColumn));
+                        steps.add(new MigrationPlan.ModifyColumn(sqlColumn, tableColumn));
+                        working.replaceColumn(sqlColumn.getName(), tableColumn);
+                    } else if (!sqlColumn.getName().equals(tableColumn.getName())) {
+                        working.replaceColumn(sqlColumn.getName(), tableColumn);
                     }
                 }
             }
@@ -81,52 +296,58 @@ public final class SqlVerifier {
             var sqlColumn = sqlColumns.get(name);
             if (!tableColumns.containsKey(name)) {
                 if (deleteMissingColumns) {
-                    modeller.deleteColumn(sqlColumn);
-                    actions.add(Action.deleteColumn(sqlColumn));
+                    for (var sqlIndex : working.getIndexes()) {
+                        if (sqlIndex.getColumns().stream().anyMatch(col -> col.getName().equals(name))) {
+                            steps.add(new MigrationPlan.DeleteIndex(current.getIndex(sqlIndex.getName())));
+                            working.removeIndex(sqlIndex.getName());
+                        }
+                    }
+                    steps.add(new MigrationPlan.DeleteColumn(sqlColumn));
+                    working.removeColumn(name);
                 } else {
                     if (!sqlColumn.isNullable()) {
-                        if (sqlColumn instanceof SqlColumn) {
-                            ((SqlColumn) sqlColumn).setNullable(true);
-                            modeller.modifyColumn(sqlColumn);
-                            actions.add(Action.modifyColumn(sqlColumn));
-                        }
+                        var nullable = SqlColumn.copyOf(current, sqlColumn, name, true, sqlColumn.getDefault(),
+                                sqlColumn.isAutoIncrement());
+                        nullable.setKey(sqlColumn.isKey());
+                        steps.add(new MigrationPlan.ModifyColumn(null, nullable));
+                        working.replaceColumn(name, nullable);
                     }
                 }
             }
         }
-        return actions;
+        return steps;
     }
 
-    private List<Action> synchronizeIndexes(Table table) throws SqlModellerException {
-        Table sqlTable = modeller.readTable(table.getDatabase(), table.getName());
+    private List<MigrationPlan.Step> planIndexes(Table table, SqlTable current, SqlTable working) {
         Map<String, Index> tableIndexes = table.getIndexes().stream()
                 .collect(Collectors.toMap(Index::getName, col -> col));
-        Map<String, Index> sqlIndexes = sqlTable.getIndexes().stream()
+        Map<String, Index> sqlIndexes = working.getIndexes().stream()
                 .collect(Collectors.toMap(Index::getName, col -> col));
-        List<Action> actions = new ArrayList<>();
+        List<MigrationPlan.Step> steps = new ArrayList<>();
         for (String name : tableIndexes.keySet()) {
             Index tableIndex = tableIndexes.get(name);
             if (!sqlIndexes.containsKey(name)) {
-                modeller.addIndex(tableIndex);
-                actions.add(Action.addIndex(tableIndex));
+                steps.add(new MigrationPlan.AddIndex(tableIndex));
             } else {
                 Index sqlIndex = sqlIndexes.get(name);
                 if (!isSame(tableIndex, sqlIndex)) {
-                    modeller.modifyIndex(tableIndex);
-                    actions.add(Action.modifyIndex(tableIndex));
+                    steps.add(new MigrationPlan.ModifyIndex(tableIndex));
                 }
             }
         }
         for (String name : sqlIndexes.keySet()) {
-            Index sqlIndex = sqlIndexes.get(name);
             if (!tableIndexes.containsKey(name)) {
                 if (deleteMissingIndexes) {
-                    modeller.removeIndex(sqlIndex);
-                    actions.add(Action.deleteIndex(sqlIndex));
+                    steps.add(new MigrationPlan.DeleteIndex(current.getIndex(name)));
                 }
             }
         }
-        return actions;
+        return steps;
+    }
+
+    private boolean isSameTable(Table one, Table other) {
+        return one.getName().equals(other.getName())
+                && one.getDatabase().getName().equals(other.getDatabase().getName());
     }
 
     private boolean isNotSame(Column one, Column other) {
@@ -192,6 +413,18 @@ public final class SqlVerifier {
         };
     }
 
+    /**
+     * The result of synchronizing one table of a database.
+     *
+     * @param table    The table
+     * @param actions  The changes made to the table
+     * @param duration The time it took to synchronize the table
+     * @param throttle How the replication lag throttle held the synchronization back
+     * @param skipped  Was the table left unchanged because other sessions blocked it?
+     */
+    public record TableResult(Table table, List<Action> actions, Duration duration, ThrottleStats throttle, boolean skipped) {
+    }
+
     private SqlVerifier(SqlModeller modeller, boolean deleteMissingColumns, boolean deleteMissingIndexes) {
         this.modeller = modeller;
         this.deleteMissingColumns = deleteMissingColumns;
@@ -0,0 +1,29 @@
+package com.heliorm.sql;
+
+import java.sql.SQLException;
+
+/**
+ * A SQL exception from a DDL statement run by a modeller, which keeps the statement and whether the failure can be
+ * retried, so that they can be passed on in a SqlModellerException.
+ */
+final class StatementException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String sql;
+    private final boolean retryable;
+
+    StatementException(String sql, boolean retryable, SQLException cause) {
+        super(cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+        this.sql = sql;
+        this.retryable = retryable;
+    }
+
+    String getSql() {
+        return sql;
+    }
+
+    boolean isRetryable() {
+        return retryable;
+    }
+}
@@ -0,0 +1,185 @@
+package com.heliorm.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A filter that selects the tables of a database to read by name. Tables can be included and excluded with SQL LIKE
+ * patterns, where % matches any characters, _ matches one character and \ escapes the next character, or with
+ * regular expressions. A table is selected if it matches any include, or there are no includes, and matches no
+ * exclude.
+ * <p>
+ * Modellers push the LIKE patterns down into their catalog queries where they can, and apply the whole filter to the
+ * table names read. Regular expressions are always applied in Java.
+ * <p>
+ * A filter is immutable, each method that adds a pattern returns a new filter.
+ */
+public final class TableFilter {
+
+    private static final TableFilter ALL = new TableFilter(List.of(), List.of(), List.of(), List.of());
+
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final List<Pattern> includeRegexes;
+    private final List<Pattern> excludeRegexes;
+    private final List<Pattern> includeLikes;
+    private final List<Pattern> excludeLikes;
+
+    private TableFilter(List<String> includes, List<String> excludes, List<Pattern> includeRegexes, List<Pattern> excludeRegexes) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.includeRegexes = includeRegexes;
+        this.excludeRegexes = excludeRegexes;
+        this.includeLikes = includes.stream().map(TableFilter::likeToRegex).toList();
+        this.excludeLikes = excludes.stream().map(TableFilter::likeToRegex).toList();
+    }
+
+    /**
+     * Get a filter that selects all tables.
+     *
+     * @return The filter
+     */
+    public static TableFilter all() {
+        return ALL;
+    }
+
+    /**
+     * Include the tables with names matching a LIKE pattern.
+     *
+     * @param pattern The pattern
+     * @return The new filter
+     */
+    public TableFilter include(String pattern) {
+        return new TableFilter(add(includes, pattern), excludes, includeRegexes, excludeRegexes);
+    }
+
+    /**
+     * Exclude the tables with names matching a LIKE pattern.
+     *
+     * @param pattern The pattern
+     * @return The new filter
+     */
+    public TableFilter exclude(String pattern) {
+        return new TableFilter(includes, add(excludes, pattern), includeRegexes, excludeRegexes);
+    }
+
+    /**
+     * Include the tables with names matching a regular expression.
+     *
+     * @param regex The regular expression
+     * @return The new filter
+     */
+    public TableFilter includeRegex(String regex) {
+        return new TableFilter(includes, excludes, add(includeRegexes, Pattern.compile(regex)), excludeRegexes);
+    }
+
+    /**
+     * Exclude the tables with names matching a regular expression.
+     *
+     * @param regex The regular expression
+     * @return The new filter
+     */
+    public TableFilter excludeRegex(String regex) {
+        return new TableFilter(includes, excludes, includeRegexes, add(excludeRegexes, Pattern.compile(regex)));
+    }
+
+    /**
+     * Check if a table is selected by the filter.
+     *
+     * @param tableName The table name
+     * @return Is it selected?
+     */
+    public boolean test(String tableName) {
+        var included = includes.isEmpty() && includeRegexes.isEmpty()
+                || matchesAny(includeLikes, tableName)
+                || matchesAny(includeRegexes, tableName);
+        return included && !matchesAny(excludeLikes, tableName) && !matchesAny(excludeRegexes, tableName);
+    }
+
+    /**
+     * Get the single LIKE pattern that selects a superset of the tables selected by this filter, that can be passed
+     * as the table name pattern to DatabaseMetaData.getTables().
+     *
+     * @return The pattern, or null if there is no single pattern
+     */
+    String getTablePattern() {
+        return includes.size() == 1 && includeRegexes.isEmpty() ? includes.getFirst() : null;
+    }
+
+    /**
+     * Make a SQL condition, starting with AND, that selects a superset of the tables selected by this filter based on
+     * its LIKE patterns. The patterns are bound as parameters with bind().
+     *
+     * @param column The SQL expression for the table name
+     * @return The condition, which is empty if all tables are selected
+     */
+    public String toSql(String column) {
+        var sql = new StringBuilder();
+        if (!includes.isEmpty() && includeRegexes.isEmpty()) {
+            sql.append(" AND (");
+            for (int i = 0; i < includes.size(); ++i) {
+                sql.append(i > 0 ? " OR " : "").append(column).append(" LIKE ?");
+            }
+            sql.append(")");
+        }
+        for (int i = 0; i < excludes.size(); ++i) {
+            sql.append(" AND ").append(column).append(" NOT LIKE ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Bind the parameters of the condition made by toSql() to a statement.
+     *
+     * @param stmt  The statement
+     * @param index The index of the first parameter
+     * @return The index of the next parameter
+     * @throws SQLException Thrown if the parameters can't be set
+     */
+    public int bind(PreparedStatement stmt, int index) throws SQLException {
+        if (includeRegexes.isEmpty()) {
+            for (var pattern : includes) {
+                stmt.setString(index++, pattern);
+            }
+        }
+        for (var pattern : excludes) {
+            stmt.setString(index++, pattern);
+        }
+        return index;
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String name) {
+        for (var pattern : patterns) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern likeToRegex(String pattern) {
+        var regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); ++i) {
+            var c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static <T> List<T> add(List<T> list, T value) {
+        var copy = new ArrayList<>(list);
+        copy.add(value);
+        return List.copyOf(copy);
+    }
+}
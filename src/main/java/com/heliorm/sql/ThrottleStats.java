@@ -0,0 +1,19 @@
+package com.heliorm.sql;
+
+import java.time.Duration;
+
+/**
+ * Statistics on how the replication lag throttle held back the work run on a session.
+ *
+ * @param checks    The number of times the lag was read
+ * @param pauses    The number of times work waited for the replicas to catch up
+ * @param throttled The total time work waited
+ * @param maxLag    The largest lag read
+ */
+public record ThrottleStats(int checks, int pauses, Duration throttled, Duration maxLag) {
+
+    /**
+     * Statistics for work that was not throttled.
+     */
+    public static final ThrottleStats NONE = new ThrottleStats(0, 0, Duration.ZERO, Duration.ZERO);
+}
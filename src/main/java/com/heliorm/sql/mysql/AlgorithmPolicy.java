@@ -0,0 +1,20 @@
+package com.heliorm.sql.mysql;
+
+/**
+ * How the MySQL modeller asks the server to apply ALTER TABLE and index changes.
+ */
+public enum AlgorithmPolicy {
+    /**
+     * Leave the choice of algorithm to the server. This may copy the table and block writes while it does.
+     */
+    SERVER_DEFAULT,
+    /**
+     * Ask for an instant change first, then an in-place change that allows concurrent writes, and only copy the
+     * table if neither is possible.
+     */
+    ONLINE_PREFERRED,
+    /**
+     * Ask for an instant or in-place change that allows concurrent writes, and fail instead of copying the table.
+     */
+    ONLINE_ONLY
+}
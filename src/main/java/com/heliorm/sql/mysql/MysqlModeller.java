@@ -2,7 +2,9 @@ package com.heliorm.sql.mysql;
 
 import com.heliorm.sql.BinaryColumn;
 import com.heliorm.sql.BitColumn;
+import com.heliorm.sql.Blocker;
 import com.heliorm.sql.BooleanColumn;
+import com.heliorm.sql.Catalog;
 import com.heliorm.sql.Column;
 import com.heliorm.sql.Database;
 import com.heliorm.sql.DateTimeColumn;
@@ -10,22 +12,30 @@ import com.heliorm.sql.DecimalColumn;
 import com.heliorm.sql.DoubleColumn;
 import com.heliorm.sql.EnumColumn;
 import com.heliorm.sql.Index;
+import com.heliorm.sql.MigrationPlan;
+import com.heliorm.sql.ModellerSession;
 import com.heliorm.sql.SetColumn;
 import com.heliorm.sql.SqlModeller;
 import com.heliorm.sql.SqlModellerException;
 import com.heliorm.sql.StringColumn;
 import com.heliorm.sql.Table;
+import com.heliorm.sql.TableFilter;
 import com.heliorm.sql.TimeStampColumn;
 
 import java.sql.Connection;
 import java.sql.JDBCType;
-import java.sql.ResultSet;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.function.Supplier;
@@ -37,15 +47,508 @@ import static java.lang.String.format;
  * An implementation of the SQL modeller that deals with MySQL/MariaDB syntax.
  */
 public final class MysqlModeller extends SqlModeller {
+
+    /**
+     * The error codes MySQL and MariaDB return when an ALTER can't be done with the requested algorithm or lock.
+     */
+    private static final Set<Integer> ALGORITHM_NOT_SUPPORTED = Set.of(1845, 1846);
+    /**
+     * The error codes MySQL and MariaDB return when a table of metadata locks is missing or can't be read.
+     */
+    private static final Set<Integer> METADATA_LOCKS_NOT_AVAILABLE = Set.of(1109, 1142, 1146);
+    private static final System.Logger LOG = System.getLogger(MysqlModeller.class.getName());
+
     private final boolean  anonymousDb;
+    private final boolean bulkRead;
+    private volatile AlgorithmPolicy algorithmPolicy = AlgorithmPolicy.SERVER_DEFAULT;
+    private volatile OnlineChangeOptions onlineChangeOptions;
+    private volatile ServerVersion serverVersion;
+    private volatile boolean noMetadataLocks;
+    private volatile boolean noMetadataLockInfo;
     /**
      * Create a new modeller with the given connection supplier.
      *
      * @param supplier The connection supplier
      */
     public MysqlModeller(Supplier<Connection> supplier, boolean anonymousDb) {
+        this(supplier, anonymousDb, false);
+    }
+
+    /**
+     * Create a new modeller with the given connection supplier.
+     *
+     * @param supplier    The connection supplier
+     * @param anonymousDb Leave the database name out of table names
+     * @param bulkRead    Read whole databases from information_schema with a few set based queries
+     */
+    public MysqlModeller(Supplier<Connection> supplier, boolean anonymousDb, boolean bulkRead) {
         super(supplier);
         this.anonymousDb = anonymousDb;
+        this.bulkRead = bulkRead;
+    }
+
+    /**
+     * Set the policy for the algorithm used to apply ALTER TABLE and index changes. The default leaves the choice to
+     * the server.
+     *
+     * @param algorithmPolicy The policy
+     */
+    public void setAlgorithmPolicy(AlgorithmPolicy algorithmPolicy) {
+        this.algorithmPolicy = algorithmPolicy;
+    }
+
+    /**
+     * Set the options for online schema changes with a shadow table. An ALTER TABLE on a table of at least the
+     * minimum size in the options, that the server can't apply instantly or in place while allowing writes, is then
+     * applied by copying the table into a changed shadow table in chunks, keeping the copy in sync with triggers, and
+     * swapping it in with an atomic rename. This applies to all changes made through the modeller, including those
+     * made by a verifier. The default, null, leaves such changes to the server.
+     *
+     * @param onlineChangeOptions The options, or null
+     */
+    public void setOnlineChangeOptions(OnlineChangeOptions onlineChangeOptions) {
+        this.onlineChangeOptions = onlineChangeOptions;
+    }
+
+    /**
+     * Run a DDL statement with the algorithms allowed by the policy, from the least to the most disruptive, moving
+     * on to the next when the server reports that it can't apply the change with the one asked for. Only ALTER TABLE,
+     * CREATE INDEX and DROP INDEX take an algorithm, other statements and statements that name their own algorithm
+     * are run as they are. An ALTER TABLE
+     * on a large table that can't be applied online by the server is applied with a shadow table if online change
+     * options are set.
+     */
+    @Override
+    protected void executeStatement(ModellerSession session, Table table, String sql) throws SQLException, SqlModellerException {
+        var policy = algorithmPolicy;
+        var kind = StatementKind.of(sql);
+        var alter = kind == StatementKind.ALTER_TABLE;
+        var shadow = alter ? makeShadowTableChange(session, table, sql) : null;
+        if (shadow == null && (policy == AlgorithmPolicy.SERVER_DEFAULT || kind == StatementKind.OTHER)) {
+            super.executeStatement(session, table, sql);
+            return;
+        }
+        var version = getServerVersion(session);
+        var algorithms = new ArrayList<String>();
+        if (alter) {
+            if (version.supportsInstant()) {
+                algorithms.add(", ALGORITHM=INSTANT");
+            }
+            if (version.supportsNoCopy()) {
+                algorithms.add(", ALGORITHM=NOCOPY, LOCK=NONE");
+            }
+            algorithms.add(", ALGORITHM=INPLACE, LOCK=NONE");
+        } else {
+            algorithms.add(" ALGORITHM=INPLACE LOCK=NONE");
+        }
+        SQLException notSupported = null;
+        for (var algorithm : algorithms) {
+            try {
+                super.executeStatement(session, table, sql + algorithm);
+                return;
+            } catch (SQLException ex) {
+                if (!ALGORITHM_NOT_SUPPORTED.contains(ex.getErrorCode())) {
+                    throw ex;
+                }
+                notSupported = ex;
+            }
+        }
+        if (shadow != null) {
+            shadow.run();
+            return;
+        }
+        if (policy == AlgorithmPolicy.ONLINE_ONLY) {
+            throw new SQLException(format("Changing table '%s' needs a table copy, which the algorithm policy does not allow (%s)",
+                    table.getName(), notSupported.getMessage()), notSupported.getSQLState(), notSupported.getErrorCode(), notSupported);
+        }
+        super.executeStatement(session, table, sql + (alter ? ", ALGORITHM=COPY" : " ALGORITHM=COPY"));
+    }
+
+    /**
+     * Modify a column. When the column joins or leaves the primary key, the key is rebuilt in the same statement,
+     * after checking in the catalog whether the table has a key to drop. When only values are appended to an ENUM or
+     * SET column, and the server supports it, the change is asked for with ALGORITHM=INSTANT so that it never falls
+     * back to a table copy. Other changes, and servers that refuse the instant change, take the normal path.
+     */
+    @Override
+    protected void modifyColumn(ModellerSession session, Column current, Column changed) throws SqlModellerException {
+        if (current.isKey() != changed.isKey()) {
+            try {
+                executeUpdate(session, changed.getTable(), makeModifyColumnQuery(current, changed, hasPrimaryKey(session, changed.getTable())));
+                return;
+            } catch (SQLException ex) {
+                throw new SqlModellerException(format("Error modifying column '%s' in table '%s' (%s)", current.getName(), current.getTable().getName(), ex.getMessage()), ex);
+            }
+        }
+        if (algorithmPolicy == AlgorithmPolicy.SERVER_DEFAULT && isAppendOnly(current, changed)) {
+            try {
+                if (getServerVersion(session).supportsInstant()) {
+                    executeUpdate(session, changed.getTable(), format("ALTER TABLE %s MODIFY COLUMN %s %s, ALGORITHM=INSTANT",
+                            getTableName(changed.getTable()),
+                            getColumnName(changed),
+                            getCreateType(changed)));
+                    return;
+                }
+            } catch (SQLException ex) {
+                if (!ALGORITHM_NOT_SUPPORTED.contains(ex.getErrorCode())) {
+                    throw new SqlModellerException(format("Error modifying column '%s' in table '%s' (%s)", current.getName(), current.getTable().getName(), ex.getMessage()), ex);
+                }
+            }
+        }
+        super.modifyColumn(session, current, changed);
+    }
+
+    /**
+     * Make the shadow table change for an ALTER TABLE statement, if online change options are set, the table is large
+     * enough to need one, and the statement leaves the primary key alone. The swap at the end of the change is run on
+     * its own through executeUpdate, so that a lock timeout retries only the swap and not the whole copy.
+     *
+     * @param session The session
+     * @param table   The table
+     * @param sql     The statement
+     * @return The change, or null if the statement is left to the server
+     * @throws SQLException Thrown if the table size can't be read
+     */
+    private ShadowTableChange makeShadowTableChange(ModellerSession session, Table table, String sql) throws SQLException {
+        var options = onlineChangeOptions;
+        var prefix = format("ALTER TABLE %s ", getTableName(table));
+        if (options == null || !sql.startsWith(prefix) || sql.contains("ALGORITHM=")
+                || !ShadowTableChange.supports(sql.substring(prefix.length()))) {
+            return null;
+        }
+        var stmt = session.prepare("SELECT DATA_LENGTH + INDEX_LENGTH FROM information_schema.TABLES " +
+                "WHERE TABLE_SCHEMA=? AND TABLE_NAME=?");
+        stmt.setString(1, table.getDatabase().getName());
+        stmt.setString(2, table.getName());
+        try (var rs = stmt.executeQuery()) {
+            if (!rs.next() || rs.getLong(1) < options.getMinTableSize()) {
+                return null;
+            }
+        }
+        return new ShadowTableChange(session.getConnection(), table.getDatabase().getName(), !anonymousDb, table.getName(),
+                sql.substring(prefix.length()), options, () -> awaitReplication(session), rename -> executeUpdate(session, table, rename));
+    }
+
+    /**
+     * Keep the shadow column in sync with BEFORE INSERT and BEFORE UPDATE triggers that copy the column's value.
+     */
+    @Override
+    protected List<String> makeBackfillSyncQueries(Column current, Column shadow, Column changed) throws SqlModellerException {
+        var set = format("SET NEW.%s = %s", getColumnName(shadow), makeBackfillExpression("NEW." + getColumnName(current), changed));
+        return List.of(
+                format("CREATE TRIGGER %s BEFORE INSERT ON %s FOR EACH ROW %s", getTriggerName(current, "_bfi"), getTableName(current.getTable()), set),
+                format("CREATE TRIGGER %s BEFORE UPDATE ON %s FOR EACH ROW %s", getTriggerName(current, "_bfu"), getTableName(current.getTable()), set));
+    }
+
+    @Override
+    protected List<String> makeDropBackfillSyncQueries(Column current, Column shadow) {
+        return List.of(
+                format("DROP TRIGGER IF EXISTS %s", getTriggerName(current, "_bfi")),
+                format("DROP TRIGGER IF EXISTS %s", getTriggerName(current, "_bfu")));
+    }
+
+    @Override
+    protected String makeSetDefaultQuery(Column column) {
+        return format("ALTER TABLE %s ALTER COLUMN %s SET DEFAULT %s", getTableName(column.getTable()), getColumnName(column),
+                makeDefaultValue(column));
+    }
+
+    /**
+     * Make the column NOT NULL with an in-place change that allows concurrent writes. The table is rebuilt in place,
+     * but the statement fails rather than fall back to a copy that blocks writes.
+     */
+    @Override
+    protected List<String> makeSetNotNullQueries(Column column) throws SqlModellerException {
+        return List.of(format("ALTER TABLE %s MODIFY COLUMN %s %s, ALGORITHM=INPLACE, LOCK=NONE", getTableName(column.getTable()),
+                getColumnName(column), getCreateType(column, true)));
+    }
+
+    /**
+     * Swap the shadow column in without copying the table while writes are blocked. The shadow column is first made
+     * NOT NULL, if needed, with an in-place change that allows concurrent writes while the triggers keep it in sync.
+     * Then, while the table is locked for writes so that no write falls between dropping the triggers and the swap,
+     * the columns are swapped by renaming them, which only changes the table's metadata. The swap runs in a
+     * transaction, as MySQL advises for LOCK TABLES on InnoDB tables, which bounds the wait for the table lock with
+     * lock_wait_timeout and retries it as a whole, and keeps the lag throttle from waiting with the lock held. The old
+     * column is dropped after the lock is released, instantly where the server can, and otherwise in place while
+     * allowing concurrent writes.
+     */
+    @Override
+    protected void swapBackfillColumn(ModellerSession session, Column current, Column shadow, Column changed) throws SQLException, SqlModellerException {
+        var table = changed.getTable();
+        var tableName = getTableName(table);
+        var version = getServerVersion(session);
+        var old = format("`%s`", makeTempColumnName(session, current.getName(), "__old"));
+        if (!changed.isNullable()) {
+            executeUpdate(session, table, format("ALTER TABLE %s MODIFY COLUMN %s %s, ALGORITHM=INPLACE, LOCK=NONE",
+                    tableName, getColumnName(shadow), getCreateType(changed, true)));
+        }
+        var rename = version.supportsRenameColumn()
+                ? format("ALTER TABLE %s RENAME COLUMN %s TO %s, RENAME COLUMN %s TO %s, ALGORITHM=INPLACE",
+                tableName, getColumnName(current), old, getColumnName(shadow), getColumnName(changed))
+                : format("ALTER TABLE %s CHANGE COLUMN %s %s %s, CHANGE COLUMN %s %s %s, ALGORITHM=INPLACE",
+                tableName, getColumnName(current), old, getCreateType(current, true),
+                getColumnName(shadow), getColumnName(changed), getCreateType(changed, true));
+        executeTransaction(session, table, () -> {
+            executeUpdate(session, table, format("LOCK TABLES %s WRITE", tableName));
+            try {
+                for (var sql : makeDropBackfillSyncQueries(current, shadow)) {
+                    executeUpdate(session, table, sql);
+                }
+                executeUpdate(session, table, rename);
+                session.getConnection().commit();
+            } finally {
+                executeUpdate(session, table, "UNLOCK TABLES");
+            }
+        });
+        executeUpdate(session, table, format("ALTER TABLE %s DROP COLUMN %s, %s", tableName, old,
+                version.supportsInstantDropColumn() ? "ALGORITHM=INSTANT" : "ALGORITHM=INPLACE, LOCK=NONE"));
+    }
+
+    /**
+     * MySQL only takes whole seconds for lock_wait_timeout, which bounds the wait for metadata locks that DDL
+     * statements take.
+     */
+    @Override
+    protected String makeLockTimeoutQuery(Duration lockTimeout) {
+        return format("SET SESSION lock_wait_timeout = %d", Math.max(1, lockTimeout.toSeconds()));
+    }
+
+    @Override
+    protected String makeResetLockTimeoutQuery() {
+        return "SET SESSION lock_wait_timeout = DEFAULT";
+    }
+
+    /**
+     * MySQL and MariaDB return 1205 (ER_LOCK_WAIT_TIMEOUT) when a lock wait times out, and 1213 (ER_LOCK_DEADLOCK)
+     * for a deadlock victim.
+     */
+    @Override
+    protected boolean isLockTimeout(SQLException ex) {
+        return ex.getErrorCode() == 1205 || ex.getErrorCode() == 1213;
+    }
+
+    /**
+     * Sessions holding metadata locks on the table are read from performance_schema.metadata_locks, with the age of
+     * their InnoDB transaction from information_schema.INNODB_TRX, or the time in their current state if they have
+     * none. MariaDB has no metadata_locks, and there they are read from information_schema.METADATA_LOCK_INFO if the
+     * metadata_lock_info plugin is installed. Where neither can be read, the sessions blocking a table are unknown,
+     * which is logged once, and statements go ahead as if there were none.
+     */
+    @Override
+    protected List<Blocker> readBlockers(ModellerSession session, Table table) throws SQLException {
+        if (!noMetadataLocks) {
+            try {
+                return readBlockers(session, table, "SELECT DISTINCT t.PROCESSLIST_ID, t.PROCESSLIST_USER, t.PROCESSLIST_COMMAND, t.PROCESSLIST_INFO, " +
+                        "COALESCE(TIMESTAMPDIFF(SECOND, x.trx_started, NOW()), t.PROCESSLIST_TIME) " +
+                        "FROM performance_schema.metadata_locks m " +
+                        "JOIN performance_schema.threads t ON t.THREAD_ID = m.OWNER_THREAD_ID " +
+                        "LEFT JOIN information_schema.INNODB_TRX x ON x.trx_mysql_thread_id = t.PROCESSLIST_ID " +
+                        "WHERE m.OBJECT_TYPE = 'TABLE' AND m.OBJECT_SCHEMA = ? AND m.OBJECT_NAME = ? AND m.LOCK_STATUS = 'GRANTED' " +
+                        "AND t.PROCESSLIST_ID <> CONNECTION_ID()");
+            } catch (SQLException ex) {
+                if (!METADATA_LOCKS_NOT_AVAILABLE.contains(ex.getErrorCode())) {
+                    throw ex;
+                }
+                noMetadataLocks = true;
+            }
+        }
+        if (!noMetadataLockInfo) {
+            try {
+                return readBlockers(session, table, "SELECT DISTINCT p.ID, p.USER, p.COMMAND, p.INFO, " +
+                        "COALESCE(TIMESTAMPDIFF(SECOND, x.trx_started, NOW()), p.TIME) " +
+                        "FROM information_schema.METADATA_LOCK_INFO m " +
+                        "JOIN information_schema.PROCESSLIST p ON p.ID = m.THREAD_ID " +
+                        "LEFT JOIN information_schema.INNODB_TRX x ON x.trx_mysql_thread_id = p.ID " +
+                        "WHERE m.TABLE_SCHEMA = ? AND m.TABLE_NAME = ? AND p.ID <> CONNECTION_ID()");
+            } catch (SQLException ex) {
+                if (!METADATA_LOCKS_NOT_AVAILABLE.contains(ex.getErrorCode())) {
+                    throw ex;
+                }
+                noMetadataLockInfo = true;
+                LOG.log(System.Logger.Level.WARNING, "Cannot read metadata locks, neither performance_schema.metadata_locks " +
+                        "nor information_schema.METADATA_LOCK_INFO is available, so DDL is not checked for blocking sessions");
+            }
+        }
+        return List.of();
+    }
+
+    private List<Blocker> readBlockers(ModellerSession session, Table table, String sql) throws SQLException {
+        var stmt = session.prepare(sql);
+        stmt.setString(1, table.getDatabase().getName());
+        stmt.setString(2, table.getName());
+        return readBlockers(stmt);
+    }
+
+    private List<Blocker> readBlockers(PreparedStatement stmt) throws SQLException {
+        var blockers = new ArrayList<Blocker>();
+        try (var rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                blockers.add(new Blocker(rs.getLong(1), rs.getString(2), rs.getString(3),
+                        Duration.ofSeconds(rs.getLong(5)), rs.getString(4)));
+            }
+        }
+        return blockers;
+    }
+
+    /**
+     * Make the literal for the default of a column.
+     *
+     * @param column The column
+     * @return The literal
+     */
+    private String makeDefaultValue(Column column) {
+        return switch (column) {
+            case StringColumn sc -> "'" + sc.getDefault() + "'";
+            case EnumColumn ec -> "'" + ec.getDefault() + "'";
+            default -> column.getDefault();
+        };
+    }
+
+    /**
+     * Get the name of a trigger made for a column, qualified like the column's table and shortened to keep within
+     * MySQL's limit.
+     *
+     * @param column The column
+     * @param suffix The suffix that tells the column's triggers apart
+     * @return The name
+     */
+    private String getTriggerName(Column column, String suffix) {
+        var name = column.getTable().getName() + "_" + column.getName();
+        if (name.length() > 64 - suffix.length()) {
+            name = name.substring(0, 64 - suffix.length());
+        }
+        name = name + suffix;
+        return anonymousDb ? format("`%s`", name) : format("`%s`.`%s`", column.getTable().getDatabase().getName(), name);
+    }
+
+    /**
+     * Get the server version, reading it the first time it is needed.
+     *
+     * @param session The session
+     * @return The version
+     * @throws SQLException Thrown if the version can't be read
+     */
+    private ServerVersion getServerVersion(ModellerSession session) throws SQLException {
+        var version = serverVersion;
+        if (version == null) {
+            version = ServerVersion.of(session.getMetaData());
+            serverVersion = version;
+        }
+        return version;
+    }
+
+    @Override
+    protected Map<String, String> readChangeMarkers(ModellerSession session, String database) throws SQLException {
+        var stmt = session.prepare("SELECT t.TABLE_NAME, t.CREATE_TIME, t.UPDATE_TIME, c.COLUMN_SUM, s.INDEX_SUM " +
+                "FROM information_schema.TABLES t " +
+                "LEFT JOIN (SELECT TABLE_NAME, CONCAT(COUNT(*), ':', SUM(CRC32(CONCAT_WS('|', ORDINAL_POSITION, COLUMN_NAME, " +
+                "COLUMN_TYPE, IS_NULLABLE, IFNULL(COLUMN_DEFAULT, 'NULL'), EXTRA)))) AS COLUMN_SUM " +
+                "FROM information_schema.COLUMNS WHERE TABLE_SCHEMA=? GROUP BY TABLE_NAME) c ON c.TABLE_NAME=t.TABLE_NAME " +
+                "LEFT JOIN (SELECT TABLE_NAME, CONCAT(COUNT(*), ':', SUM(CRC32(CONCAT_WS('|', INDEX_NAME, NON_UNIQUE, " +
+                "SEQ_IN_INDEX, COLUMN_NAME)))) AS INDEX_SUM " +
+                "FROM information_schema.STATISTICS WHERE TABLE_SCHEMA=? GROUP BY TABLE_NAME) s ON s.TABLE_NAME=t.TABLE_NAME " +
+                "WHERE t.TABLE_SCHEMA=? AND t.TABLE_TYPE='BASE TABLE'");
+        stmt.setString(1, database);
+        stmt.setString(2, database);
+        stmt.setString(3, database);
+        var markers = new HashMap<String, String>();
+        try (var rs = stmt.executeQuery()) {
+            int tableName = rs.findColumn("TABLE_NAME");
+            int createTime = rs.findColumn("CREATE_TIME");
+            int updateTime = rs.findColumn("UPDATE_TIME");
+            int columnSum = rs.findColumn("COLUMN_SUM");
+            int indexSum = rs.findColumn("INDEX_SUM");
+            while (rs.next()) {
+                markers.put(rs.getString(tableName), format("%s/%s/%s/%s", rs.getString(createTime), rs.getString(updateTime), rs.getString(columnSum), rs.getString(indexSum)));
+            }
+        }
+        return markers;
+    }
+
+    @Override
+    protected Catalog readCatalog(ModellerSession session, String database, TableFilter filter) throws SQLException {
+        if (!bulkRead) {
+            return null;
+        }
+        var con = session.getConnection();
+        var catalog = new Catalog();
+        try (var stmt = con.prepareStatement("SELECT c.TABLE_NAME, c.COLUMN_NAME, c.DATA_TYPE, c.COLUMN_TYPE, " +
+                "c.CHARACTER_MAXIMUM_LENGTH, c.NUMERIC_PRECISION, c.NUMERIC_SCALE, c.IS_NULLABLE, c.COLUMN_DEFAULT, c.EXTRA " +
+                "FROM information_schema.COLUMNS c JOIN information_schema.TABLES t " +
+                "ON t.TABLE_SCHEMA=c.TABLE_SCHEMA AND t.TABLE_NAME=c.TABLE_NAME " +
+                "WHERE c.TABLE_SCHEMA=? AND t.TABLE_TYPE='BASE TABLE'" + filter.toSql("c.TABLE_NAME") + " " +
+                "ORDER BY c.TABLE_NAME, c.ORDINAL_POSITION")) {
+            stmt.setString(1, database);
+            filter.bind(stmt, 2);
+            try (var rs = stmt.executeQuery()) {
+                int tableName = rs.findColumn("TABLE_NAME");
+                int columnName = rs.findColumn("COLUMN_NAME");
+                int dataType = rs.findColumn("DATA_TYPE");
+                int columnType = rs.findColumn("COLUMN_TYPE");
+                int maxLength = rs.findColumn("CHARACTER_MAXIMUM_LENGTH");
+                int precision = rs.findColumn("NUMERIC_PRECISION");
+                int scale = rs.findColumn("NUMERIC_SCALE");
+                int nullable = rs.findColumn("IS_NULLABLE");
+                int columnDefault = rs.findColumn("COLUMN_DEFAULT");
+                int extra = rs.findColumn("EXTRA");
+                while (rs.next()) {
+                    var type = rs.getString(dataType).toLowerCase();
+                    var fullType = rs.getString(columnType);
+                    var jdbcType = jdbcType(type, fullType.toLowerCase());
+                    int size = switch (type) {
+                        case "char", "varchar", "binary", "varbinary" -> clamp(rs.getLong(maxLength));
+                        case "tinytext", "tinyblob" -> 255;
+                        case "text", "blob" -> 65535;
+                        case "mediumtext", "mediumblob" -> 16777215;
+                        case "longtext", "longblob", "json" -> Integer.MAX_VALUE;
+                        case "tinyint" -> jdbcType == JDBCType.BIT ? 1 : clamp(rs.getLong(precision));
+                        default -> clamp(rs.getLong(precision));
+                    };
+                    var values = switch (type) {
+                        case "enum", "set" -> parseValueList(fullType);
+                        default -> null;
+                    };
+                    catalog.addColumn(rs.getString(tableName), new Catalog.ColumnInfo(rs.getString(columnName),
+                            jdbcType,
+                            type.toUpperCase(),
+                            size,
+                            rs.getInt(scale),
+                            rs.getString(nullable).equals("YES"),
+                            rs.getString(extra).toLowerCase().contains("auto_increment"),
+                            rs.getString(columnDefault),
+                            values));
+                }
+            }
+        }
+        try (var stmt = con.prepareStatement("SELECT TABLE_NAME, COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE " +
+                "WHERE TABLE_SCHEMA=? AND CONSTRAINT_NAME='PRIMARY'" + filter.toSql("TABLE_NAME"))) {
+            stmt.setString(1, database);
+            filter.bind(stmt, 2);
+            try (var rs = stmt.executeQuery()) {
+                int tableName = rs.findColumn("TABLE_NAME");
+                int columnName = rs.findColumn("COLUMN_NAME");
+                while (rs.next()) {
+                    catalog.addKey(rs.getString(tableName), rs.getString(columnName));
+                }
+            }
+        }
+        try (var stmt = con.prepareStatement("SELECT TABLE_NAME, INDEX_NAME, COLUMN_NAME, NON_UNIQUE FROM information_schema.STATISTICS " +
+                "WHERE TABLE_SCHEMA=? AND INDEX_NAME<>'PRIMARY'" + filter.toSql("TABLE_NAME") + " " +
+                "ORDER BY TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX")) {
+            stmt.setString(1, database);
+            filter.bind(stmt, 2);
+            try (var rs = stmt.executeQuery()) {
+                int tableName = rs.findColumn("TABLE_NAME");
+                int indexName = rs.findColumn("INDEX_NAME");
+                int columnName = rs.findColumn("COLUMN_NAME");
+                int nonUnique = rs.findColumn("NON_UNIQUE");
+                while (rs.next()) {
+                    catalog.addIndex(rs.getString(tableName), rs.getString(indexName), rs.getString(columnName), rs.getInt(nonUnique) == 0);
+                }
+            }
+        }
+        return catalog;
     }
 
     @Override
@@ -68,9 +571,127 @@ public final class MysqlModeller extends SqlModeller {
     }
 
     @Override
-    public void modifyIndex(Index index) throws SqlModellerException {
-        removeIndex(index);
-        addIndex(index);
+    protected void modifyIndex(ModellerSession session, Index index) throws SqlModellerException {
+        session.removeIndex(index);
+        session.addIndex(index);
+    }
+
+    /**
+     * Combine the steps for a table into one ALTER TABLE statement, so that the table is rebuilt at most once. Key
+     * columns are modified in place, and the primary key is only dropped and added again, in the same statement, when
+     * the steps change which columns it is made of. Values appended to ENUM and SET columns, and changes done with a
+     * batched backfill, are applied first on their own, so that they are not pulled into a rebuild.
+     */
+    @Override
+    protected void alterTable(ModellerSession session, Table table, List<MigrationPlan.Step> steps) throws SqlModellerException {
+        var own = Collections.newSetFromMap(new IdentityHashMap<Column, Boolean>());
+        var changed = Collections.newSetFromMap(new IdentityHashMap<Column, Boolean>());
+        var dropped = new HashSet<String>();
+        var keyChanged = false;
+        for (var step : steps) {
+            switch (step) {
+                case MigrationPlan.ModifyColumn modify when modify.current() != null -> {
+                    if (isAppendOnly(modify.current(), modify.changed())) {
+                        own.add(modify.current());
+                    } else {
+                        changed.add(modify.current());
+                    }
+                    keyChanged |= modify.current().isKey() != modify.changed().isKey();
+                }
+                case MigrationPlan.AddColumn s -> keyChanged |= s.column().isKey();
+                case MigrationPlan.DeleteColumn s -> {
+                    dropped.add(s.column().getName());
+                    keyChanged |= s.column().isKey();
+                }
+                default -> {
+                }
+            }
+        }
+        var clauses = new ArrayList<String>();
+        for (var step : steps) {
+            if (isBackfilled(session, step)) {
+                applyStep(session, step);
+                continue;
+            }
+            switch (step) {
+                case MigrationPlan.CreateTable ignored -> applyStep(session, step);
+                case MigrationPlan.AddColumn s -> clauses.add(format("ADD COLUMN %s %s", getColumnName(s.column()), getCreateType(s.column(), true)));
+                case MigrationPlan.RenameColumn s -> {
+                    if (!changed.contains(s.current())) {
+                        clauses.add(format("RENAME COLUMN %s TO %s", getColumnName(s.current()), getColumnName(s.changed())));
+                    }
+                }
+                case MigrationPlan.ModifyColumn s -> {
+                    if (s.current() == null) {
+                        clauses.add(format("MODIFY COLUMN %s %s", getColumnName(s.changed()), getCreateType(s.changed(), true)));
+                    } else if (own.contains(s.current())) {
+                        applyStep(session, step);
+                    } else {
+                        clauses.add(format("CHANGE COLUMN %s %s %s", getColumnName(s.current()), getColumnName(s.changed()), getCreateType(s.changed(), true)));
+                    }
+                }
+                case MigrationPlan.DeleteColumn s -> clauses.add(format("DROP COLUMN %s", getColumnName(s.column())));
+                case MigrationPlan.AddIndex s -> clauses.add(makeAddIndexClause(s.index()));
+                case MigrationPlan.ModifyIndex s -> {
+                    clauses.add(format("DROP INDEX %s", getIndexName(s.index())));
+                    clauses.add(makeAddIndexClause(s.index()));
+                }
+                case MigrationPlan.DeleteIndex s -> clauses.add(format("DROP INDEX %s", getIndexName(s.index())));
+            }
+        }
+        if (keyChanged) {
+            try {
+                clauses.addAll(makePrimaryKeyClauses(table, dropped, hasPrimaryKey(session, table)));
+            } catch (SQLException ex) {
+                throw new SqlModellerException(format("Error reading primary key of table '%s' (%s)", table.getName(), ex.getMessage()), ex);
+            }
+        }
+        if (!clauses.isEmpty()) {
+            executeUpdates(session, table, List.of(format("ALTER TABLE %s %s", getTableName(table), String.join(", ", clauses))));
+        }
+    }
+
+    /**
+     * Generate the clauses that replace the primary key of a table with the one made of its key columns. Columns
+     * dropped by the same statement are left out, in case the table is the one read from SQL rather than the model.
+     *
+     * @param table   The table model with the wanted key columns
+     * @param dropped The names of the columns dropped by the same statement
+     * @param hasKey  Does the table have a primary key in SQL now?
+     * @return The clauses
+     */
+    private List<String> makePrimaryKeyClauses(Table table, Set<String> dropped, boolean hasKey) {
+        var clauses = new ArrayList<String>();
+        if (hasKey) {
+            clauses.add("DROP PRIMARY KEY");
+        }
+        var keys = table.getColumns().stream()
+                .filter(Column::isKey)
+                .filter(column -> !dropped.contains(column.getName()))
+                .map(this::getColumnName)
+                .collect(Collectors.joining(","));
+        if (!keys.isEmpty()) {
+            clauses.add(format("ADD PRIMARY KEY (%s)", keys));
+        }
+        return clauses;
+    }
+
+    /**
+     * Check if a table has a primary key in SQL.
+     *
+     * @param session The session
+     * @param table   The table
+     * @return Does it have one?
+     * @throws SQLException Thrown if the catalog can't be read
+     */
+    private boolean hasPrimaryKey(ModellerSession session, Table table) throws SQLException {
+        var stmt = session.prepare("SELECT COUNT(*) FROM information_schema.TABLE_CONSTRAINTS " +
+                "WHERE TABLE_SCHEMA=? AND TABLE_NAME=? AND CONSTRAINT_TYPE='PRIMARY KEY'");
+        stmt.setString(1, table.getDatabase().getName());
+        stmt.setString(2, table.getName());
+        try (var rs = stmt.executeQuery()) {
+            return rs.next() && rs.getInt(1) > 0;
+        }
     }
 
     @Override
@@ -98,23 +719,32 @@ public final class MysqlModeller extends SqlModeller {
         return getCreateType(column, false);
     }
 
+    /**
+     * Get the type of a column as used to create or change it. With skipKey the primary key is left out, for
+     * statements that keep or rebuild the primary key themselves. AUTO_INCREMENT is then only kept for key columns,
+     * since MySQL refuses it on a column that is not indexed.
+     *
+     * @param column  The column
+     * @param skipKey Leave out the primary key?
+     * @return The type
+     */
     private String getCreateType(Column column, boolean skipKey) {
         String typeName = column.getJdbcType().getName();
         StringBuilder type = new StringBuilder();
         switch (column) {
             case EnumColumn ec -> {
-                Set<String> enumValues = ec.getEnumValues();
+                var enumValues = ec.getEnumValues();
                 typeName = "ENUM("
                         + enumValues.stream()
-                        .map(val -> "'" + val + "'")
+                        .map(this::quoteValue)
                         .reduce((v1, v2) -> v1 + "," + v2).get()
                         + ")";
             }
             case SetColumn ec -> {
-                Set<String> values = ec.getSetValues();
+                var values = ec.getSetValues();
                 typeName = "SET("
                         + values.stream()
-                        .map(val -> "'" + val + "'")
+                        .map(this::quoteValue)
                         .reduce((v1, v2) -> v1 + "," + v2).get()
                         + ")";
             }
@@ -155,19 +785,13 @@ public final class MysqlModeller extends SqlModeller {
             type.append(" NOT NULL");
         }
         if ((column.getDefault() != null) && !column.isAutoIncrement()) {
-            type.append(" DEFAULT " + switch (column) {
-                case StringColumn sc -> "'" + sc.getDefault() + "'";
-                case EnumColumn ec -> "'" + ec.getDefault() + "'";
-                default -> column.getDefault();
-            });
+            type.append(" DEFAULT ").append(makeDefaultValue(column));
         }
-        if (!skipKey) {
-            if (column.isAutoIncrement()) {
-                type.append(" AUTO_INCREMENT");
-            }
-            if (column.isKey()) {
-                type.append(" PRIMARY KEY");
-            }
+        if (column.isAutoIncrement() && (!skipKey || column.isKey())) {
+            type.append(" AUTO_INCREMENT");
+        }
+        if (column.isKey() && !skipKey) {
+            type.append(" PRIMARY KEY");
         }
         return type.toString();
     }
@@ -183,26 +807,40 @@ public final class MysqlModeller extends SqlModeller {
     }
 
     @Override
-    protected Set<String> readEnumValues(EnumColumn column) throws SqlModellerException {
-        String query = format("SELECT SUBSTRING(COLUMN_TYPE,5) FROM information_schema.COLUMNS WHERE TABLE_SCHEMA='%s' " +
-                        "AND TABLE_NAME='%s' AND COLUMN_NAME='%s'",
-                column.getTable().getDatabase().getName(),
-                column.getTable().getName(),
-                column.getName());
-        try (Connection con = con(); Statement stmt = con.createStatement(); ResultSet ers = stmt.executeQuery(query)) {
-            if (ers.next()) {
-                return Arrays.stream(ers.getString(1).replace("enum", "").replace("(", "").replace(")", "")
-                                .split(","))
-                        .map(val -> val.substring(1, val.length() - 1))
-                        .collect(Collectors.toSet());
+    protected Set<String> readEnumValues(ModellerSession session, EnumColumn column) throws SqlModellerException {
+        try {
+            var stmt = session.prepare("SELECT COLUMN_TYPE FROM information_schema.COLUMNS " +
+                    "WHERE TABLE_SCHEMA=? AND TABLE_NAME=? AND COLUMN_NAME=?");
+            stmt.setString(1, column.getTable().getDatabase().getName());
+            stmt.setString(2, column.getTable().getName());
+            stmt.setString(3, column.getName());
+            try (var rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return parseValueList(rs.getString(1));
+                }
+                return new LinkedHashSet<>();
             }
-            return Collections.emptySet();
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error reading enum values from %s.%s.%s (%s)",
                     column.getTable().getDatabase().getName(), column.getTable().getName(), column.getName(), ex.getMessage()), ex);
         }
     }
 
+    @Override
+    protected Map<String, Set<String>> readValueLists(ModellerSession session, Table table) throws SQLException {
+        var values = new HashMap<String, Set<String>>();
+        var stmt = session.prepare("SELECT COLUMN_NAME, COLUMN_TYPE FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA=? AND TABLE_NAME=? AND DATA_TYPE IN ('enum','set')");
+        stmt.setString(1, table.getDatabase().getName());
+        stmt.setString(2, table.getName());
+        try (var rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                values.put(rs.getString(1), parseValueList(rs.getString(2)));
+            }
+        }
+        return values;
+    }
+
     @Override
     protected String makeRenameIndexQuery(Index current, Index changed) {
         return format("ALTER TABLE %s RENAME INDEX %s TO %s", getTableName(current.getTable()), getIndexName(current), getIndexName(changed));
@@ -215,47 +853,48 @@ public final class MysqlModeller extends SqlModeller {
 
     @Override
     protected String makeReadSetQuery(SetColumn column) {
-        return format("SELECT SUBSTRING(COLUMN_TYPE,5) FROM information_schema.COLUMNS WHERE TABLE_SCHEMA='%s' " +
-                "AND TABLE_NAME='%s' AND COLUMN_NAME='%s'", column.getTable().getDatabase().getName(), column.getTable().getName(), column.getName());
+        return "SELECT COLUMN_TYPE FROM information_schema.COLUMNS WHERE TABLE_SCHEMA=? AND TABLE_NAME=? AND COLUMN_NAME=?";
     }
 
     @Override
     protected Set<String> extractSetValues(String text) {
-        return Arrays.stream(text.replace("enum", "").replace("(", "").replace(")", "")
-                        .split(","))
-                .map(val -> val.substring(1, val.length() - 1))
-                .collect(Collectors.toSet());
+        return parseValueList(text);
     }
 
+    /**
+     * Modify a column in place. A key column stays part of the primary key, which is not rebuilt.
+     */
+    @Override
     protected List<String> makeModifyColumnQuery(Column column) {
-        var res = new ArrayList<String>();
-        if (column.isKey()) {
-            res.add(format("ALTER TABLE %s MODIFY COLUMN %s %s",
-                    getTableName(column.getTable()),
-                    getColumnName(column),
-                    getCreateType(column, true)) + ", DROP PRIMARY KEY;");
-        }
-        res.add(format("ALTER TABLE %s MODIFY COLUMN %s %s",
+        return List.of(format("ALTER TABLE %s MODIFY COLUMN %s %s",
                 getTableName(column.getTable()),
                 getColumnName(column),
-                getCreateType(column)));
-        return res;
+                getCreateType(column, true)));
     }
 
+    /**
+     * Modify a column in place. The primary key is left alone, changes that make a column join or leave it are made by
+     * modifyColumn, which reads the current key from the catalog.
+     */
     @Override
     protected List<String> makeModifyColumnQuery(Column current, Column changed) throws SqlModellerException {
-        var res = new ArrayList<String>();
-        if (current.isKey()) {
-            res.add(format("ALTER TABLE %s MODIFY COLUMN %s %s",
-                    getTableName(current.getTable()),
-                    getColumnName(current),
-                    getCreateType(current, true)) + ", DROP PRIMARY KEY;");
-        }
-        res.add(format("ALTER TABLE %s MODIFY COLUMN %s %s",
-                getTableName(changed.getTable()),
-                getColumnName(changed),
-                getCreateType(changed)));
-        return  res;
+        return List.of(format("ALTER TABLE %s MODIFY COLUMN %s %s", getTableName(changed.getTable()), getColumnName(changed), getCreateType(changed, true)));
+    }
+
+    /**
+     * Generate the statement that modifies a column in place and replaces the primary key, for a column that joins or
+     * leaves the key.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @param hasKey  Does the table have a primary key in SQL now?
+     * @return The statement
+     */
+    String makeModifyColumnQuery(Column current, Column changed, boolean hasKey) {
+        var clauses = new ArrayList<String>();
+        clauses.add(format("MODIFY COLUMN %s %s", getColumnName(changed), getCreateType(changed, true)));
+        clauses.addAll(makePrimaryKeyClauses(changed.getTable(), Set.of(), hasKey));
+        return format("ALTER TABLE %s %s", getTableName(changed.getTable()), String.join(", ", clauses));
     }
 
     @Override
@@ -266,6 +905,21 @@ public final class MysqlModeller extends SqlModeller {
                 getCreateType(column));
     }
 
+    /**
+     * Generate the ALTER TABLE clause that adds an index.
+     *
+     * @param index The index
+     * @return The clause
+     */
+    private String makeAddIndexClause(Index index) {
+        return format("ADD %sINDEX %s (%s)",
+                index.isUnique() ? "UNIQUE " : "",
+                getIndexName(index),
+                index.getColumns().stream()
+                        .map(this::getColumnName)
+                        .collect(Collectors.joining(",")));
+    }
+
     @Override
     protected String makeRemoveIndexQuery(Index index) {
         return format("DROP INDEX %s on %s",
@@ -288,18 +942,12 @@ public final class MysqlModeller extends SqlModeller {
     protected boolean typesAreCompatible(Column one, Column other) {
         if (one instanceof EnumColumn) {
             if (other instanceof EnumColumn) {
-                Set<String> ones = ((EnumColumn) one).getEnumValues();
-                Set<String> others = ((EnumColumn) other).getEnumValues();
-                return others.containsAll(ones)
-                        && (ones.containsAll(others));
+                return ((EnumColumn) one).getEnumValues().equals(((EnumColumn) other).getEnumValues());
             }
             return false;
         } else if (one instanceof SetColumn) {
             if (other instanceof SetColumn) {
-                Set<String> ones = ((SetColumn) one).getSetValues();
-                Set<String> others = ((SetColumn) other).getSetValues();
-                return others.containsAll(ones)
-                        && (ones.containsAll(others));
+                return ((SetColumn) one).getSetValues().equals(((SetColumn) other).getSetValues());
             }
             return false;
         } else if (one instanceof BitColumn) {
@@ -347,6 +995,130 @@ public final class MysqlModeller extends SqlModeller {
         return one.getJdbcType() == other.getJdbcType();
     }
 
+    /**
+     * Check if a column change only appends values to the end of an ENUM or SET list, without changing how the
+     * values are stored. Such a change only touches the table metadata, and can be applied instantly.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @return Is it an append only change?
+     */
+    static boolean isAppendOnly(Column current, Column changed) {
+        if (current.isKey() || changed.isKey() || !current.getName().equals(changed.getName()) || current.isNullable() != changed.isNullable()
+                || !Objects.equals(current.getDefault(), changed.getDefault())) {
+            return false;
+        }
+        if (current instanceof EnumColumn one && changed instanceof EnumColumn other) {
+            var have = one.getEnumValues();
+            var want = other.getEnumValues();
+            return isPrefix(have, want) && (have.size() > 255) == (want.size() > 255);
+        }
+        if (current instanceof SetColumn one && changed instanceof SetColumn other) {
+            var have = one.getSetValues();
+            var want = other.getSetValues();
+            return isPrefix(have, want) && setStorageSize(have.size()) == setStorageSize(want.size());
+        }
+        return false;
+    }
+
+    static boolean isPrefix(Set<String> have, Set<String> want) {
+        if (have.size() >= want.size()) {
+            return false;
+        }
+        var it = want.iterator();
+        for (var value : have) {
+            if (!value.equals(it.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int setStorageSize(int members) {
+        var bytes = (members + 7) / 8;
+        return bytes > 4 ? 8 : bytes;
+    }
+
+    /**
+     * Parse the value list of an ENUM or SET column type, like enum('a','b'), into its values. The values are
+     * quoted literals in which quotes are escaped by doubling them, or characters by a backslash.
+     *
+     * @param columnType The column type
+     * @return The values in declaration order
+     */
+    Set<String> parseValueList(String columnType) {
+        var values = new LinkedHashSet<String>();
+        var value = new StringBuilder();
+        var quoted = false;
+        for (int i = columnType.indexOf('(') + 1; i > 0 && i < columnType.length(); ++i) {
+            var c = columnType.charAt(i);
+            if (quoted) {
+                if (c == '\'' && i + 1 < columnType.length() && columnType.charAt(i + 1) == '\'') {
+                    value.append(c);
+                    ++i;
+                } else if (c == '\'') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < columnType.length()) {
+                    value.append(columnType.charAt(++i));
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '\'') {
+                quoted = true;
+            } else if (c == ')') {
+                break;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Quote a value for use in an ENUM or SET value list.
+     *
+     * @param value The value
+     * @return The quoted literal
+     */
+    String quoteValue(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+    }
+
+    /**
+     * Determine the JDBC type for an information_schema data type, the same way the MySQL driver reports it in
+     * the database meta data.
+     *
+     * @param dataType   The data type
+     * @param columnType The full column type
+     * @return The JDBC type
+     */
+    private JDBCType jdbcType(String dataType, String columnType) {
+        return switch (dataType) {
+            case "bit" -> JDBCType.BIT;
+            case "tinyint" -> columnType.startsWith("tinyint(1)") ? JDBCType.BIT : JDBCType.TINYINT;
+            case "smallint" -> JDBCType.SMALLINT;
+            case "mediumint", "int", "integer" -> JDBCType.INTEGER;
+            case "bigint" -> JDBCType.BIGINT;
+            case "decimal", "numeric" -> JDBCType.DECIMAL;
+            case "float" -> JDBCType.REAL;
+            case "double", "real" -> JDBCType.DOUBLE;
+            case "date", "year" -> JDBCType.DATE;
+            case "time" -> JDBCType.TIME;
+            case "datetime", "timestamp" -> JDBCType.TIMESTAMP;
+            case "char", "enum", "set" -> JDBCType.CHAR;
+            case "varchar", "tinytext" -> JDBCType.VARCHAR;
+            case "text", "mediumtext", "longtext", "json" -> JDBCType.LONGVARCHAR;
+            case "binary" -> JDBCType.BINARY;
+            case "varbinary", "tinyblob" -> JDBCType.VARBINARY;
+            case "blob", "mediumblob", "longblob" -> JDBCType.LONGVARBINARY;
+            default -> JDBCType.OTHER;
+        };
+    }
+
+    private int clamp(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
     @Override
     protected String extractDefault(String text) {
         return switch (text) {
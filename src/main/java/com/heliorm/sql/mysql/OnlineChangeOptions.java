@@ -0,0 +1,160 @@
+package com.heliorm.sql.mysql;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+
+/**
+ * The options for online schema changes done by copying a table into a changed shadow table. Rows are copied in
+ * chunks of primary key order, with an optional sleep after each chunk, and copying pauses while any of the max load
+ * status variables, like Threads_running, is above its threshold, for at most the max load wait. Only tables of at least the minimum size are
+ * changed this way.
+ * <p>
+ * Options are immutable, each method that changes an option returns new options.
+ */
+public final class OnlineChangeOptions {
+
+    private static final Pattern STATUS_VARIABLE = Pattern.compile("\\w+");
+    private static final OnlineChangeOptions DEFAULTS = new OnlineChangeOptions(1000, Duration.ZERO,
+            Map.of("Threads_running", 25L), 1024L * 1024 * 1024, Duration.ofMinutes(10));
+
+    private final int chunkSize;
+    private final Duration chunkSleep;
+    private final Map<String, Long> maxLoad;
+    private final long minTableSize;
+    private final Duration maxLoadWait;
+
+    private OnlineChangeOptions(int chunkSize, Duration chunkSleep, Map<String, Long> maxLoad, long minTableSize, Duration maxLoadWait) {
+        this.chunkSize = chunkSize;
+        this.chunkSleep = chunkSleep;
+        this.maxLoad = maxLoad;
+        this.minTableSize = minTableSize;
+        this.maxLoadWait = maxLoadWait;
+    }
+
+    /**
+     * Get the default options. These copy 1000 rows at a time without sleeping, pause while Threads_running is above
+     * 25 for at most 10 minutes at a time, and apply to tables of 1GB or more.
+     *
+     * @return The options
+     */
+    public static OnlineChangeOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Set the number of rows copied in each chunk.
+     *
+     * @param chunkSize The number of rows
+     * @return The new options
+     */
+    public OnlineChangeOptions withChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException(format("Invalid chunk size %d", chunkSize));
+        }
+        return new OnlineChangeOptions(chunkSize, chunkSleep, maxLoad, minTableSize, maxLoadWait);
+    }
+
+    /**
+     * Set the time to sleep after each chunk is copied.
+     *
+     * @param chunkSleep The time
+     * @return The new options
+     */
+    public OnlineChangeOptions withChunkSleep(Duration chunkSleep) {
+        if (chunkSleep.isNegative()) {
+            throw new IllegalArgumentException(format("Invalid chunk sleep %s", chunkSleep));
+        }
+        return new OnlineChangeOptions(chunkSize, chunkSleep, maxLoad, minTableSize, maxLoadWait);
+    }
+
+    /**
+     * Set the threshold for a global status variable above which copying pauses.
+     *
+     * @param variable  The status variable, like Threads_running
+     * @param threshold The threshold
+     * @return The new options
+     */
+    public OnlineChangeOptions withMaxLoad(String variable, long threshold) {
+        if (!STATUS_VARIABLE.matcher(variable).matches()) {
+            throw new IllegalArgumentException(format("Invalid status variable '%s'", variable));
+        }
+        var copy = new LinkedHashMap<>(maxLoad);
+        copy.put(variable, threshold);
+        return new OnlineChangeOptions(chunkSize, chunkSleep, Map.copyOf(copy), minTableSize, maxLoadWait);
+    }
+
+    /**
+     * Set the size, in bytes of data and indexes, from which a table is changed with a shadow table.
+     *
+     * @param minTableSize The size
+     * @return The new options
+     */
+    public OnlineChangeOptions withMinTableSize(long minTableSize) {
+        if (minTableSize < 0) {
+            throw new IllegalArgumentException(format("Invalid minimum table size %d", minTableSize));
+        }
+        return new OnlineChangeOptions(chunkSize, chunkSleep, maxLoad, minTableSize, maxLoadWait);
+    }
+
+    /**
+     * Set the longest time copying pauses for the server load to drop before the change fails.
+     *
+     * @param maxLoadWait The time
+     * @return The new options
+     */
+    public OnlineChangeOptions withMaxLoadWait(Duration maxLoadWait) {
+        if (maxLoadWait.isNegative()) {
+            throw new IllegalArgumentException(format("Invalid maximum load wait %s", maxLoadWait));
+        }
+        return new OnlineChangeOptions(chunkSize, chunkSleep, maxLoad, minTableSize, maxLoadWait);
+    }
+
+    /**
+     * Get the number of rows copied in each chunk.
+     *
+     * @return The number of rows
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Get the time to sleep after each chunk is copied.
+     *
+     * @return The time
+     */
+    public Duration getChunkSleep() {
+        return chunkSleep;
+    }
+
+    /**
+     * Get the thresholds of the global status variables above which copying pauses.
+     *
+     * @return The thresholds, mapped by variable
+     */
+    public Map<String, Long> getMaxLoad() {
+        return maxLoad;
+    }
+
+    /**
+     * Get the size, in bytes of data and indexes, from which a table is changed with a shadow table.
+     *
+     * @return The size
+     */
+    public long getMinTableSize() {
+        return minTableSize;
+    }
+
+    /**
+     * Get the longest time copying pauses for the server load to drop before the change fails.
+     *
+     * @return The time
+     */
+    public Duration getMaxLoadWait() {
+        return maxLoadWait;
+    }
+}
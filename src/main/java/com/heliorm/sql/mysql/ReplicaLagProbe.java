@@ -0,0 +1,90 @@
+package com.heliorm.sql.mysql;
+
+import com.heliorm.sql.LagProbe;
+import com.heliorm.sql.ModellerSession;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A lag probe for MySQL and MariaDB that connects to each replica and reads its lag from SHOW REPLICA STATUS, falling
+ * back to SHOW SLAVE STATUS on servers that don't have it. A replica whose SQL thread is not running reports no lag,
+ * and counts as infinitely behind.
+ */
+public final class ReplicaLagProbe implements LagProbe {
+
+    private final List<Supplier<Connection>> replicas;
+
+    /**
+     * Create a new probe.
+     *
+     * @param replicas Suppliers of connections to the replicas
+     */
+    public ReplicaLagProbe(List<Supplier<Connection>> replicas) {
+        this.replicas = List.copyOf(replicas);
+    }
+
+    @Override
+    public Duration readLag(ModellerSession session) throws SQLException {
+        var max = Duration.ZERO;
+        for (var replica : replicas) {
+            try (var con = replica.get()) {
+                var lag = readLag(con);
+                if (lag.compareTo(max) > 0) {
+                    max = lag;
+                }
+            }
+        }
+        return max;
+    }
+
+    private Duration readLag(Connection con) throws SQLException {
+        try (var stmt = con.createStatement()) {
+            try (var rs = stmt.executeQuery("SHOW REPLICA STATUS")) {
+                return readLag(rs);
+            } catch (SQLException ex) {
+                if (ex.getErrorCode() != 1064) {
+                    throw ex;
+                }
+            }
+            try (var rs = stmt.executeQuery("SHOW SLAVE STATUS")) {
+                return readLag(rs);
+            }
+        }
+    }
+
+    /**
+     * Read the largest lag from a replica status result. MySQL names the column Seconds_Behind_Source from 8.0.22,
+     * while older servers and MariaDB name it Seconds_Behind_Master.
+     */
+    private Duration readLag(ResultSet rs) throws SQLException {
+        var column = -1;
+        var meta = rs.getMetaData();
+        for (int i = 1; i <= meta.getColumnCount(); ++i) {
+            var label = meta.getColumnLabel(i);
+            if (label.equals("Seconds_Behind_Source") || label.equals("Seconds_Behind_Master")) {
+                column = i;
+            }
+        }
+        if (column < 0) {
+            throw new SQLException("Replica status has no Seconds_Behind_Source or Seconds_Behind_Master column");
+        }
+        var max = Duration.ZERO;
+        while (rs.next()) {
+            var seconds = rs.getString(column);
+            if (seconds == null) {
+                return ChronoUnit.FOREVER.getDuration();
+            }
+            var lag = Duration.ofSeconds(Long.parseLong(seconds));
+            if (lag.compareTo(max) > 0) {
+                max = lag;
+            }
+        }
+        return max;
+    }
+}
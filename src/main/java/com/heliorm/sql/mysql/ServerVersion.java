@@ -0,0 +1,106 @@
+package com.heliorm.sql.mysql;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+/**
+ * The product and version of a MySQL or MariaDB server, used to decide which online DDL features it has.
+ *
+ * @param mariaDb Is the server MariaDB?
+ * @param major   The major version
+ * @param minor   The minor version
+ * @param patch   The patch version
+ */
+record ServerVersion(boolean mariaDb, int major, int minor, int patch) {
+
+    private static final Pattern VERSION = Pattern.compile("(\\d+)\\.(\\d+)\\.(\\d+)");
+
+    /**
+     * Determine the server version from the database meta data.
+     *
+     * @param dbm The meta data
+     * @return The version
+     * @throws SQLException Thrown if the version can't be read
+     */
+    static ServerVersion of(DatabaseMetaData dbm) throws SQLException {
+        return parse(dbm.getDatabaseProductName(), dbm.getDatabaseProductVersion());
+    }
+
+    /**
+     * Parse a server version. MariaDB reports a version like "5.5.5-10.6.12-MariaDB" through older protocols, in
+     * which case the last version number in the string is the real one.
+     *
+     * @param product The product name
+     * @param version The version string
+     * @return The version
+     */
+    static ServerVersion parse(String product, String version) {
+        var mariaDb = product.toLowerCase().contains("mariadb") || version.toLowerCase().contains("mariadb");
+        var matcher = VERSION.matcher(version);
+        int major = 0, minor = 0, patch = 0;
+        while (matcher.find()) {
+            major = Integer.parseInt(matcher.group(1));
+            minor = Integer.parseInt(matcher.group(2));
+            patch = Integer.parseInt(matcher.group(3));
+            if (!mariaDb) {
+                break;
+            }
+        }
+        return new ServerVersion(mariaDb, major, minor, patch);
+    }
+
+    /**
+     * Check if the server is at least the given version.
+     *
+     * @param major The major version
+     * @param minor The minor version
+     * @param patch The patch version
+     * @return Is it at least that version?
+     */
+    boolean atLeast(int major, int minor, int patch) {
+        if (this.major != major) {
+            return this.major > major;
+        }
+        if (this.minor != minor) {
+            return this.minor > minor;
+        }
+        return this.patch >= patch;
+    }
+
+    /**
+     * Check if the server supports ALGORITHM=INSTANT. MySQL has it from 8.0.12 and MariaDB from 10.3.2.
+     *
+     * @return Is it supported?
+     */
+    boolean supportsInstant() {
+        return mariaDb ? atLeast(10, 3, 2) : atLeast(8, 0, 12);
+    }
+
+    /**
+     * Check if the server supports ALGORITHM=NOCOPY, which MariaDB has from 10.3.7.
+     *
+     * @return Is it supported?
+     */
+    boolean supportsNoCopy() {
+        return mariaDb && atLeast(10, 3, 7);
+    }
+
+    /**
+     * Check if the server can drop a column with ALGORITHM=INSTANT. MySQL can from 8.0.29 and MariaDB from 10.4.0.
+     *
+     * @return Can it?
+     */
+    boolean supportsInstantDropColumn() {
+        return mariaDb ? atLeast(10, 4, 0) : atLeast(8, 0, 29);
+    }
+
+    /**
+     * Check if the server has ALTER TABLE ... RENAME COLUMN. MySQL has it from 8.0.3 and MariaDB from 10.5.2.
+     *
+     * @return Does it?
+     */
+    boolean supportsRenameColumn() {
+        return mariaDb ? atLeast(10, 5, 2) : atLeast(8, 0, 3);
+    }
+}
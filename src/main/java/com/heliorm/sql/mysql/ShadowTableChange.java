@@ -0,0 +1,406 @@
+package com.heliorm.sql.mysql;
+
+import com.heliorm.sql.SqlModellerException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * An online schema change that applies ALTER TABLE clauses to a table without blocking writes to it, in the way of
+ * pt-online-schema-change. An empty shadow table is created like the table and changed, triggers on the table copy
+ * every insert, update and delete into the shadow table, the existing rows are copied across in chunks of primary key
+ * order, and the shadow table is then swapped in with one atomic RENAME TABLE.
+ * <p>
+ * The table must have a primary key, which the change may not alter, and the connection must be in auto commit mode
+ * so that each chunk is committed on its own. Rows are copied, and the triggers created, in strict SQL mode, so that a
+ * value that doesn't fit a narrowed column or a row that breaks a new unique key fails the change instead of being
+ * changed or dropped. If the change fails before the swap, the triggers and the shadow table are removed and the
+ * table is left as it was.
+ */
+final class ShadowTableChange {
+
+    private static final Pattern RENAME = Pattern.compile("(?:RENAME|CHANGE) COLUMN `((?:[^`]|``)+)` (?:TO )?`((?:[^`]|``)+)`");
+    private static final Pattern PRIMARY_KEY = Pattern.compile("PRIMARY\\s+KEY", Pattern.CASE_INSENSITIVE);
+    private static final Duration LOAD_WAIT = Duration.ofSeconds(1);
+    private static final int MAX_NAME_LENGTH = 64;
+
+    private final Connection con;
+    private final String schema;
+    private final String prefix;
+    private final String table;
+    private final String clauses;
+    private final OnlineChangeOptions options;
+    private final Throttle throttle;
+    private final Swap swap;
+
+    /**
+     * Create a new change.
+     *
+     * @param con       The connection
+     * @param schema    The database of the table
+     * @param qualified Qualify table names with the database?
+     * @param table     The table name
+     * @param clauses   The ALTER TABLE clauses to apply
+     * @param options   The options
+     * @param throttle  The throttle checked before each chunk
+     * @param swap      Runs the RENAME TABLE that swaps the shadow table in
+     */
+    ShadowTableChange(Connection con, String schema, boolean qualified, String table, String clauses, OnlineChangeOptions options,
+                      Throttle throttle, Swap swap) {
+        this.con = con;
+        this.schema = schema;
+        this.prefix = qualified ? quote(schema) + "." : "";
+        this.table = table;
+        this.clauses = clauses;
+        this.options = options;
+        this.throttle = throttle;
+        this.swap = swap;
+    }
+
+    /**
+     * Check if ALTER TABLE clauses can be applied with a shadow table. Changes to the primary key can't, since the
+     * chunks and the triggers rely on it.
+     *
+     * @param clauses The clauses
+     * @return Can they?
+     */
+    static boolean supports(String clauses) {
+        return !PRIMARY_KEY.matcher(clauses).find();
+    }
+
+    /**
+     * A check that waits until it is fine to go on with the next chunk.
+     */
+    @FunctionalInterface
+    interface Throttle {
+
+        void await() throws SQLException, SqlModellerException;
+    }
+
+    /**
+     * Runs the statement that swaps the shadow table in, retrying it on its own if it times out waiting for locks.
+     */
+    @FunctionalInterface
+    interface Swap {
+
+        void execute(String sql) throws SQLException, SqlModellerException;
+    }
+
+    /**
+     * Apply the change.
+     *
+     * @throws SQLException         Thrown if the change fails
+     * @throws SqlModellerException Thrown if waiting for replicas or server load takes too long
+     */
+    void run() throws SQLException, SqlModellerException {
+        if (!con.getAutoCommit()) {
+            throw new SQLException(format("Cannot change table '%s' online inside a transaction", table));
+        }
+        if (!supports(clauses)) {
+            throw new SQLException(format("Cannot change the primary key of table '%s' online", table));
+        }
+        var shadow = name("_new");
+        var old = name("_old");
+        var triggers = List.of(name("_ins"), name("_upd"), name("_del"));
+        var sqlMode = readSqlMode();
+        try {
+            execute("SET SESSION sql_mode = IF(@@SESSION.sql_mode = '', 'STRICT_ALL_TABLES', CONCAT(@@SESSION.sql_mode, ',STRICT_ALL_TABLES'))");
+            execute(format("DROP TABLE IF EXISTS %s", qualify(shadow)));
+            execute(format("CREATE TABLE %s LIKE %s", qualify(shadow), qualify(table)));
+            execute(format("ALTER TABLE %s %s", qualify(shadow), clauses));
+            var columns = mapColumns(shadow);
+            var key = readPrimaryKey();
+            if (key.isEmpty()) {
+                throw new SQLException(format("Cannot change table '%s' online without a primary key", table));
+            }
+            for (var column : key) {
+                if (!columns.containsKey(column)) {
+                    throw new SQLException(format("Cannot change table '%s' online when primary key column '%s' is removed", table, column));
+                }
+            }
+            createTriggers(shadow, triggers, columns, key);
+            copyRows(shadow, columns, key);
+            swap.execute(format("RENAME TABLE %s TO %s, %s TO %s", qualify(table), qualify(old), qualify(shadow), qualify(table)));
+        } catch (SQLException | SqlModellerException ex) {
+            cleanUp(shadow, triggers, ex);
+            try {
+                restoreSqlMode(sqlMode);
+            } catch (SQLException restore) {
+                ex.addSuppressed(restore);
+            }
+            throw ex;
+        }
+        restoreSqlMode(sqlMode);
+        execute(format("DROP TABLE IF EXISTS %s", qualify(old)));
+    }
+
+    /**
+     * Map the columns of the table to the columns of the shadow table they are copied to. Columns keep their names
+     * unless the clauses rename them, columns removed by the clauses are left out, and generated columns are left
+     * for the database to compute.
+     *
+     * @param shadow The shadow table
+     * @return The shadow column names, mapped by table column name, in table order
+     * @throws SQLException Thrown if the columns can't be read
+     */
+    private Map<String, String> mapColumns(String shadow) throws SQLException {
+        var renames = new HashMap<String, String>();
+        var matcher = RENAME.matcher(clauses);
+        while (matcher.find()) {
+            renames.put(matcher.group(1).replace("``", "`"), matcher.group(2).replace("``", "`"));
+        }
+        var targets = readColumns(shadow);
+        var columns = new LinkedHashMap<String, String>();
+        for (var column : readColumns(table)) {
+            var target = renames.getOrDefault(column, column);
+            if (targets.contains(target)) {
+                columns.put(column, target);
+            }
+        }
+        return columns;
+    }
+
+    private List<String> readColumns(String name) throws SQLException {
+        var columns = new ArrayList<String>();
+        try (var stmt = con.prepareStatement("SELECT COLUMN_NAME FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA=? AND TABLE_NAME=? AND EXTRA NOT LIKE '%GENERATED%' ORDER BY ORDINAL_POSITION")) {
+            stmt.setString(1, schema);
+            stmt.setString(2, name);
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    columns.add(rs.getString(1));
+                }
+            }
+        }
+        return columns;
+    }
+
+    private List<String> readPrimaryKey() throws SQLException {
+        var key = new ArrayList<String>();
+        try (var stmt = con.prepareStatement("SELECT COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE " +
+                "WHERE TABLE_SCHEMA=? AND TABLE_NAME=? AND CONSTRAINT_NAME='PRIMARY' ORDER BY ORDINAL_POSITION")) {
+            stmt.setString(1, schema);
+            stmt.setString(2, table);
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    key.add(rs.getString(1));
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Create the triggers that copy changes to the table into the shadow table while the rows are copied. A written
+     * row first deletes its old and new primary key from the shadow table and is then inserted, so that it replaces
+     * a copied row of itself but fails on any other unique key it breaks. The chunk copy skips rows that are already
+     * there, so a row is never copied back over a newer version of itself.
+     */
+    private void createTriggers(String shadow, List<String> triggers, Map<String, String> columns, List<String> key) throws SQLException {
+        var targets = columns.values().stream().map(ShadowTableChange::quote).collect(Collectors.joining(","));
+        var values = columns.keySet().stream().map(c -> "NEW." + quote(c)).collect(Collectors.joining(","));
+        var insert = format("INSERT INTO %s (%s) VALUES (%s)", qualify(shadow), targets, values);
+        var oldRow = matchKey(key, columns, "OLD.");
+        var newRow = matchKey(key, columns, "NEW.");
+        execute(format("CREATE TRIGGER %s AFTER INSERT ON %s FOR EACH ROW BEGIN DELETE FROM %s WHERE %s; %s; END",
+                qualify(triggers.get(0)), qualify(table), qualify(shadow), newRow, insert));
+        execute(format("CREATE TRIGGER %s AFTER UPDATE ON %s FOR EACH ROW BEGIN DELETE FROM %s WHERE (%s) OR (%s); %s; END",
+                qualify(triggers.get(1)), qualify(table), qualify(shadow), oldRow, newRow, insert));
+        execute(format("CREATE TRIGGER %s AFTER DELETE ON %s FOR EACH ROW DELETE FROM %s WHERE %s",
+                qualify(triggers.get(2)), qualify(table), qualify(shadow), oldRow));
+    }
+
+    private static String matchKey(List<String> key, Map<String, String> columns, String row) {
+        return key.stream()
+                .map(c -> format("%s <=> %s%s", quote(columns.get(c)), row, quote(c)))
+                .collect(Collectors.joining(" AND "));
+    }
+
+    /**
+     * Copy the rows of the table into the shadow table in chunks of primary key order. The upper key of each chunk
+     * is found first, so that each chunk is a bounded range scan of the primary key. Rows the triggers have already
+     * written are skipped, and any other failure to insert a row fails the copy.
+     */
+    private void copyRows(String shadow, Map<String, String> columns, List<String> key) throws SQLException, SqlModellerException {
+        var keyList = key.stream().map(ShadowTableChange::quote).collect(Collectors.joining(","));
+        var params = key.stream().map(c -> "?").collect(Collectors.joining(","));
+        var targets = columns.values().stream().map(ShadowTableChange::quote).collect(Collectors.joining(","));
+        var sources = columns.keySet().stream().map(c -> "t." + quote(c)).collect(Collectors.joining(","));
+        var after = format("(%s) > (%s)", keyList, params);
+        var rowKey = key.stream().map(c -> "t." + quote(c)).collect(Collectors.joining(","));
+        var copied = key.stream()
+                .map(c -> format("s.%s = t.%s", quote(columns.get(c)), quote(c)))
+                .collect(Collectors.joining(" AND "));
+        Object[] lower = null;
+        while (true) {
+            waitForLoad();
+            throttle.await();
+            var upper = readChunkEnd(keyList, after, lower, key.size());
+            var where = new ArrayList<String>();
+            if (lower != null) {
+                where.add(format("(%s) > (%s)", rowKey, params));
+            }
+            if (upper != null) {
+                where.add(format("(%s) <= (%s)", rowKey, params));
+            }
+            where.add(format("NOT EXISTS (SELECT 1 FROM %s s WHERE %s)", qualify(shadow), copied));
+            var sql = format("INSERT INTO %s (%s) SELECT %s FROM %s t FORCE INDEX (PRIMARY) WHERE %s LOCK IN SHARE MODE",
+                    qualify(shadow), targets, sources, qualify(table), String.join(" AND ", where));
+            try (var stmt = con.prepareStatement(sql)) {
+                int idx = 1;
+                idx = bind(stmt, idx, lower);
+                bind(stmt, idx, upper);
+                stmt.executeUpdate();
+            }
+            if (upper == null) {
+                return;
+            }
+            lower = upper;
+            sleep(options.getChunkSleep());
+        }
+    }
+
+    /**
+     * Read the primary key of the last row of the chunk that starts after the given key.
+     *
+     * @return The key values, or null if the rest of the table fits in the chunk
+     */
+    private Object[] readChunkEnd(String keyList, String after, Object[] lower, int keySize) throws SQLException {
+        var sql = format("SELECT %s FROM %s%s ORDER BY %s LIMIT 1 OFFSET %d",
+                keyList, qualify(table), lower == null ? "" : " WHERE " + after, keyList, options.getChunkSize() - 1);
+        try (var stmt = con.prepareStatement(sql)) {
+            bind(stmt, 1, lower);
+            try (var rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                var values = new Object[keySize];
+                for (int i = 0; i < keySize; ++i) {
+                    values[i] = rs.getObject(i + 1);
+                }
+                return values;
+            }
+        }
+    }
+
+    private static int bind(PreparedStatement stmt, int idx, Object[] values) throws SQLException {
+        if (values != null) {
+            for (var value : values) {
+                stmt.setObject(idx++, value);
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Wait while any of the max load status variables is above its threshold, for at most the max load wait.
+     */
+    private void waitForLoad() throws SQLException, SqlModellerException {
+        var maxLoad = options.getMaxLoad();
+        if (maxLoad.isEmpty()) {
+            return;
+        }
+        var sql = format("SHOW GLOBAL STATUS WHERE Variable_name IN (%s)",
+                maxLoad.keySet().stream().map(v -> "'" + v + "'").collect(Collectors.joining(",")));
+        var start = System.nanoTime();
+        while (true) {
+            var overloaded = false;
+            try (var stmt = con.createStatement(); var rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    var threshold = maxLoad.get(rs.getString(1));
+                    if (threshold != null && Long.parseLong(rs.getString(2)) > threshold) {
+                        overloaded = true;
+                    }
+                }
+            }
+            if (!overloaded) {
+                return;
+            }
+            var waited = Duration.ofNanos(System.nanoTime() - start);
+            if (waited.plus(LOAD_WAIT).compareTo(options.getMaxLoadWait()) > 0) {
+                throw new SqlModellerException(format("Server load stayed above the maximum for %s while changing table '%s' online",
+                        waited, table));
+            }
+            sleep(LOAD_WAIT);
+        }
+    }
+
+    private void sleep(Duration duration) throws SQLException {
+        if (duration.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(format("Interrupted while changing table '%s' online", table), ex);
+        }
+    }
+
+    /**
+     * Remove the triggers and the shadow table after a failed change, adding any errors to the one that caused it.
+     */
+    private void cleanUp(String shadow, List<String> triggers, Exception cause) {
+        for (var trigger : triggers) {
+            try {
+                execute(format("DROP TRIGGER IF EXISTS %s", qualify(trigger)));
+            } catch (SQLException ex) {
+                cause.addSuppressed(ex);
+            }
+        }
+        try {
+            execute(format("DROP TABLE IF EXISTS %s", qualify(shadow)));
+        } catch (SQLException ex) {
+            cause.addSuppressed(ex);
+        }
+    }
+
+    private String readSqlMode() throws SQLException {
+        try (var stmt = con.createStatement(); var rs = stmt.executeQuery("SELECT @@SESSION.sql_mode")) {
+            return rs.next() ? rs.getString(1) : "";
+        }
+    }
+
+    private void restoreSqlMode(String sqlMode) throws SQLException {
+        try (var stmt = con.prepareStatement("SET SESSION sql_mode = ?")) {
+            stmt.setString(1, sqlMode);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (var stmt = con.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    /**
+     * Make the name of a helper object for the table, shortening the table name to keep within MySQL's limit.
+     *
+     * @param suffix The suffix
+     * @return The name
+     */
+    private String name(String suffix) {
+        var max = MAX_NAME_LENGTH - suffix.length() - 1;
+        return "_" + (table.length() > max ? table.substring(0, max) : table) + suffix;
+    }
+
+    private String qualify(String name) {
+        return prefix + quote(name);
+    }
+
+    private static String quote(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+}
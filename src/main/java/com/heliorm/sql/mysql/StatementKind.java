@@ -0,0 +1,45 @@
+package com.heliorm.sql.mysql;
+
+import java.util.regex.Pattern;
+
+/**
+ * The kinds of DDL statement the MySQL modeller runs, told apart by how an algorithm and lock can be asked for.
+ */
+enum StatementKind {
+    /**
+     * An ALTER TABLE, which takes the algorithm and lock as extra clauses after a comma.
+     */
+    ALTER_TABLE,
+    /**
+     * A CREATE [UNIQUE] INDEX or DROP INDEX, which take the algorithm and lock as options at the end.
+     */
+    INDEX,
+    /**
+     * Any other statement, like CREATE TABLE or CREATE TRIGGER, or a statement that names its own algorithm, which
+     * is run as it is.
+     */
+    OTHER;
+
+    private static final Pattern INDEX_STATEMENT = Pattern.compile("^(CREATE\\s+(UNIQUE\\s+)?INDEX|DROP\\s+INDEX)\\s",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern ALTER_STATEMENT = Pattern.compile("^ALTER\\s+TABLE\\s", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Work out the kind of a statement.
+     *
+     * @param sql The statement
+     * @return The kind
+     */
+    static StatementKind of(String sql) {
+        if (sql.toUpperCase().contains("ALGORITHM=")) {
+            return OTHER;
+        }
+        if (ALTER_STATEMENT.matcher(sql).find()) {
+            return ALTER_TABLE;
+        }
+        if (INDEX_STATEMENT.matcher(sql).find()) {
+            return INDEX;
+        }
+        return OTHER;
+    }
+}
@@ -2,29 +2,40 @@ package com.heliorm.sql.postgres;
 
 import com.heliorm.sql.BinaryColumn;
 import com.heliorm.sql.BitColumn;
+import com.heliorm.sql.Blocker;
 import com.heliorm.sql.BooleanColumn;
+import com.heliorm.sql.Catalog;
 import com.heliorm.sql.Column;
 import com.heliorm.sql.Database;
 import com.heliorm.sql.DecimalColumn;
 import com.heliorm.sql.EnumColumn;
 import com.heliorm.sql.Index;
+import com.heliorm.sql.MigrationPlan;
+import com.heliorm.sql.ModellerSession;
 import com.heliorm.sql.SetColumn;
 import com.heliorm.sql.SqlModeller;
 import com.heliorm.sql.SqlModellerException;
 import com.heliorm.sql.StringColumn;
 import com.heliorm.sql.Table;
+import com.heliorm.sql.TableFilter;
 
 import java.sql.Connection;
 import java.sql.JDBCType;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static java.lang.String.format;
 
@@ -32,50 +43,293 @@ import static java.lang.String.format;
  * An implementation of the SQL modeller that deals with PostgreSQL syntax.
  */
 public final class PostgresModeller extends SqlModeller {
+
+    /**
+     * Query that reads the enum labels, in declaration order, of the enum columns in a table.
+     */
+    private static final String READ_ENUM_VALUES_QUERY = "SELECT a.attname, " +
+            "(SELECT array_agg(e.enumlabel ORDER BY e.enumsortorder) FROM pg_enum e WHERE e.enumtypid = a.atttypid) AS enum_values " +
+            "FROM pg_attribute a " +
+            "JOIN pg_class c ON c.oid = a.attrelid " +
+            "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+            "JOIN pg_type t ON t.oid = a.atttypid " +
+            "WHERE t.typtype = 'e' AND n.nspname = 'public' AND a.attnum > 0 AND NOT a.attisdropped AND c.relname = ?";
+
+    /**
+     * Query that reads a change marker for each table in the public schema. The xmin of a catalog row changes when
+     * the row is updated, so the marker changes when the table, its columns, defaults, indexes or enum types change.
+     */
+    private static final String READ_CHANGE_MARKERS_QUERY = "SELECT c.relname, c.relfilenode::text || '/' || c.xmin::text || '/' || " +
+            "md5(COALESCE((SELECT string_agg(a.attnum::text || ':' || a.xmin::text || ':' || " +
+            "COALESCE((SELECT string_agg(e.enumlabel, ',' ORDER BY e.enumsortorder) FROM pg_enum e WHERE e.enumtypid = a.atttypid), ''), " +
+            "';' ORDER BY a.attnum) FROM pg_attribute a WHERE a.attrelid = c.oid AND a.attnum > 0), '') || '/' || " +
+            "COALESCE((SELECT string_agg(d.adnum::text || ':' || d.xmin::text, ';' ORDER BY d.adnum) " +
+            "FROM pg_attrdef d WHERE d.adrelid = c.oid), '') || '/' || " +
+            "COALESCE((SELECT string_agg(i.indexrelid::text || ':' || i.xmin::text || ':' || ic.xmin::text, ';' ORDER BY i.indexrelid) " +
+            "FROM pg_index i JOIN pg_class ic ON ic.oid = i.indexrelid WHERE i.indrelid = c.oid), '')) AS marker " +
+            "FROM pg_class c " +
+            "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+            "WHERE c.relkind IN ('r','p') AND n.nspname = 'public'";
+
+    /**
+     * Query that checks if an index in the public schema is invalid, which it is while it is built concurrently or
+     * after a concurrent build failed.
+     */
+    private static final String READ_INDEX_INVALID_QUERY = "SELECT NOT i.indisvalid AS invalid FROM pg_index i " +
+            "JOIN pg_class ic ON ic.oid = i.indexrelid " +
+            "JOIN pg_namespace n ON n.oid = ic.relnamespace " +
+            "WHERE n.nspname = 'public' AND ic.relname = ?";
+
+    private final boolean bulkRead;
+    private volatile boolean concurrentIndexes;
+
     /**
      * Create a new modeller with the given connection supplier and driver.
      *
      * @param supplier The connection supplier
      */
     public PostgresModeller(Supplier<Connection> supplier) {
+        this(supplier, false);
+    }
+
+    /**
+     * Create a new modeller with the given connection supplier and driver.
+     *
+     * @param supplier The connection supplier
+     * @param bulkRead Read whole databases from pg_catalog with a few queries in one snapshot
+     */
+    public PostgresModeller(Supplier<Connection> supplier, boolean bulkRead) {
         super(supplier);
+        this.bulkRead = bulkRead;
     }
 
     @Override
-    public void modifyColumn(Column column) throws SqlModellerException {
+    protected Map<String, String> readChangeMarkers(ModellerSession session, String database) throws SQLException {
+        var markers = new HashMap<String, String>();
+        try (var rs = session.prepare(READ_CHANGE_MARKERS_QUERY).executeQuery()) {
+            int tableName = rs.findColumn("relname");
+            int marker = rs.findColumn("marker");
+            while (rs.next()) {
+                markers.put(rs.getString(tableName), rs.getString(marker));
+            }
+        }
+        return markers;
+    }
+
+    @Override
+    protected Catalog readCatalog(ModellerSession session, String database, TableFilter filter) throws SQLException {
+        if (!bulkRead) {
+            return null;
+        }
+        var con = session.getConnection();
+        var autoCommit = con.getAutoCommit();
+        var isolation = con.getTransactionIsolation();
+        con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        con.setAutoCommit(false);
+        try {
+            var catalog = new Catalog();
+            readCatalogColumns(con, catalog, filter);
+            readCatalogKeys(con, catalog, filter);
+            readCatalogIndexes(con, catalog, filter);
+            con.commit();
+            return catalog;
+        } finally {
+            if (!con.getAutoCommit()) {
+                con.rollback();
+            }
+            con.setAutoCommit(autoCommit);
+            con.setTransactionIsolation(isolation);
+        }
+    }
+
+    @Override
+    protected void modifyColumn(ModellerSession session, Column column) throws SqlModellerException {
         if (column instanceof EnumColumn ec) {
-            modifyEnumColumn(ec);
+            modifyEnumColumn(session, ec);
         } else {
-            super.modifyColumn(column);
+            super.modifyColumn(session, column);
         }
     }
 
     @Override
-    public void modifyIndex(Index index) throws SqlModellerException {
-        try (Connection con = con(); Statement stmt = con.createStatement()) {
-            stmt.executeUpdate(makeModifyIndexQuery(index));
+    protected void modifyColumn(ModellerSession session, Column current, Column changed) throws SqlModellerException {
+        if (current instanceof EnumColumn && changed instanceof EnumColumn ec) {
+            modifyEnumColumn(session, ec);
+        } else {
+            if (changed instanceof EnumColumn ec) {
+                executeUpdates(session, changed.getTable(), List.of(makeAddEnumTypeQuery(ec)));
+            }
+            super.modifyColumn(session, current, changed);
+        }
+    }
+
+    /**
+     * Set if indexes are built and dropped concurrently, so that writes to the table are not blocked while they
+     * are. Concurrent index changes can't run inside a transaction, so the sessions used must be in auto commit mode.
+     *
+     * @param concurrentIndexes Use concurrent index changes?
+     */
+    public void setConcurrentIndexes(boolean concurrentIndexes) {
+        this.concurrentIndexes = concurrentIndexes;
+    }
+
+    /**
+     * Rebuild an index, concurrently if concurrent index changes are on. This also repairs an invalid index.
+     *
+     * @param index The index
+     * @throws SqlModellerException Thrown if there is a problem rebuilding the index
+     */
+    public void reindex(Index index) throws SqlModellerException {
+        try (var session = openSession()) {
+            var concurrent = concurrentIndexes;
+            if (concurrent) {
+                checkAutoCommit(session, index);
+            }
+            executeUpdate(session, index.getTable(), format("REINDEX INDEX %s%s", concurrent ? "CONCURRENTLY " : "", getIndexName(index)));
         } catch (SQLException ex) {
-            throw new SqlModellerException(format("Error modifying index '%s' in table '%s' (%s)", index.getName(), index.getTable().getName(), ex.getMessage()));
+            throw new SqlModellerException(format("Error rebuilding index '%s' in table '%s' (%s)", index.getName(), index.getTable().getName(), ex.getMessage()), ex);
         }
     }
 
+    /**
+     * Add an index. With concurrent index changes, an invalid index left with the same name by a failed build is
+     * dropped first, and the index is dropped again if the build fails, so that no invalid index is left behind.
+     */
     @Override
-    public boolean supportsSet() {
-        return false;
+    protected void addIndex(ModellerSession session, Index index) throws SqlModellerException {
+        if (!concurrentIndexes) {
+            super.addIndex(session, index);
+            return;
+        }
+        try {
+            checkAutoCommit(session, index);
+            createIndexConcurrently(session, index, index.getName());
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error adding index '%s' in table '%s' (%s)", index.getName(), index.getTable().getName(), ex.getMessage()), ex);
+        }
+    }
+
+    @Override
+    protected void removeIndex(ModellerSession session, Index index) throws SqlModellerException {
+        if (!concurrentIndexes) {
+            super.removeIndex(session, index);
+            return;
+        }
+        try {
+            checkAutoCommit(session, index);
+            executeUpdate(session, index.getTable(), makeDropIndexConcurrentlyQuery(index.getName()));
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error removing index '%s' in table '%s' (%s)", index.getName(), index.getTable().getName(), ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Modify an index. With concurrent index changes, the new index is built under a temporary name next to the old
+     * one, then the old one is dropped and the new one renamed, so that the table always has an index. A temporary
+     * index left by an earlier attempt is dropped first.
+     */
+    @Override
+    protected void modifyIndex(ModellerSession session, Index index) throws SqlModellerException {
+        try {
+            if (concurrentIndexes) {
+                checkAutoCommit(session, index);
+                var name = index.getName();
+                var tempName = (name.length() > 55 ? name.substring(0, 55) : name) + "_swap";
+                executeUpdate(session, index.getTable(), makeDropIndexConcurrentlyQuery(tempName));
+                createIndexConcurrently(session, index, tempName);
+                executeUpdate(session, index.getTable(), makeDropIndexConcurrentlyQuery(name));
+                executeUpdate(session, index.getTable(), format("ALTER INDEX \"%s\" RENAME TO \"%s\"", tempName, name));
+            } else {
+                executeUpdate(session, index.getTable(), makeModifyIndexQuery(index));
+            }
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error modifying index '%s' in table '%s' (%s)", index.getName(), index.getTable().getName(), ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Combine the column changes for a table into one ALTER TABLE statement. Renames can't be combined with other
+     * changes in PostgreSQL, and indexes are not part of ALTER TABLE, so renames and index removals are applied
+     * first, and index creation and enum type changes after. Changes done with a batched backfill are applied on
+     * their own.
+     */
+    @Override
+    protected void alterTable(ModellerSession session, Table table, List<MigrationPlan.Step> steps) throws SqlModellerException {
+        var queries = new ArrayList<String>();
+        var clauses = new ArrayList<String>();
+        var after = new ArrayList<MigrationPlan.Step>();
+        for (var step : steps) {
+            if (isBackfilled(session, step)) {
+                applyStep(session, step);
+                continue;
+            }
+            switch (step) {
+                case MigrationPlan.CreateTable ignored -> applyStep(session, step);
+                case MigrationPlan.RenameColumn ignored -> applyStep(session, step);
+                case MigrationPlan.DeleteIndex ignored -> applyStep(session, step);
+                case MigrationPlan.AddColumn s -> {
+                    if (s.column() instanceof EnumColumn ec) {
+                        queries.add(makeAddEnumTypeQuery(ec));
+                    } else if (s.column() instanceof SetColumn) {
+                        throw new SqlModellerException("SET data types are not supported for PostgreSQL");
+                    }
+                    clauses.add(format("ADD COLUMN %s %s", getColumnName(s.column()), getCreateType(s.column())));
+                }
+                case MigrationPlan.ModifyColumn s -> {
+                    if (s.changed() instanceof EnumColumn) {
+                        after.add(step);
+                    } else {
+                        clauses.addAll(makeModifyColumnClauses(s.current(), s.changed()));
+                    }
+                }
+                case MigrationPlan.DeleteColumn s -> clauses.add(format("DROP COLUMN %s", getColumnName(s.column())));
+                case MigrationPlan.AddIndex ignored -> after.add(step);
+                case MigrationPlan.ModifyIndex ignored -> after.add(step);
+            }
+        }
+        if (!clauses.isEmpty()) {
+            queries.add(format("ALTER TABLE %s %s", getTableName(table), String.join(",", clauses)));
+        }
+        executeUpdates(session, table, queries);
+        for (var step : after) {
+            applyStep(session, step);
+        }
     }
 
+    /**
+     * Create the enum types of the tables up front, so that tables synchronized in parallel find them in place.
+     */
     @Override
-    protected boolean isEnumColumn(String columnName, JDBCType jdbcType, String typeName) throws SqlModellerException {
-        if (jdbcType == JDBCType.VARCHAR) {
-            try (Connection con = con(); Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(makeReadEnumQuery(typeName))) {
-                return rs.next();
-            } catch (SQLException ex) {
-                throw new SqlModellerException(format("Error reading enum values from databases (%s)", ex.getMessage()), ex);
+    protected void prepareTables(ModellerSession session, Collection<Table> tables) throws SqlModellerException {
+        for (var table : tables) {
+            var queries = new ArrayList<String>();
+            for (var column : table.getColumns()) {
+                if (column instanceof EnumColumn ec) {
+                    queries.add(makeAddEnumTypeQuery(ec));
+                }
             }
+            executeUpdates(session, table, queries);
         }
+    }
+
+    @Override
+    public boolean supportsSet() {
         return false;
     }
 
+    /**
+     * Determine if a column may be an enum column. JDBC reports enum types as VARCHAR, like some other types such as
+     * domains and citext, so this only picks out the candidates. Whether a column is an enum is decided by
+     * pg_type.typtype when its labels are read, and a candidate without labels is read as an ordinary column.
+     */
+    @Override
+    protected boolean isEnumColumn(String columnName, JDBCType jdbcType, String typeName) {
+        return switch (typeName) {
+            case "varchar", "text", "name" -> false;
+            default -> jdbcType == JDBCType.VARCHAR;
+        };
+    }
+
     @Override
     protected boolean typesAreCompatible(Column one, Column other) {
         if (one instanceof BooleanColumn) {
@@ -138,24 +392,89 @@ public final class PostgresModeller extends SqlModeller {
 
     @Override
     public List<String> makeModifyColumnQuery(Column column) throws SqlModellerException {
-        StringBuilder sql = new StringBuilder();
-        sql.append(format("ALTER TABLE %s", getTableName(column.getTable())));
-        sql.append(format("ALTER %s DROP DEFAULT", getColumnName(column)));
-        sql.append(format(",ALTER %s TYPE %s USING(%s::text::%s)",
-                getColumnName(column), createBasicType(column),
-                getColumnName(column),
-                typeName(column)));
-        if (!column.isNullable()) {
-            sql.append(format(",ALTER %s SET NOT NULL", getColumnName(column)));
-        } else {
-            sql.append(format(",ALTER %s DROP NOT NULL", getColumnName(column)));
+        return makeModifyColumnQuery(null, column);
+    }
+
+    /**
+     * Generate the ALTER TABLE clauses that modify a column. If the current column is known only the clauses for
+     * what changed are generated, so that a default or nullability change does not rewrite the table. The USING cast
+     * is left out when the new type can be reached from the old one without converting the data.
+     *
+     * @param current The current column, or null if it is not known
+     * @param changed The changed column
+     * @return The clauses
+     */
+    List<String> makeModifyColumnClauses(Column current, Column changed) throws SqlModellerException {
+        var clauses = new ArrayList<String>();
+        var name = getColumnName(changed);
+        var typeChanged = current == null || !isSameType(current, changed);
+        var coercible = current != null && isBinaryCoercible(current, changed);
+        var defaultChanged = current == null || !Objects.equals(current.getDefault(), changed.getDefault());
+        if (typeChanged && !coercible && (current == null || current.getDefault() != null)) {
+            clauses.add(format("ALTER %s DROP DEFAULT", name));
+            defaultChanged = changed.getDefault() != null;
+        }
+        if (typeChanged) {
+            if (coercible) {
+                clauses.add(format("ALTER %s TYPE %s", name, createBasicType(changed)));
+            } else {
+                clauses.add(format("ALTER %s TYPE %s USING(%s::text::%s)", name, createBasicType(changed), name, typeName(changed)));
+            }
         }
-        return List.of(sql.toString());
+        if (current == null || current.isNullable() != changed.isNullable()) {
+            if (!changed.isNullable()) {
+                clauses.add(format("ALTER %s SET NOT NULL", name));
+            } else {
+                clauses.add(format("ALTER %s DROP NOT NULL", name));
+            }
+        }
+        if (defaultChanged) {
+            if (changed.getDefault() != null) {
+                clauses.add(format("ALTER %s SET DEFAULT %s", name, quoteLiteral(changed.getDefault())));
+            } else if (current != null) {
+                clauses.add(format("ALTER %s DROP DEFAULT", name));
+            }
+        }
+        return clauses;
+    }
+
+    /**
+     * Check if two columns have the same PostgreSQL type. String lengths are compared exactly, since a VARCHAR length
+     * is part of the type.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @return Are the types the same?
+     */
+    private boolean isSameType(Column current, Column changed) throws SqlModellerException {
+        if (createBasicType(current).equals(createBasicType(changed))) {
+            return true;
+        }
+        return !(current instanceof StringColumn) && typesAreCompatible(current, changed);
+    }
+
+    /**
+     * Check if the values of a column can be kept as they are when its type changes, so that no USING cast is
+     * needed. This is the case for a variable length string that becomes longer or unbounded.
+     *
+     * @param current The current column
+     * @param changed The changed column
+     * @return Is the change binary coercible?
+     */
+    private boolean isBinaryCoercible(Column current, Column changed) {
+        if (current instanceof StringColumn one && changed instanceof StringColumn other) {
+            return other.getLength() >= one.getLength();
+        }
+        return current instanceof BinaryColumn && changed instanceof BinaryColumn;
     }
 
     @Override
     protected List<String> makeModifyColumnQuery(Column current, Column changed) throws SqlModellerException {
-        return makeModifyColumnQuery(changed);
+        var clauses = makeModifyColumnClauses(current, changed);
+        if (clauses.isEmpty()) {
+            return List.of();
+        }
+        return List.of(format("ALTER TABLE %s %s", getTableName(changed.getTable()), String.join(",", clauses)));
     }
 
     @Override
@@ -250,19 +569,37 @@ public final class PostgresModeller extends SqlModeller {
     }
 
     @Override
-    protected Set<String> readEnumValues(EnumColumn column) throws SqlModellerException {
-        try (Connection con = con(); Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(makeReadEnumQuery(getSqlTypeName(column)))) {
-            if (rs.next()) {
-                return Stream.of(rs.getString("enum_value").split(","))
-                        .map(String::trim)
-                        .collect(Collectors.toSet());
+    protected Set<String> readEnumValues(ModellerSession session, EnumColumn column) throws SqlModellerException {
+        try {
+            var stmt = session.prepare(READ_ENUM_VALUES_QUERY + " AND a.attname = ?");
+            stmt.setString(1, column.getTable().getName());
+            stmt.setString(2, column.getName());
+            try (var rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getArray(2) != null) {
+                    return new LinkedHashSet<>(Arrays.asList((String[]) rs.getArray(2).getArray()));
+                }
+                return new LinkedHashSet<>();
             }
-            throw new SqlModellerException(format("No enum values found for column %s in table %s ", column.getName(), column.getTable().getName()));
         } catch (SQLException ex) {
             throw new SqlModellerException(format("Error reading enum values (%s)", ex.getMessage()), ex);
         }
     }
 
+    @Override
+    protected Map<String, Set<String>> readValueLists(ModellerSession session, Table table) throws SQLException {
+        var values = new HashMap<String, Set<String>>();
+        var stmt = session.prepare(READ_ENUM_VALUES_QUERY);
+        stmt.setString(1, table.getName());
+        try (var rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                var labels = rs.getArray(2);
+                if (labels != null) {
+                    values.put(rs.getString(1), new LinkedHashSet<>(Arrays.asList((String[]) labels.getArray())));
+                }
+            }
+        }
+        return values;
+    }
 
     @Override
     protected String extractDefault(String text) {
@@ -274,52 +611,473 @@ public final class PostgresModeller extends SqlModeller {
     }
 
     /**
-     * Read the SQL type name for the give column from the database meta data.
+     * Read the column definitions of all the tables in the public schema from pg_catalog.
      *
-     * @param column The column
-     * @return The type name
+     * @param con     The connection
+     * @param catalog The catalog to fill in
+     * @param filter  The table filter
      */
-    private String getSqlTypeName(Column column) throws SqlModellerException {
-        try (var con = con()) {
-            var dbm = con.getMetaData();
-            try (var rs = dbm.getColumns(column.getTable().getDatabase().getName(), null, column.getTable().getName(), column.getName())) {
-                if (rs.next()) {
-                    return rs.getString("TYPE_NAME");
+    private void readCatalogColumns(Connection con, Catalog catalog, TableFilter filter) throws SQLException {
+        try (var stmt = con.prepareStatement("SELECT c.relname, a.attname, t.typname, t.typtype, " +
+                "CASE WHEN a.atttypmod = -1 THEN t.typtypmod ELSE a.atttypmod END AS typmod, a.attnotnull, a.attidentity <> '' AS is_identity, " +
+                "pg_get_expr(d.adbin, d.adrelid) AS column_default, " +
+                "(SELECT array_agg(e.enumlabel ORDER BY e.enumsortorder) FROM pg_enum e WHERE e.enumtypid = t.oid) AS enum_values " +
+                "FROM pg_class c " +
+                "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum > 0 AND NOT a.attisdropped " +
+                "JOIN pg_type t ON t.oid = a.atttypid " +
+                "LEFT JOIN pg_attrdef d ON d.adrelid = c.oid AND d.adnum = a.attnum " +
+                "WHERE c.relkind IN ('r','p') AND n.nspname = 'public'" + filter.toSql("c.relname") + " " +
+                "ORDER BY c.relname, a.attnum")) {
+            filter.bind(stmt, 1);
+            try (var rs = stmt.executeQuery()) {
+                int tableName = rs.findColumn("relname");
+                int columnName = rs.findColumn("attname");
+                int typeName = rs.findColumn("typname");
+                int typeType = rs.findColumn("typtype");
+                int typeMod = rs.findColumn("typmod");
+                int notNull = rs.findColumn("attnotnull");
+                int identity = rs.findColumn("is_identity");
+                int columnDefault = rs.findColumn("column_default");
+                int enumValues = rs.findColumn("enum_values");
+                while (rs.next()) {
+                    var type = rs.getString(typeName);
+                    var mod = rs.getInt(typeMod);
+                    var defVal = rs.getString(columnDefault);
+                    var labels = rs.getArray(enumValues);
+                    var isEnum = "e".equals(rs.getString(typeType));
+                    var jdbcType = isEnum ? JDBCType.VARCHAR : jdbcType(type);
+                    int size = switch (type) {
+                        case "varchar", "bpchar" -> mod > 4 ? mod - 4 : Integer.MAX_VALUE;
+                        case "numeric" -> mod > 4 ? ((mod - 4) >> 16) & 0xffff : 0;
+                        case "bit", "varbit" -> Math.max(mod, 1);
+                        case "bool" -> 1;
+                        default -> Integer.MAX_VALUE;
+                    };
+                    catalog.addColumn(rs.getString(tableName), new Catalog.ColumnInfo(rs.getString(columnName),
+                            jdbcType,
+                            type,
+                            size,
+                            type.equals("numeric") && mod > 4 ? (mod - 4) & 0xffff : 0,
+                            !rs.getBoolean(notNull),
+                            rs.getBoolean(identity) || (defVal != null && defVal.startsWith("nextval(")),
+                            defVal,
+                            labels == null ? null : new LinkedHashSet<>(Arrays.asList((String[]) labels.getArray()))));
                 }
             }
-            throw new SqlModellerException(format("Column %s found in table %s ", column.getName(), column.getTable().getName()));
-        } catch (SQLException ex) {
-            throw new SqlModellerException(format("Error determining SQL type name for column %s in table %s ", column.getName(), column.getTable().getName()));
         }
     }
 
     /**
-     * Modify an enum colum in a PostgreSQL specific way.
+     * Read the primary key columns of all the tables in the public schema from pg_constraint.
      *
-     * @param column The column to modify
+     * @param con     The connection
+     * @param catalog The catalog to fill in
+     * @param filter  The table filter
+     */
+    private void readCatalogKeys(Connection con, Catalog catalog, TableFilter filter) throws SQLException {
+        try (var stmt = con.prepareStatement("SELECT c.relname, a.attname " +
+                "FROM pg_constraint k " +
+                "JOIN pg_class c ON c.oid = k.conrelid " +
+                "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "JOIN pg_attribute a ON a.attrelid = k.conrelid AND a.attnum = ANY(k.conkey) " +
+                "WHERE k.contype = 'p' AND n.nspname = 'public'" + filter.toSql("c.relname"))) {
+            filter.bind(stmt, 1);
+            try (var rs = stmt.executeQuery()) {
+                int tableName = rs.findColumn("relname");
+                int columnName = rs.findColumn("attname");
+                while (rs.next()) {
+                    catalog.addKey(rs.getString(tableName), rs.getString(columnName));
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the indexes, other than primary keys, of all the tables in the public schema from pg_index.
+     *
+     * @param con     The connection
+     * @param catalog The catalog to fill in
+     * @param filter  The table filter
+     */
+    private void readCatalogIndexes(Connection con, Catalog catalog, TableFilter filter) throws SQLException {
+        try (var stmt = con.prepareStatement("SELECT c.relname AS table_name, ic.relname AS index_name, " +
+                "a.attname, i.indisunique " +
+                "FROM pg_index i " +
+                "JOIN pg_class c ON c.oid = i.indrelid " +
+                "JOIN pg_class ic ON ic.oid = i.indexrelid " +
+                "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "JOIN LATERAL unnest(i.indkey::int2[]) WITH ORDINALITY AS k(attnum, ord) ON true " +
+                "JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum = k.attnum " +
+                "WHERE c.relkind IN ('r','p') AND n.nspname = 'public' AND NOT i.indisprimary AND i.indisvalid" + filter.toSql("c.relname") + " " +
+                "ORDER BY c.relname, ic.relname, k.ord")) {
+            filter.bind(stmt, 1);
+            try (var rs = stmt.executeQuery()) {
+                int tableName = rs.findColumn("table_name");
+                int indexName = rs.findColumn("index_name");
+                int columnName = rs.findColumn("attname");
+                int unique = rs.findColumn("indisunique");
+                while (rs.next()) {
+                    catalog.addIndex(rs.getString(tableName), rs.getString(indexName), rs.getString(columnName), rs.getBoolean(unique));
+                }
+            }
+        }
+    }
+
+    /**
+     * Determine the JDBC type for a PostgreSQL type name, the same way the PostgreSQL driver reports it in the
+     * database meta data.
+     *
+     * @param typeName The type name
+     * @return The JDBC type
+     */
+    private JDBCType jdbcType(String typeName) {
+        return switch (typeName) {
+            case "int2" -> JDBCType.SMALLINT;
+            case "int4" -> JDBCType.INTEGER;
+            case "int8", "oid" -> JDBCType.BIGINT;
+            case "numeric" -> JDBCType.NUMERIC;
+            case "float4" -> JDBCType.REAL;
+            case "float8", "money" -> JDBCType.DOUBLE;
+            case "bool", "bit" -> JDBCType.BIT;
+            case "char", "bpchar" -> JDBCType.CHAR;
+            case "varchar", "text", "name" -> JDBCType.VARCHAR;
+            case "bytea" -> JDBCType.BINARY;
+            case "date" -> JDBCType.DATE;
+            case "time", "timetz" -> JDBCType.TIME;
+            case "timestamp", "timestamptz" -> JDBCType.TIMESTAMP;
+            default -> JDBCType.OTHER;
+        };
+    }
+
+    /**
+     * Build an index concurrently under the given name. An invalid index with that name, left by an earlier failed
+     * build, is dropped first, and again before each retry after a lock timeout. If the build fails the invalid index
+     * it leaves is dropped.
+     *
+     * @param session The session
+     * @param index   The index
+     * @param name    The name to build it under
+     * @throws SQLException         Thrown if the index can't be built
+     * @throws SqlModellerException Thrown if waiting for replicas takes too long
+     */
+    private void createIndexConcurrently(ModellerSession session, Index index, String name) throws SQLException, SqlModellerException {
+        RetryCleanup dropInvalid = () -> {
+            if (isInvalidIndex(session, name)) {
+                executeUpdate(session, index.getTable(), makeDropIndexConcurrentlyQuery(name));
+            }
+        };
+        dropInvalid.run();
+        try {
+            executeUpdate(session, index.getTable(), format("CREATE %sINDEX CONCURRENTLY \"%s\" ON %s (%s)",
+                    index.isUnique() ? "UNIQUE " : "",
+                    name,
+                    getTableName(index.getTable()),
+                    index.getColumns().stream()
+                            .map(this::getColumnName)
+                            .collect(Collectors.joining(","))), dropInvalid);
+        } catch (SQLException | SqlModellerException ex) {
+            try {
+                dropInvalid.run();
+            } catch (SQLException | SqlModellerException cleanup) {
+                ex.addSuppressed(cleanup);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Check if the index with the given name exists and is invalid.
+     *
+     * @param session The session
+     * @param name    The index name
+     * @return Is it invalid?
+     * @throws SQLException Thrown if the catalog can't be read
+     */
+    private boolean isInvalidIndex(ModellerSession session, String name) throws SQLException {
+        var stmt = session.prepare(READ_INDEX_INVALID_QUERY);
+        stmt.setString(1, name);
+        try (var rs = stmt.executeQuery()) {
+            return rs.next() && rs.getBoolean("invalid");
+        }
+    }
+
+    private String makeDropIndexConcurrentlyQuery(String name) {
+        return format("DROP INDEX CONCURRENTLY IF EXISTS \"%s\"", name);
+    }
+
+    /**
+     * Check that a session can run concurrent index changes, which PostgreSQL does not allow inside a transaction.
+     *
+     * @param session The session
+     * @param index   The index to be changed
+     * @throws SQLException Thrown if the session is in a transaction
+     */
+    private void checkAutoCommit(ModellerSession session, Index index) throws SQLException {
+        if (!session.getConnection().getAutoCommit()) {
+            throw new SQLException(format("Cannot change index '%s' concurrently inside a transaction", index.getName()));
+        }
+    }
+
+    @Override
+    protected String makeBackfillExpression(String source, Column changed) throws SqlModellerException {
+        return format("%s::text::%s", source, createBasicType(changed));
+    }
+
+    /**
+     * Keep the shadow column in sync with a BEFORE INSERT OR UPDATE trigger, and the trigger function it runs, that
+     * converts the column's value.
+     */
+    @Override
+    protected List<String> makeBackfillSyncQueries(Column current, Column shadow, Column changed) throws SqlModellerException {
+        var name = getBackfillTriggerName(current);
+        return List.of(
+                format("CREATE OR REPLACE FUNCTION \"public\".%s() RETURNS trigger LANGUAGE plpgsql AS $$ BEGIN NEW.%s := %s; RETURN NEW; END $$",
+                        name, getColumnName(shadow), makeBackfillExpression("NEW." + getColumnName(current), changed)),
+                format("CREATE TRIGGER %s BEFORE INSERT OR UPDATE ON %s FOR EACH ROW EXECUTE FUNCTION \"public\".%s()",
+                        name, getTableName(current.getTable()), name));
+    }
+
+    @Override
+    protected List<String> makeDropBackfillSyncQueries(Column current, Column shadow) {
+        var name = getBackfillTriggerName(current);
+        return List.of(
+                format("DROP TRIGGER IF EXISTS %s ON %s", name, getTableName(current.getTable())),
+                format("DROP FUNCTION IF EXISTS \"public\".%s()", name));
+    }
+
+    @Override
+    protected String makeSetDefaultQuery(Column column) {
+        return format("ALTER TABLE %s ALTER %s SET DEFAULT %s", getTableName(column.getTable()), getColumnName(column),
+                quoteLiteral(column.getDefault()));
+    }
+
+    /**
+     * Make the column NOT NULL without holding an ACCESS EXCLUSIVE lock while the rows are checked. A NOT VALID check
+     * constraint is added, which only takes a brief lock, and validated with a lock that allows writes. PostgreSQL 12
+     * and later then use the validated constraint to SET NOT NULL without scanning the table, after which the check
+     * constraint is dropped.
+     */
+    @Override
+    protected List<String> makeSetNotNullQueries(Column column) {
+        var table = getTableName(column.getTable());
+        var constraint = getNotNullConstraintName(column);
+        return List.of(
+                format("ALTER TABLE %s ADD CONSTRAINT %s CHECK (%s IS NOT NULL) NOT VALID", table, constraint, getColumnName(column)),
+                format("ALTER TABLE %s VALIDATE CONSTRAINT %s", table, constraint),
+                format("ALTER TABLE %s ALTER %s SET NOT NULL", table, getColumnName(column)),
+                format("ALTER TABLE %s DROP CONSTRAINT %s", table, constraint));
+    }
+
+    /**
+     * Swap the shadow column in with one transaction, which PostgreSQL allows for DDL, so that the trigger is
+     * removed and the column replaced at once. The wait for the ACCESS EXCLUSIVE lock is bounded by the lock timeout
+     * of the transaction.
+     */
+    @Override
+    protected void swapBackfillColumn(ModellerSession session, Column current, Column shadow, Column changed) throws SQLException, SqlModellerException {
+        var table = changed.getTable();
+        var queries = new ArrayList<>(makeDropBackfillSyncQueries(current, shadow));
+        queries.add(format("ALTER TABLE %s DROP COLUMN %s", getTableName(table), getColumnName(current)));
+        queries.add(format("ALTER TABLE %s RENAME COLUMN %s TO %s", getTableName(table), getColumnName(shadow), getColumnName(changed)));
+        if (!changed.isNullable()) {
+            queries.add(format("ALTER TABLE %s ALTER %s SET NOT NULL", getTableName(table), getColumnName(changed)));
+        }
+        executeTransaction(session, table, () -> {
+            for (var sql : queries) {
+                executeUpdate(session, table, sql);
+            }
+        });
+    }
+
+    @Override
+    protected String makeLockTimeoutQuery(Duration lockTimeout) {
+        return format("SET lock_timeout = '%dms'", Math.max(1, lockTimeout.toMillis()));
+    }
+
+    @Override
+    protected String makeResetLockTimeoutQuery() {
+        return "RESET lock_timeout";
+    }
+
+    /**
+     * SET LOCAL only lasts until the transaction ends, so the session's own lock timeout is back in place afterwards.
+     */
+    @Override
+    protected String makeTransactionLockTimeoutQuery(Duration lockTimeout) {
+        return format("SET LOCAL lock_timeout = '%dms'", Math.max(1, lockTimeout.toMillis()));
+    }
+
+    @Override
+    protected String makeResetTransactionLockTimeoutQuery() {
+        return null;
+    }
+
+    /**
+     * PostgreSQL returns SQL state 55P03 (lock_not_available) when a lock wait times out, and 40P01
+     * (deadlock_detected) for a deadlock victim.
+     */
+    @Override
+    protected boolean isLockTimeout(SQLException ex) {
+        return "55P03".equals(ex.getSQLState()) || "40P01".equals(ex.getSQLState());
+    }
+
+    /**
+     * Sessions holding locks on the table are read from pg_locks joined to pg_stat_activity. This includes sessions
+     * that are idle in transaction, which keep the locks of their earlier statements until they commit, with the age
+     * of their transaction.
+     */
+    @Override
+    protected List<Blocker> readBlockers(ModellerSession session, Table table) throws SQLException {
+        var stmt = session.prepare("SELECT DISTINCT a.pid, a.usename, a.state, a.query, " +
+                "EXTRACT(EPOCH FROM now() - COALESCE(a.xact_start, a.query_start, a.backend_start)) " +
+                "FROM pg_locks l " +
+                "JOIN pg_stat_activity a ON a.pid = l.pid " +
+                "JOIN pg_class c ON c.oid = l.relation " +
+                "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "WHERE l.locktype = 'relation' AND l.granted AND l.database = (SELECT oid FROM pg_database WHERE datname = current_database()) " +
+                "AND n.nspname = 'public' AND c.relname = ? AND l.pid <> pg_backend_pid()");
+        stmt.setString(1, table.getName());
+        var blockers = new ArrayList<Blocker>();
+        try (var rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                blockers.add(new Blocker(rs.getLong(1), rs.getString(2), rs.getString(3),
+                        Duration.ofMillis((long) (rs.getDouble(5) * 1000)), rs.getString(4)));
+            }
+        }
+        return blockers;
+    }
+
+    /**
+     * Get the name of the trigger, and its function, that keep a column's shadow column in sync, shortened to keep
+     * within PostgreSQL's limit.
+     *
+     * @param column The column
+     * @return The quoted name
+     */
+    private String getBackfillTriggerName(Column column) {
+        var name = column.getTable().getName() + "_" + column.getName();
+        if (name.length() > 54) {
+            name = name.substring(0, 54);
+        }
+        return format("\"%s_backfill\"", name);
+    }
+
+    /**
+     * Get the name of the check constraint used to make a column NOT NULL, shortened to keep within PostgreSQL's
+     * limit.
+     *
+     * @param column The column
+     * @return The quoted name
+     */
+    private String getNotNullConstraintName(Column column) {
+        var name = column.getTable().getName() + "_" + column.getName();
+        if (name.length() > 54) {
+            name = name.substring(0, 54);
+        }
+        return format("\"%s_not_null\"", name);
+    }
+
+    /**
+     * Modify an enum colum in a PostgreSQL specific way. If values are only added, they are added to the enum type
+     * in place with ALTER TYPE ... ADD VALUE, which does not touch the table. Otherwise the type is replaced and the
+     * column converted to the new type in one transaction, which rewrites the table.
+     * <p>
+     * ADD VALUE can't run inside a transaction block before PostgreSQL 12, and a value added inside one can't be used
+     * until it commits, so values are only added in place in auto commit mode. Inside a caller's transaction the type
+     * is replaced as part of that transaction instead, which is left for the caller to commit.
+     *
+     * @param session The session
+     * @param column  The column to modify
      * @throws SqlModellerException Thrown if it goes worng
      */
-    private void modifyEnumColumn(EnumColumn column) throws SqlModellerException {
-        var want = column.getEnumValues();
-        var have = readEnumValues(column);
-        if (!want.equals(have)) {
-            var query = new StringJoiner(";");
-            query.add(format("ALTER TYPE %s RENAME TO %s_old", typeName(column), typeName(column)));
-            query.add(makeAddEnumTypeQuery(column));
-            query.add(format("ALTER TABLE %s COLUMN %s TYPE %s USING %s::text::%s",
-                    getTableName(column.getTable()),
-                    getColumnName(column),
-                    typeName(column),
-                    getColumnName(column),
-                    typeName(column)));
-            try (var con = con(); var stmt = con.createStatement()) {
-                stmt.executeUpdate(query.toString());
-            } catch (SQLException e) {
-                throw new SqlModellerException(e.getMessage(), e);
+    private void modifyEnumColumn(ModellerSession session, EnumColumn column) throws SqlModellerException {
+        var want = new ArrayList<>(column.getEnumValues());
+        var have = new ArrayList<>(readEnumValues(session, column));
+        if (new HashSet<>(want).equals(new HashSet<>(have))) {
+            return;
+        }
+        var kept = new ArrayList<>(want);
+        kept.retainAll(have);
+        try {
+            var con = session.getConnection();
+            var autoCommit = con.getAutoCommit();
+            if (!autoCommit) {
+                executeUpdates(session, column.getTable(), makeReplaceEnumTypeQueries(column));
+                return;
             }
+            if (kept.equals(have)) {
+                executeUpdates(session, column.getTable(), makeAddEnumValuesQueries(column, want, have));
+                return;
+            }
+            executeTransaction(session, column.getTable(), () -> {
+                for (var sql : makeReplaceEnumTypeQueries(column)) {
+                    executeUpdate(session, column.getTable(), sql);
+                }
+            });
+        } catch (SQLException ex) {
+            throw new SqlModellerException(format("Error modifying column '%s' in table '%s' (%s)", column.getName(), column.getTable().getName(), ex.getMessage()), ex);
         }
     }
 
+    /**
+     * Generate the SQL statements that add the new values of an enum column to its type, each one next to its
+     * neighbour in the wanted order.
+     *
+     * @param column The column
+     * @param want   The wanted values, in order
+     * @param have   The values the type has, in order, which appear in the same order in the wanted values
+     * @return The SQL statements
+     */
+    List<String> makeAddEnumValuesQueries(EnumColumn column, List<String> want, List<String> have) {
+        var queries = new ArrayList<String>();
+        var last = have.isEmpty() ? null : have.getLast();
+        for (int i = 0; i < want.size(); ++i) {
+            var value = want.get(i);
+            if (have.contains(value)) {
+                continue;
+            }
+            String position;
+            if (i > 0) {
+                var previous = want.get(i - 1);
+                position = previous.equals(last) ? "" : format(" AFTER %s", quoteLiteral(previous));
+            } else {
+                position = have.isEmpty() ? "" : format(" BEFORE %s", quoteLiteral(have.getFirst()));
+            }
+            queries.add(format("ALTER TYPE \"%s\" ADD VALUE IF NOT EXISTS %s%s", typeName(column), quoteLiteral(value), position));
+            if (position.isEmpty()) {
+                last = value;
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Generate the SQL statements that replace the type of an enum column with a new one with the wanted values,
+     * convert the column to it and drop the old type.
+     *
+     * @param column The column
+     * @return The SQL statements
+     */
+    private List<String> makeReplaceEnumTypeQueries(EnumColumn column) {
+        var typeName = typeName(column);
+        var columnName = getColumnName(column);
+        var convert = new StringJoiner(",");
+        convert.add(format("ALTER %s DROP DEFAULT", columnName));
+        convert.add(format("ALTER %s TYPE \"%s\" USING %s::text::\"%s\"", columnName, typeName, columnName, typeName));
+        if (column.getDefault() != null) {
+            convert.add(format("ALTER %s SET DEFAULT %s", columnName, quoteLiteral(column.getDefault())));
+        }
+        return List.of(format("ALTER TYPE \"%s\" RENAME TO \"%s_old\"", typeName, typeName),
+                makeAddEnumTypeQuery(column),
+                format("ALTER TABLE %s %s", getTableName(column.getTable()), convert),
+                format("DROP TYPE \"%s_old\"", typeName));
+    }
+
+    private String quoteLiteral(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
     /**
      * Generate an SQL statement to modify a PostgreSQL enum type.
      *
@@ -334,7 +1092,7 @@ public final class PostgresModeller extends SqlModeller {
         buf.add(format("    IF NOT EXISTS (SELECT 1 FROM pg_type WHERE typname = '%s') THEN", typeName));
         buf.add(format("        CREATE TYPE \"%s\" AS ENUM(", typeName));
         buf.add(column.getEnumValues().stream()
-                .map(v -> "'" + v + "'")
+                .map(this::quoteLiteral)
                 .collect(Collectors.joining(",")));
         buf.add(");");
         buf.add("    END IF;");
@@ -466,21 +1224,4 @@ public final class PostgresModeller extends SqlModeller {
         return column.getJdbcType().getName();
     }
 
-    /**
-     * Generate an SQL query that reads the enum data for the given type name.
-     *
-     * @param typeName The type name
-     * @return The SQL query
-     */
-    private String makeReadEnumQuery(String typeName) {
-        return "select n.nspname as enum_schema,  \n" +
-                "    t.typname as enum_name,\n" +
-                "    string_agg(e.enumlabel, ', ') as enum_value\n" +
-                "from pg_type t \n" +
-                "    join pg_enum e on t.oid = e.enumtypid  \n" +
-                "    join pg_catalog.pg_namespace n ON n.oid = t.typnamespace\n" +
-                "    where t.typname = '" + typeName + "' " +
-                "group by enum_schema, enum_name;";
-    }
-
 }
@@ -0,0 +1,27 @@
+package com.heliorm.sql.postgres;
+
+import com.heliorm.sql.LagProbe;
+import com.heliorm.sql.ModellerSession;
+
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * A lag probe for PostgreSQL that reads the replay lag of the standbys streaming from the primary from
+ * pg_stat_replication, on the session's own connection. A standby that has caught up and sees no new WAL reports no
+ * replay lag, which counts as no lag.
+ */
+public final class StandbyLagProbe implements LagProbe {
+
+    private static final String READ_LAG_QUERY = "SELECT COALESCE(EXTRACT(EPOCH FROM MAX(replay_lag)), 0) FROM pg_stat_replication";
+
+    @Override
+    public Duration readLag(ModellerSession session) throws SQLException {
+        try (var rs = session.prepare(READ_LAG_QUERY).executeQuery()) {
+            if (!rs.next()) {
+                return Duration.ZERO;
+            }
+            return Duration.ofNanos((long) (rs.getDouble(1) * 1_000_000_000L));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.heliorm.sql;
+
+import com.heliorm.sql.mysql.MysqlModeller;
+import org.junit.jupiter.api.Test;
+
+import java.sql.JDBCType;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestAlterTable {
+
+    private final Database db = new TestDatabase("test");
+    private final TestConnection con = new TestConnection()
+            .withResult("TABLE_CONSTRAINTS", List.of("COUNT"), List.of(List.of("1")));
+    private final SqlModeller modeller = new MysqlModeller(con::connection, false);
+    private final SqlVerifier verifier = SqlVerifier.forModeller(modeller, true, false);
+
+    @Test
+    public void droppedColumnIsLeftOutOfTheNewKey() throws Exception {
+        var current = current(true);
+        var steps = verifier.planChanges(model(), current);
+        assertEquals(2, steps.size());
+        var sql = apply(steps);
+        assertTrue(sql.contains("DROP COLUMN `id`"), sql);
+        assertTrue(sql.contains("CHANGE COLUMN `code` `code`"), sql);
+        assertTrue(sql.endsWith("DROP PRIMARY KEY, ADD PRIMARY KEY (`code`)"), sql);
+    }
+
+    @Test
+    public void keyIsTakenFromTheModelWhenTheDropComesFirst() throws Exception {
+        var current = current(true);
+        var steps = verifier.planChanges(model(), current);
+        var sql = apply(List.of(steps.get(1), steps.get(0)));
+        assertTrue(sql.startsWith("ALTER TABLE `test`.`Person` DROP COLUMN `id`"), sql);
+        assertTrue(sql.endsWith("DROP PRIMARY KEY, ADD PRIMARY KEY (`code`)"), sql);
+    }
+
+    @Test
+    public void keyIsRebuiltWithoutTheDroppedColumnWhenOnlyColumnsAreDropped() throws Exception {
+        var current = current(false);
+        var steps = verifier.planChanges(model(), current);
+        assertEquals(List.of(new MigrationPlan.DeleteColumn(current.getColumn("id"))), steps);
+        var sql = apply(steps);
+        assertTrue(sql.endsWith("DROP PRIMARY KEY, ADD PRIMARY KEY (`code`)"), sql);
+        assertFalse(sql.contains("(`id`"), sql);
+    }
+
+    private String apply(List<MigrationPlan.Step> steps) throws SqlModellerException {
+        try (var session = modeller.openSession()) {
+            verifier.apply(session, MigrationPlan.of(steps));
+        }
+        assertEquals(1, con.getExecuted().size(), con.getExecuted().toString());
+        return con.getExecuted().getFirst();
+    }
+
+    private SqlTable current(boolean onlyIdIsKey) throws SqlModellerException {
+        var catalog = new Catalog();
+        catalog.addColumn("Person", new Catalog.ColumnInfo("id", JDBCType.INTEGER, "INT", 10, 0,
+                false, false, null, null));
+        catalog.addColumn("Person", new Catalog.ColumnInfo("code", JDBCType.VARCHAR, "VARCHAR", 10, 0,
+                false, false, null, null));
+        catalog.addKey("Person", "id");
+        if (!onlyIdIsKey) {
+            catalog.addKey("Person", "code");
+        }
+        return modeller.makeTable(db, "Person", catalog);
+    }
+
+    private Table model() {
+        var table = new TestTable(db, "Person");
+        table.addColumn(new TestStringColumn(table, "code", JDBCType.VARCHAR, false, true, 10));
+        return table;
+    }
+}
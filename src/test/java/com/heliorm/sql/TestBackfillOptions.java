@@ -0,0 +1,61 @@
+package com.heliorm.sql;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestBackfillOptions {
+
+    private final BackfillOptions options = BackfillOptions.defaults();
+
+    @Test
+    public void batchOnTargetKeepsItsSize() {
+        assertEquals(1000, options.nextBatchSize(1000, Duration.ofMillis(500)));
+    }
+
+    @Test
+    public void batchSizeFollowsTheDuration() {
+        assertEquals(1250, options.nextBatchSize(1000, Duration.ofMillis(400)));
+        assertEquals(800, options.nextBatchSize(1000, Duration.ofMillis(625)));
+    }
+
+    @Test
+    public void batchSizeAtMostDoublesOrHalves() {
+        assertEquals(2000, options.nextBatchSize(1000, Duration.ofMillis(10)));
+        assertEquals(2000, options.nextBatchSize(1000, Duration.ZERO));
+        assertEquals(500, options.nextBatchSize(1000, Duration.ofSeconds(30)));
+    }
+
+    @Test
+    public void batchSizeStaysWithinTheLimits() {
+        var limited = options.withBatchSizeLimits(100, 1500);
+        assertEquals(1500, limited.nextBatchSize(1000, Duration.ofMillis(10)));
+        assertEquals(100, limited.nextBatchSize(150, Duration.ofSeconds(30)));
+        assertEquals(100, limited.nextBatchSize(1, Duration.ofSeconds(30)));
+    }
+
+    @Test
+    public void batchSizeDoesNotOverflow() {
+        var limited = options.withBatchSizeLimits(1, Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, limited.nextBatchSize(Integer.MAX_VALUE, Duration.ofNanos(1)));
+    }
+
+    @Test
+    public void initialBatchSizeStaysWithinTheLimits() {
+        assertEquals(1000, options.getInitialBatchSize());
+        assertEquals(500, options.withBatchSizeLimits(100, 500).getInitialBatchSize());
+        assertEquals(2000, options.withBatchSizeLimits(2000, 5000).getInitialBatchSize());
+    }
+
+    @Test
+    public void invalidOptionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> options.withInitialBatchSize(0));
+        assertThrows(IllegalArgumentException.class, () -> options.withBatchSizeLimits(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> options.withBatchSizeLimits(10, 5));
+        assertThrows(IllegalArgumentException.class, () -> options.withTargetLatency(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> options.withTargetLatency(Duration.ofMillis(-1)));
+    }
+}
@@ -0,0 +1,62 @@
+package com.heliorm.sql;
+
+import com.heliorm.sql.mysql.MysqlModeller;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestBulkRead {
+
+    private static final SqlModeller MODELLER = new MysqlModeller(() -> null, false, true);
+    private static final List<String> COLUMNS = List.of("TABLE_NAME", "COLUMN_NAME", "DATA_TYPE", "COLUMN_TYPE",
+            "CHARACTER_MAXIMUM_LENGTH", "NUMERIC_PRECISION", "NUMERIC_SCALE", "IS_NULLABLE", "COLUMN_DEFAULT", "EXTRA");
+
+    @Test
+    public void valuesKeepTheirCase() throws Exception {
+        var catalog = read(List.of(
+                List.of("Person", "type", "enum", "enum('Ape','BEAST','cow')", "5", "0", "0", "NO", "Ape", ""),
+                List.of("Person", "meals", "set", "set('Lunch','DINNER')", "12", "0", "0", "YES", "", "")));
+        var table = MODELLER.makeTable(new TestDatabase("test"), "Person", catalog);
+        var type = (EnumColumn) table.getColumn("type");
+        assertEquals(List.of("Ape", "BEAST", "cow"), List.copyOf(type.getEnumValues()));
+        assertEquals(List.of("Lunch", "DINNER"), List.copyOf(((SetColumn) table.getColumn("meals")).getSetValues()));
+    }
+
+    @Test
+    public void autoIncrementIsReadFromExtra() throws Exception {
+        var catalog = read(List.of(
+                List.of("Person", "id", "int", "int", "0", "10", "0", "NO", "", "AUTO_INCREMENT")));
+        var info = catalog.getColumns("Person").getFirst();
+        assertEquals("id", info.name());
+        assertTrue(info.autoIncrement());
+    }
+
+    @Test
+    public void databaseIsReadWithoutAPreviousModel() throws Exception {
+        var con = new TestConnection().withResult("c.COLUMN_TYPE", COLUMNS, List.of(
+                List.of("Person", "id", "int", "int", "0", "10", "0", "NO", "", "auto_increment")));
+        var database = new MysqlModeller(con::connection, false, true).readDatabase("test", null);
+        assertEquals("test", database.getName());
+        assertEquals(1, database.getTables().size());
+    }
+
+    @Test
+    public void filterIsPushedIntoTheCatalogQueries() throws Exception {
+        var con = new TestConnection().withResult("c.COLUMN_TYPE", COLUMNS, List.of(
+                List.of("app_person", "id", "int", "int", "0", "10", "0", "NO", "", "")));
+        var database = new MysqlModeller(con::connection, false, true)
+                .readDatabaseFiltered("test", TableFilter.all().include("app_%"));
+        assertEquals(1, database.getTables().size());
+    }
+
+    private static Catalog read(List<List<String>> rows) throws Exception {
+        var con = new TestConnection().withResult("c.COLUMN_TYPE", COLUMNS, rows);
+        SqlModeller modeller = new MysqlModeller(con::connection, false, true);
+        try (var session = modeller.openSession()) {
+            return modeller.readCatalog(session, "test", TableFilter.all());
+        }
+    }
+}
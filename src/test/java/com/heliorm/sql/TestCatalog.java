@@ -0,0 +1,80 @@
+package com.heliorm.sql;
+
+import com.heliorm.sql.mysql.MysqlModeller;
+import org.junit.jupiter.api.Test;
+
+import java.sql.JDBCType;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestCatalog {
+
+    private final SqlModeller modeller = new MysqlModeller(() -> null, false);
+    private final Database db = new TestDatabase("test");
+
+    @Test
+    public void columnsAreBuiltFromTheCatalog() throws SqlModellerException {
+        var table = modeller.makeTable(db, "Person", catalog());
+        assertEquals(db, table.getDatabase());
+        assertEquals(Set.of("id", "name", "type"), names(table.getColumns()));
+        var id = table.getColumn("id");
+        assertInstanceOf(IntegerColumn.class, id);
+        assertTrue(id.isKey());
+        assertTrue(id.isAutoIncrement());
+        assertFalse(id.isNullable());
+        var name = (StringColumn) table.getColumn("name");
+        assertEquals(50, name.getLength());
+        assertEquals("nobody", name.getDefault());
+        assertFalse(name.isKey());
+        var type = (EnumColumn) table.getColumn("type");
+        assertEquals(List.of("APE", "BEAST", "COW"), List.copyOf(type.getEnumValues()));
+        assertTrue(type.isNullable());
+        assertNull(type.getDefault());
+    }
+
+    @Test
+    public void indexesUseTheColumnsOfTheTable() throws SqlModellerException {
+        var table = modeller.makeTable(db, "Person", catalog());
+        assertEquals(Set.of("name_type"), table.getIndexes().stream().map(Index::getName).collect(Collectors.toSet()));
+        var index = table.getIndex("name_type");
+        assertTrue(index.isUnique());
+        assertEquals(table, index.getTable());
+        assertEquals(Set.of(table.getColumn("name"), table.getColumn("type")), index.getColumns());
+    }
+
+    @Test
+    public void tablesAreKeptInTheOrderTheyWereAdded() {
+        var catalog = catalog();
+        catalog.addColumn("Animal", new Catalog.ColumnInfo("id", JDBCType.INTEGER, "INT", 10, 0,
+                false, false, null, null));
+        catalog.addColumn("Cage", new Catalog.ColumnInfo("id", JDBCType.INTEGER, "INT", 10, 0,
+                false, false, null, null));
+        assertEquals(List.of("Person", "Animal", "Cage"), List.copyOf(catalog.getTables()));
+    }
+
+    private Catalog catalog() {
+        var catalog = new Catalog();
+        catalog.addColumn("Person", new Catalog.ColumnInfo("id", JDBCType.INTEGER, "INT", 10, 0,
+                false, true, null, null));
+        catalog.addColumn("Person", new Catalog.ColumnInfo("name", JDBCType.VARCHAR, "VARCHAR", 50, 0,
+                false, false, "'nobody'", null));
+        catalog.addColumn("Person", new Catalog.ColumnInfo("type", JDBCType.CHAR, "ENUM", 5, 0,
+                true, false, null, new LinkedHashSet<>(List.of("APE", "BEAST", "COW"))));
+        catalog.addKey("Person", "id");
+        catalog.addIndex("Person", "name_type", "name", true);
+        catalog.addIndex("Person", "name_type", "type", true);
+        return catalog;
+    }
+
+    private static Set<String> names(Set<Column> columns) {
+        return columns.stream().map(Column::getName).collect(Collectors.toSet());
+    }
+}
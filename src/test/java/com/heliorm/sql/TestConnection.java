@@ -0,0 +1,147 @@
+package com.heliorm.sql;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stub connection that records the statements run on it, answers queries with canned rows picked by a fragment of
+ * their SQL, and fails statements with queued exceptions.
+ */
+public class TestConnection {
+
+    private final List<String> executed = new ArrayList<>();
+    private final List<Object> parameters = new ArrayList<>();
+    private final Map<String, Rows> results = new LinkedHashMap<>();
+    private final Map<String, Deque<SQLException>> failures = new LinkedHashMap<>();
+    private boolean autoCommit = true;
+
+    public TestConnection withResult(String fragment, List<String> columns, List<List<String>> rows) {
+        results.put(fragment, new Rows(columns, rows));
+        return this;
+    }
+
+    public TestConnection withFailure(String fragment, SQLException ex) {
+        failures.computeIfAbsent(fragment, k -> new ArrayDeque<>()).add(ex);
+        return this;
+    }
+
+    public TestConnection withAutoCommit(boolean autoCommit) {
+        this.autoCommit = autoCommit;
+        return this;
+    }
+
+    public List<String> getExecuted() {
+        return executed;
+    }
+
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    public Connection connection() {
+        return proxy(Connection.class, (method, args) -> switch (method) {
+            case "prepareStatement" -> preparedStatement((String) args[0]);
+            case "createStatement" -> statement();
+            case "getMetaData" -> metaData();
+            case "getAutoCommit" -> autoCommit;
+            case "setAutoCommit" -> {
+                autoCommit = (Boolean) args[0];
+                yield null;
+            }
+            case "commit", "rollback" -> {
+                executed.add(method.toUpperCase());
+                yield null;
+            }
+            case "close" -> null;
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    private PreparedStatement preparedStatement(String sql) {
+        return proxy(PreparedStatement.class, (method, args) -> switch (method) {
+            case "executeQuery" -> resultSet(sql);
+            case "executeUpdate" -> execute(sql);
+            case "setString", "setInt", "setLong", "setObject" -> {
+                parameters.add(args[1]);
+                yield null;
+            }
+            case "close" -> null;
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    private Statement statement() {
+        return proxy(Statement.class, (method, args) -> switch (method) {
+            case "executeQuery" -> resultSet((String) args[0]);
+            case "executeUpdate" -> execute((String) args[0]);
+            case "close" -> null;
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    /**
+     * Metadata whose result sets are the canned rows for the name of the method called, such as "getColumns".
+     */
+    private DatabaseMetaData metaData() {
+        return proxy(DatabaseMetaData.class, (method, args) -> switch (method) {
+            case "getColumns", "getPrimaryKeys", "getIndexInfo" -> resultSet(method);
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    private int execute(String sql) throws SQLException {
+        executed.add(sql);
+        for (var entry : failures.entrySet()) {
+            if (sql.contains(entry.getKey()) && !entry.getValue().isEmpty()) {
+                throw entry.getValue().remove();
+            }
+        }
+        return 0;
+    }
+
+    private ResultSet resultSet(String sql) {
+        var rows = results.entrySet().stream()
+                .filter(entry -> sql.contains(entry.getKey()))
+                .map(Map.Entry::getValue)
+                .findFirst().orElse(new Rows(List.of(), List.of()));
+        var row = new int[]{-1};
+        return proxy(ResultSet.class, (method, args) -> switch (method) {
+            case "findColumn" -> rows.columns().indexOf((String) args[0]) + 1;
+            case "next" -> ++row[0] < rows.rows().size();
+            case "getString" -> rows.get(row[0], args[0]);
+            case "getLong" -> Long.parseLong(rows.get(row[0], args[0]));
+            case "getInt" -> Integer.parseInt(rows.get(row[0], args[0]));
+            case "getBoolean" -> Boolean.parseBoolean(rows.get(row[0], args[0]));
+            case "close" -> null;
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    private record Rows(List<String> columns, List<List<String>> rows) {
+
+        String get(int row, Object column) {
+            int index = column instanceof Integer i ? i - 1 : columns.indexOf((String) column);
+            return rows.get(row).get(index);
+        }
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args) throws SQLException;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(TestConnection.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.invoke(method.getName(), args)));
+    }
+}
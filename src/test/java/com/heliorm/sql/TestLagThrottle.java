@@ -0,0 +1,73 @@
+package com.heliorm.sql;
+
+import com.heliorm.sql.mysql.MysqlModeller;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestLagThrottle {
+
+    private static final Duration INTERVAL = Duration.ofMillis(10);
+
+    @Test
+    public void lagBelowTheMaximumIsNotAPause() throws Exception {
+        var stats = await(LagThrottle.of(lags(Duration.ofMillis(50)), Duration.ofSeconds(1)));
+        assertEquals(1, stats.checks());
+        assertEquals(0, stats.pauses());
+        assertEquals(Duration.ZERO, stats.throttled());
+        assertEquals(Duration.ofMillis(50), stats.maxLag());
+    }
+
+    @Test
+    public void onlyTheTimeSleptIsThrottled() throws Exception {
+        var stats = await(LagThrottle.of(lags(Duration.ofSeconds(5), Duration.ofSeconds(3), Duration.ZERO), Duration.ofSeconds(1)));
+        assertEquals(1, stats.checks());
+        assertEquals(1, stats.pauses());
+        assertTrue(stats.throttled().compareTo(INTERVAL.multipliedBy(2)) >= 0);
+        assertEquals(Duration.ofSeconds(5), stats.maxLag());
+    }
+
+    @Test
+    public void lagIsReadAtMostOncePerInterval() throws Exception {
+        var modeller = new MysqlModeller(() -> null, false);
+        modeller.setLagThrottle(LagThrottle.of(lags(Duration.ZERO, Duration.ZERO), Duration.ofSeconds(1))
+                .withCheckInterval(Duration.ofHours(1)));
+        try (var session = modeller.openSession()) {
+            modeller.awaitReplication(session);
+            modeller.awaitReplication(session);
+            assertEquals(1, session.getThrottleStats().checks());
+        }
+    }
+
+    @Test
+    public void waitingIsBounded() {
+        var modeller = new MysqlModeller(() -> null, false);
+        modeller.setLagThrottle(LagThrottle.of(session -> Duration.ofSeconds(5), Duration.ofSeconds(1))
+                .withCheckInterval(INTERVAL).withMaxWait(Duration.ZERO));
+        assertThrows(SqlModellerException.class, () -> {
+            try (var session = modeller.openSession()) {
+                modeller.awaitReplication(session);
+            }
+        });
+    }
+
+    private static ThrottleStats await(LagThrottle throttle) throws Exception {
+        var modeller = new MysqlModeller(() -> null, false);
+        modeller.setLagThrottle(throttle.withCheckInterval(INTERVAL));
+        try (var session = modeller.openSession()) {
+            modeller.awaitReplication(session);
+            return session.getThrottleStats();
+        }
+    }
+
+    private static LagProbe lags(Duration... lags) {
+        var queue = new ArrayDeque<>(List.of(lags));
+        return session -> queue.remove();
+    }
+}
@@ -0,0 +1,58 @@
+package com.heliorm.sql;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestLockTimeoutOptions {
+
+    private final LockTimeoutOptions options = LockTimeoutOptions.defaults();
+
+    @Test
+    public void firstBackoffIsUpToTheInitialBackoff() {
+        for (int i = 0; i < 100; ++i) {
+            assertBetween(Duration.ofMillis(50), Duration.ofMillis(100), options.backoff(0));
+        }
+    }
+
+    @Test
+    public void backoffDoublesWithEachRetry() {
+        for (int i = 0; i < 100; ++i) {
+            assertBetween(Duration.ofMillis(100), Duration.ofMillis(200), options.backoff(1));
+            assertBetween(Duration.ofMillis(400), Duration.ofMillis(800), options.backoff(3));
+        }
+    }
+
+    @Test
+    public void backoffStopsAtTheMaximum() {
+        for (int i = 0; i < 100; ++i) {
+            assertBetween(Duration.ofSeconds(5), Duration.ofSeconds(10), options.backoff(7));
+            assertBetween(Duration.ofSeconds(5), Duration.ofSeconds(10), options.backoff(Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void backoffCanBeChanged() {
+        var changed = options.withBackoff(Duration.ofSeconds(1), Duration.ofSeconds(3));
+        for (int i = 0; i < 100; ++i) {
+            assertBetween(Duration.ofMillis(500), Duration.ofSeconds(1), changed.backoff(0));
+            assertBetween(Duration.ofMillis(1500), Duration.ofSeconds(3), changed.backoff(2));
+        }
+    }
+
+    @Test
+    public void invalidOptionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> options.withLockTimeout(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> options.withBackoff(Duration.ZERO, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> options.withBackoff(Duration.ofSeconds(2), Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> options.withDeadline(Duration.ofSeconds(-1)));
+    }
+
+    private static void assertBetween(Duration min, Duration max, Duration actual) {
+        assertTrue(actual.compareTo(min) >= 0 && actual.compareTo(max) <= 0,
+                String.format("%s is not between %s and %s", actual, min, max));
+    }
+}
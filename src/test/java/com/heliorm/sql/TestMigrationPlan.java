@@ -0,0 +1,159 @@
+package com.heliorm.sql;
+
+import com.heliorm.sql.mysql.MysqlModeller;
+import org.junit.jupiter.api.Test;
+
+import java.sql.JDBCType;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestMigrationPlan {
+
+    private final SqlModeller modeller = new MysqlModeller(() -> null, false);
+    private final Database db = new TestDatabase("test");
+
+    @Test
+    public void sameTableNeedsNoSteps() throws SqlModellerException {
+        var steps = plan(false, false, model(true));
+        assertTrue(steps.isEmpty());
+    }
+
+    @Test
+    public void newColumnIsAdded() throws SqlModellerException {
+        var table = model(true);
+        var weight = new TestIntegerColumn(table, "weight", JDBCType.INTEGER, true, false, false);
+        table.addColumn(weight);
+        var steps = plan(false, false, table);
+        assertEquals(List.of(new MigrationPlan.AddColumn(weight)), steps);
+    }
+
+    @Test
+    public void changedColumnIsModifiedWithoutChangingTheCurrentTable() throws SqlModellerException {
+        var current = current();
+        var table = model(false);
+        table.deleteColumn(table.getColumn("name"));
+        var name = new TestStringColumn(table, "name", JDBCType.VARCHAR, false, "nobody", false, false, 80);
+        table.addColumn(name);
+        var steps = verifier(false, false).planChanges(table, current);
+        assertEquals(1, steps.size());
+        var step = assertInstanceOf(MigrationPlan.ModifyColumn.class, steps.getFirst());
+        assertSame(current.getColumn("name"), step.current());
+        assertSame(name, step.changed());
+        assertEquals(50, ((StringColumn) current.getColumn("name")).getLength());
+    }
+
+    @Test
+    public void missingColumnAndItsIndexAreDeleted() throws SqlModellerException {
+        var current = current();
+        var table = model(false);
+        table.deleteColumn(table.getColumn("name"));
+        var steps = verifier(true, false).planChanges(table, current);
+        assertEquals(List.of(new MigrationPlan.DeleteIndex(current.getIndex("name_idx")),
+                new MigrationPlan.DeleteColumn(current.getColumn("name"))), steps);
+        assertEquals(3, current.getColumns().size());
+        assertEquals(1, current.getIndexes().size());
+    }
+
+    @Test
+    public void missingColumnIsMadeNullableWhenNotDeleted() throws SqlModellerException {
+        var current = current();
+        var table = model(false);
+        table.deleteColumn(table.getColumn("name"));
+        var steps = verifier(false, false).planChanges(table, current);
+        assertEquals(1, steps.size());
+        var step = assertInstanceOf(MigrationPlan.ModifyColumn.class, steps.getFirst());
+        assertNull(step.current());
+        assertEquals("name", step.changed().getName());
+        assertTrue(step.changed().isNullable());
+        assertEquals("nobody", step.changed().getDefault());
+        assertFalse(current.getColumn("name").isNullable());
+    }
+
+    @Test
+    public void newIndexIsAdded() throws SqlModellerException {
+        var table = model(true);
+        var index = new TestIndex(table, "id_name", false);
+        index.addColumn(table.getColumn("id"));
+        index.addColumn(table.getColumn("name"));
+        table.addIndex(index);
+        var steps = plan(false, false, table);
+        assertEquals(List.of(new MigrationPlan.AddIndex(index)), steps);
+    }
+
+    @Test
+    public void changedIndexIsModified() throws SqlModellerException {
+        var table = model(false);
+        var index = new TestIndex(table, "name_idx", false);
+        index.addColumn(table.getColumn("name"));
+        table.addIndex(index);
+        var steps = plan(false, false, table);
+        assertEquals(List.of(new MigrationPlan.ModifyIndex(index)), steps);
+    }
+
+    @Test
+    public void missingIndexIsOnlyDeletedWhenAsked() throws SqlModellerException {
+        var current = current();
+        assertTrue(verifier(false, false).planChanges(model(false), current).isEmpty());
+        assertEquals(List.of(new MigrationPlan.DeleteIndex(current.getIndex("name_idx"))),
+                verifier(false, true).planChanges(model(false), current));
+    }
+
+    @Test
+    public void planIsBuiltFromSteps() {
+        var table = model(false);
+        var plan = MigrationPlan.of(List.of(new MigrationPlan.CreateTable(table)));
+        assertEquals(List.of(new MigrationPlan.CreateTable(table)), plan.getSteps());
+        assertFalse(plan.isEmpty());
+    }
+
+    @Test
+    public void nullStepsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> MigrationPlan.of(null));
+        assertThrows(IllegalArgumentException.class, () -> MigrationPlan.of(Arrays.asList(
+                new MigrationPlan.CreateTable(model(false)), null)));
+    }
+
+    private List<MigrationPlan.Step> plan(boolean deleteMissingColumns, boolean deleteMissingIndexes, Table table)
+            throws SqlModellerException {
+        return verifier(deleteMissingColumns, deleteMissingIndexes).planChanges(table, current());
+    }
+
+    private SqlVerifier verifier(boolean deleteMissingColumns, boolean deleteMissingIndexes) {
+        return SqlVerifier.forModeller(modeller, deleteMissingColumns, deleteMissingIndexes);
+    }
+
+    private SqlTable current() throws SqlModellerException {
+        var catalog = new Catalog();
+        catalog.addColumn("Person", new Catalog.ColumnInfo("id", JDBCType.INTEGER, "INT", 10, 0,
+                false, true, null, null));
+        catalog.addColumn("Person", new Catalog.ColumnInfo("name", JDBCType.VARCHAR, "VARCHAR", 50, 0,
+                false, false, "'nobody'", null));
+        catalog.addColumn("Person", new Catalog.ColumnInfo("age", JDBCType.INTEGER, "INT", 10, 0,
+                true, false, null, null));
+        catalog.addKey("Person", "id");
+        catalog.addIndex("Person", "name_idx", "name", true);
+        return modeller.makeTable(db, "Person", catalog);
+    }
+
+    private TestTable model(boolean withIndex) {
+        var table = new TestTable(db, "Person");
+        var name = new TestStringColumn(table, "name", JDBCType.VARCHAR, false, "nobody", false, false, 50);
+        table.addColumn(new TestIntegerColumn(table, "id", JDBCType.INTEGER, false, true, true));
+        table.addColumn(name);
+        table.addColumn(new TestIntegerColumn(table, "age", JDBCType.INTEGER, true, false, false));
+        if (withIndex) {
+            var index = new TestIndex(table, "name_idx", true);
+            index.addColumn(name);
+            table.addIndex(index);
+        }
+        return table;
+    }
+}
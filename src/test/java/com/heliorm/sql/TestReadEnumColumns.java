@@ -0,0 +1,33 @@
+package com.heliorm.sql;
+
+import com.heliorm.sql.postgres.PostgresModeller;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+public class TestReadEnumColumns {
+
+    private static final List<String> COLUMNS = List.of("COLUMN_NAME", "DATA_TYPE", "TYPE_NAME", "COLUMN_SIZE",
+            "DECIMAL_DIGITS", "IS_NULLABLE", "IS_AUTOINCREMENT", "COLUMN_DEF");
+
+    @Test
+    public void varcharTypeWithoutLabelsIsNotAnEnum() throws Exception {
+        var con = new TestConnection().withResult("getColumns", COLUMNS, List.of(
+                Arrays.asList("email", String.valueOf(Types.VARCHAR), "citext", "2147483647", "0", "NO", "NO", null)));
+        var table = read(new PostgresModeller(con::connection));
+        var column = table.getColumn("email");
+        assertInstanceOf(StringColumn.class, column);
+        assertFalse(column instanceof EnumColumn);
+    }
+
+    private static Table read(SqlModeller modeller) throws Exception {
+        try (var session = modeller.openSession()) {
+            return modeller.readTable(session, new TestDatabase("test"), "Person");
+        }
+    }
+}
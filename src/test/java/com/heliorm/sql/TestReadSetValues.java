@@ -0,0 +1,31 @@
+package com.heliorm.sql;
+
+import com.heliorm.sql.mysql.MysqlModeller;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestReadSetValues {
+
+    private static final List<String> COLUMNS = List.of("COLUMN_NAME", "DATA_TYPE", "TYPE_NAME", "COLUMN_SIZE",
+            "DECIMAL_DIGITS", "IS_NULLABLE", "IS_AUTOINCREMENT", "COLUMN_DEF");
+
+    @Test
+    public void namesAreBoundAsParameters() throws Exception {
+        var con = new TestConnection()
+                .withResult("getColumns", COLUMNS, List.of(
+                        Arrays.asList("meals", String.valueOf(Types.CHAR), "SET", "12", "0", "YES", "NO", null)))
+                .withResult("COLUMN_NAME=?", List.of("COLUMN_TYPE"), List.of(List.of("set('Lunch','O''Dinner')")));
+        SqlModeller modeller = new MysqlModeller(con::connection, false);
+        Table table;
+        try (var session = modeller.openSession()) {
+            table = modeller.readTable(session, new TestDatabase("te'st"), "Person");
+        }
+        assertEquals(List.of("Lunch", "O'Dinner"), List.copyOf(((SetColumn) table.getColumn("meals")).getSetValues()));
+        assertEquals(List.of("te'st", "Person", "te'st", "Person", "meals"), con.getParameters());
+    }
+}
@@ -0,0 +1,55 @@
+package com.heliorm.sql;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestSqlModellerException {
+
+    private static final String SQL = "ALTER TABLE `test`.`Person` ADD COLUMN `age` INT";
+
+    @Test
+    public void statementDetailsAreKept() {
+        var ex = new SqlModellerException("Error", new StatementException(SQL, true,
+                new SQLException("Lock wait timeout exceeded", "HY000", 1205)));
+        assertEquals(1205, ex.getErrorCode());
+        assertEquals("HY000", ex.getSqlState());
+        assertEquals(SQL, ex.getSql());
+        assertTrue(ex.isRetryable());
+    }
+
+    @Test
+    public void sqlExceptionDetailsAreFoundInTheCauseChain() {
+        var ex = new SqlModellerException("Error", new IllegalStateException(
+                new SQLException("Duplicate column name 'age'", "42S21", 1060)));
+        assertEquals(1060, ex.getErrorCode());
+        assertEquals("42S21", ex.getSqlState());
+        assertNull(ex.getSql());
+        assertFalse(ex.isRetryable());
+    }
+
+    @Test
+    public void detailsArePassedOnByWrappingExceptions() {
+        var inner = new SqlModellerException("Error", new StatementException(SQL, false,
+                new SQLException("Duplicate column name 'age'", "42S21", 1060)));
+        var ex = new SqlModellerException("Error altering table", inner);
+        assertEquals(1060, ex.getErrorCode());
+        assertEquals("42S21", ex.getSqlState());
+        assertEquals(SQL, ex.getSql());
+        assertFalse(ex.isRetryable());
+    }
+
+    @Test
+    public void exceptionWithoutSqlCauseHasNoDetails() {
+        var ex = new SqlModellerException("Error");
+        assertEquals(0, ex.getErrorCode());
+        assertNull(ex.getSqlState());
+        assertNull(ex.getSql());
+        assertFalse(ex.isRetryable());
+    }
+}
@@ -0,0 +1,45 @@
+package com.heliorm.sql;
+
+import com.heliorm.sql.mysql.MysqlModeller;
+import org.junit.jupiter.api.Test;
+
+import java.sql.JDBCType;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestSynchronizeDatabase {
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final SqlVerifier verifier = SqlVerifier.forModeller(new MysqlModeller(() -> {
+        sessions.incrementAndGet();
+        return null;
+    }, false));
+
+    @Test
+    public void concurrencyMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> verifier.synchronizeDatabase(new TestDatabase("test"), 0));
+        assertEquals(0, sessions.get());
+    }
+
+    @Test
+    public void emptyDatabaseOnlyPreparesTables() throws SqlModellerException {
+        assertTrue(verifier.synchronizeDatabase(new TestDatabase("test"), 4).isEmpty());
+        assertEquals(1, sessions.get());
+    }
+
+    @Test
+    public void noTablesStartAfterAFailure() {
+        var db = new TestDatabase("test");
+        for (var name : new String[]{"One", "Two", "Three"}) {
+            var table = new TestTable(db, name);
+            table.addColumn(new TestIntegerColumn(table, "id", JDBCType.INTEGER, false, true, true));
+            db.getTables().add(table);
+        }
+        var ex = assertThrows(SqlModellerException.class, () -> verifier.synchronizeDatabase(db, 1));
+        assertEquals(0, ex.getSuppressed().length);
+        assertEquals(2, sessions.get());
+    }
+}
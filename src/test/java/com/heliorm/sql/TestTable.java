@@ -5,7 +5,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-class TestTable implements Table {
+public class TestTable implements Table {
 
    private final Database database;
    private final String name;
@@ -19,19 +19,19 @@ class TestTable implements Table {
         this.indexes = new HashMap<>();
     }
 
-    void addColumn(Column column) {
+    public void addColumn(Column column) {
         columns.put(column.getName(), column);
     }
 
-    void deleteColumn(Column column) {
+    public void deleteColumn(Column column) {
         columns.remove(column.getName());
     }
 
-    void addIndex(Index index) {
+    public void addIndex(Index index) {
         indexes.put(index.getName(), index);
     }
 
-    void removeIndex(Index index) {
+    public void removeIndex(Index index) {
         indexes.remove(index.getName());
     }
 
@@ -0,0 +1,112 @@
+package com.heliorm.sql;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestTableFilter {
+
+    @Test
+    public void allSelectsEveryTable() {
+        var filter = TableFilter.all();
+        assertTrue(filter.test("Person"));
+        assertTrue(filter.test(""));
+        assertEquals("", filter.toSql("TABLE_NAME"));
+        assertNull(filter.getTablePattern());
+    }
+
+    @Test
+    public void likePatternsMatchTheWholeName() {
+        var filter = TableFilter.all().include("app_%").include("log_2024__");
+        assertTrue(filter.test("app_user"));
+        assertTrue(filter.test("app_"));
+        assertTrue(filter.test("log_202401"));
+        assertFalse(filter.test("log_2024011"));
+        assertFalse(filter.test("my_app_user"));
+    }
+
+    @Test
+    public void escapedWildcardsMatchThemselves() {
+        var filter = TableFilter.all().include("a\\_b%");
+        assertTrue(filter.test("a_b"));
+        assertTrue(filter.test("a_bc"));
+        assertFalse(filter.test("axb"));
+    }
+
+    @Test
+    public void regexCharactersInLikePatternsAreLiteral() {
+        var filter = TableFilter.all().include("a.b");
+        assertTrue(filter.test("a.b"));
+        assertFalse(filter.test("axb"));
+    }
+
+    @Test
+    public void excludesWinOverIncludes() {
+        var filter = TableFilter.all().include("app_%").exclude("%_tmp").excludeRegex(".*_old");
+        assertTrue(filter.test("app_user"));
+        assertFalse(filter.test("app_user_tmp"));
+        assertFalse(filter.test("app_user_old"));
+        assertFalse(filter.test("other"));
+    }
+
+    @Test
+    public void regexesAreCombinedWithLikePatterns() {
+        var filter = TableFilter.all().include("app_%").includeRegex("log_\\d+");
+        assertTrue(filter.test("app_user"));
+        assertTrue(filter.test("log_42"));
+        assertFalse(filter.test("log_x"));
+    }
+
+    @Test
+    public void filtersAreImmutable() {
+        var filter = TableFilter.all().include("app_%");
+        filter.exclude("app_tmp");
+        assertTrue(filter.test("app_tmp"));
+        assertTrue(TableFilter.all().test("other"));
+    }
+
+    @Test
+    public void singleIncludeIsPassedAsTablePattern() {
+        assertEquals("app_%", TableFilter.all().include("app_%").exclude("%_tmp").getTablePattern());
+        assertNull(TableFilter.all().include("app_%").include("log_%").getTablePattern());
+        assertNull(TableFilter.all().include("app_%").includeRegex("log_.*").getTablePattern());
+    }
+
+    @Test
+    public void likePatternsArePushedDownAsParameters() throws SQLException {
+        var filter = TableFilter.all().include("app_%").include("log_%").exclude("%_tmp");
+        assertEquals(" AND (t.name LIKE ? OR t.name LIKE ?) AND t.name NOT LIKE ?", filter.toSql("t.name"));
+        var params = new ArrayList<String>();
+        assertEquals(5, filter.bind(statement(params), 2));
+        assertEquals(List.of("app_%", "log_%", "%_tmp"), params);
+    }
+
+    @Test
+    public void includesAreNotPushedDownWithRegexes() throws SQLException {
+        var filter = TableFilter.all().include("app_%").includeRegex("log_.*").exclude("%_tmp");
+        assertEquals(" AND t.name NOT LIKE ?", filter.toSql("t.name"));
+        var params = new ArrayList<String>();
+        assertEquals(2, filter.bind(statement(params), 1));
+        assertEquals(List.of("%_tmp"), params);
+    }
+
+    private static PreparedStatement statement(List<String> params) {
+        return (PreparedStatement) Proxy.newProxyInstance(TestTableFilter.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("setString")) {
+                        params.add((String) args[1]);
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
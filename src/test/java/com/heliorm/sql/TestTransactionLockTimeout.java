@@ -0,0 +1,89 @@
+package com.heliorm.sql;
+
+import com.heliorm.sql.mysql.MysqlModeller;
+import com.heliorm.sql.postgres.PostgresModeller;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestTransactionLockTimeout {
+
+    private static final LockTimeoutOptions OPTIONS = LockTimeoutOptions.defaults()
+            .withBackoff(Duration.ofMillis(1), Duration.ofMillis(1));
+
+    private final Table table = new TestTable(new TestDatabase("test"), "Person");
+
+    @Test
+    public void transactionIsRetriedAsAWholeOnALockTimeout() throws Exception {
+        var con = new TestConnection().withFailure("LOCK TABLES", new SQLException("Lock wait timeout", "HY000", 1205));
+        var modeller = mysql(con, OPTIONS);
+        run(modeller, "LOCK TABLES `Person` WRITE", "ALTER TABLE `Person` RENAME COLUMN `a` TO `b`");
+        assertEquals(List.of(
+                "SET SESSION lock_wait_timeout = 2", "LOCK TABLES `Person` WRITE", "ROLLBACK", "SET SESSION lock_wait_timeout = DEFAULT",
+                "SET SESSION lock_wait_timeout = 2", "LOCK TABLES `Person` WRITE", "ALTER TABLE `Person` RENAME COLUMN `a` TO `b`",
+                "COMMIT", "ROLLBACK", "SET SESSION lock_wait_timeout = DEFAULT"), con.getExecuted());
+        assertTrue(con.connection().getAutoCommit());
+    }
+
+    @Test
+    public void otherFailuresAreNotRetried() {
+        var con = new TestConnection().withFailure("LOCK TABLES", new SQLException("Access denied", "42000", 1142));
+        var modeller = mysql(con, OPTIONS);
+        var ex = assertThrows(SQLException.class, () -> run(modeller, "LOCK TABLES `Person` WRITE"));
+        assertEquals(1142, ex.getErrorCode());
+        assertEquals(List.of("SET SESSION lock_wait_timeout = 2", "LOCK TABLES `Person` WRITE", "ROLLBACK",
+                "SET SESSION lock_wait_timeout = DEFAULT"), con.getExecuted());
+    }
+
+    @Test
+    public void retryingStopsAtTheDeadline() {
+        var con = new TestConnection()
+                .withFailure("LOCK TABLES", new SQLException("Lock wait timeout", "HY000", 1205))
+                .withFailure("LOCK TABLES", new SQLException("Lock wait timeout", "HY000", 1205));
+        var modeller = mysql(con, OPTIONS.withDeadline(Duration.ZERO));
+        assertThrows(SQLException.class, () -> run(modeller, "LOCK TABLES `Person` WRITE"));
+        assertEquals(1, con.getExecuted().stream().filter(sql -> sql.startsWith("LOCK TABLES")).count());
+    }
+
+    @Test
+    public void postgresLockTimeoutLastsForTheTransaction() throws Exception {
+        var con = new TestConnection().withFailure("ALTER TABLE", new SQLException("canceling statement due to lock timeout", "55P03"));
+        var modeller = new PostgresModeller(con::connection);
+        modeller.setLockTimeoutOptions(OPTIONS);
+        run(modeller, "ALTER TABLE \"Person\" DROP COLUMN \"a\"");
+        assertEquals(List.of(
+                "SET LOCAL lock_timeout = '2000ms'", "ALTER TABLE \"Person\" DROP COLUMN \"a\"", "ROLLBACK",
+                "SET LOCAL lock_timeout = '2000ms'", "ALTER TABLE \"Person\" DROP COLUMN \"a\"", "COMMIT", "ROLLBACK"),
+                con.getExecuted());
+    }
+
+    @Test
+    public void callersTransactionIsLeftToTheCaller() throws Exception {
+        var con = new TestConnection().withAutoCommit(false);
+        var modeller = mysql(con, OPTIONS);
+        run(modeller, "ALTER TABLE `Person` RENAME COLUMN `a` TO `b`");
+        assertEquals(List.of("ALTER TABLE `Person` RENAME COLUMN `a` TO `b`"), con.getExecuted());
+    }
+
+    private void run(SqlModeller modeller, String... queries) throws SQLException, SqlModellerException {
+        try (var session = modeller.openSession()) {
+            modeller.executeTransaction(session, table, () -> {
+                for (var sql : queries) {
+                    modeller.executeUpdate(session, table, sql);
+                }
+            });
+        }
+    }
+
+    private static SqlModeller mysql(TestConnection con, LockTimeoutOptions options) {
+        var modeller = new MysqlModeller(con::connection, false);
+        modeller.setLockTimeoutOptions(options);
+        return modeller;
+    }
+}
@@ -0,0 +1,102 @@
+package com.heliorm.sql.mysql;
+
+import com.heliorm.sql.Column;
+import com.heliorm.sql.TestDatabase;
+import com.heliorm.sql.TestEnumColumn;
+import com.heliorm.sql.TestSetColumn;
+import com.heliorm.sql.TestTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestAppendOnly {
+
+    private final TestTable table = new TestTable(new TestDatabase("test"), "Person");
+
+    @Test
+    public void prefixMustBeShorterAndInOrder() {
+        assertTrue(MysqlModeller.isPrefix(values("APE"), values("APE", "BEAST")));
+        assertTrue(MysqlModeller.isPrefix(values(), values("APE")));
+        assertFalse(MysqlModeller.isPrefix(values("APE", "BEAST"), values("APE", "BEAST")));
+        assertFalse(MysqlModeller.isPrefix(values("BEAST"), values("APE", "BEAST")));
+        assertFalse(MysqlModeller.isPrefix(values("BEAST", "APE"), values("APE", "BEAST", "COW")));
+        assertFalse(MysqlModeller.isPrefix(values("APE", "BEAST"), values("APE")));
+    }
+
+    @Test
+    public void appendedEnumValuesAreAppendOnly() {
+        assertTrue(MysqlModeller.isAppendOnly(enumColumn("type", true, values("APE", "BEAST")),
+                enumColumn("type", true, values("APE", "BEAST", "COW"))));
+    }
+
+    @Test
+    public void insertedOrReorderedEnumValuesAreNot() {
+        assertFalse(MysqlModeller.isAppendOnly(enumColumn("type", true, values("APE", "COW")),
+                enumColumn("type", true, values("APE", "BEAST", "COW"))));
+        assertFalse(MysqlModeller.isAppendOnly(enumColumn("type", true, values("APE", "BEAST")),
+                enumColumn("type", true, values("BEAST", "APE", "COW"))));
+        assertFalse(MysqlModeller.isAppendOnly(enumColumn("type", true, values("APE", "BEAST")),
+                enumColumn("type", true, values("APE"))));
+    }
+
+    @Test
+    public void enumGrowingPastOneByteIsNot() {
+        assertTrue(MysqlModeller.isAppendOnly(enumColumn("type", true, numbered(200)),
+                enumColumn("type", true, numbered(255))));
+        assertFalse(MysqlModeller.isAppendOnly(enumColumn("type", true, numbered(255)),
+                enumColumn("type", true, numbered(256))));
+    }
+
+    @Test
+    public void setGrowingToMoreBytesIsNot() {
+        assertTrue(MysqlModeller.isAppendOnly(setColumn("meals", numbered(3)), setColumn("meals", numbered(8))));
+        assertFalse(MysqlModeller.isAppendOnly(setColumn("meals", numbered(8)), setColumn("meals", numbered(9))));
+        assertTrue(MysqlModeller.isAppendOnly(setColumn("meals", numbered(33)), setColumn("meals", numbered(64))));
+        assertFalse(MysqlModeller.isAppendOnly(setColumn("meals", numbered(32)), setColumn("meals", numbered(33))));
+    }
+
+    @Test
+    public void otherChangesAreNot() {
+        assertFalse(MysqlModeller.isAppendOnly(enumColumn("type", true, values("APE")),
+                enumColumn("type", false, values("APE", "BEAST"))));
+        assertFalse(MysqlModeller.isAppendOnly(enumColumn("type", true, values("APE")),
+                enumColumn("kind", true, values("APE", "BEAST"))));
+        assertFalse(MysqlModeller.isAppendOnly(enumColumn("type", true, values("APE")),
+                setColumn("type", values("APE", "BEAST"))));
+    }
+
+    @Test
+    public void reorderedValuesAreTheSameType() {
+        var modeller = new MysqlModeller(() -> null, false);
+        assertTrue(modeller.typesAreCompatible(enumColumn("type", true, values("APE", "BEAST")),
+                enumColumn("type", true, new HashSet<>(List.of("BEAST", "APE")))));
+        assertTrue(modeller.typesAreCompatible(setColumn("meals", values("LUNCH", "DINNER")),
+                setColumn("meals", values("DINNER", "LUNCH"))));
+        assertFalse(modeller.typesAreCompatible(enumColumn("type", true, values("APE", "BEAST")),
+                enumColumn("type", true, values("APE", "BEAST", "COW"))));
+    }
+
+    private Column enumColumn(String name, boolean nullable, Set<String> values) {
+        return new TestEnumColumn(table, name, nullable, values);
+    }
+
+    private Column setColumn(String name, Set<String> values) {
+        return new TestSetColumn(table, name, true, values);
+    }
+
+    private static Set<String> values(String... values) {
+        return new LinkedHashSet<>(List.of(values));
+    }
+
+    private static Set<String> numbered(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "V" + i).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+}
@@ -0,0 +1,97 @@
+package com.heliorm.sql.mysql;
+
+import com.heliorm.sql.Column;
+import com.heliorm.sql.SqlModellerException;
+import com.heliorm.sql.TestConnection;
+import com.heliorm.sql.TestDatabase;
+import com.heliorm.sql.TestIntegerColumn;
+import com.heliorm.sql.TestTable;
+import org.junit.jupiter.api.Test;
+
+import java.sql.JDBCType;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestModifyColumnQuery {
+
+    private final MysqlModeller modeller = new MysqlModeller(() -> null, false);
+    private final TestDatabase db = new TestDatabase("test");
+
+    @Test
+    public void keyColumnIsModifiedInPlaceAndKeepsAutoIncrement() throws SqlModellerException {
+        var current = column(new TestTable(db, "Person"), "id", JDBCType.INTEGER, true, true);
+        var changed = column(new TestTable(db, "Person"), "id", JDBCType.BIGINT, true, true);
+        assertEquals(List.of("ALTER TABLE `test`.`Person` MODIFY COLUMN `id` BIGINT NOT NULL AUTO_INCREMENT"),
+                modeller.makeModifyColumnQuery(current, changed));
+    }
+
+    @Test
+    public void nonKeyColumnLeavesAutoIncrementOut() throws SqlModellerException {
+        var current = column(new TestTable(db, "Person"), "seq", JDBCType.INTEGER, false, true);
+        var changed = column(new TestTable(db, "Person"), "seq", JDBCType.BIGINT, false, true);
+        assertEquals(List.of("ALTER TABLE `test`.`Person` MODIFY COLUMN `seq` BIGINT NOT NULL"),
+                modeller.makeModifyColumnQuery(current, changed));
+    }
+
+    @Test
+    public void keyIsLeftAloneWhenTheColumnStaysOutOfIt() throws SqlModellerException {
+        var table = new TestTable(db, "Person");
+        column(table, "id", JDBCType.INTEGER, true, true);
+        var current = column(new TestTable(db, "Person"), "age", JDBCType.INTEGER, false, false);
+        var changed = column(table, "age", JDBCType.BIGINT, false, false);
+        assertEquals(List.of("ALTER TABLE `test`.`Person` MODIFY COLUMN `age` BIGINT NOT NULL"),
+                modeller.makeModifyColumnQuery(current, changed));
+    }
+
+    @Test
+    public void columnJoiningTheKeyAddsIt() throws SqlModellerException {
+        var current = column(new TestTable(db, "Person"), "id", JDBCType.INTEGER, false, false);
+        var changed = column(new TestTable(db, "Person"), "id", JDBCType.INTEGER, true, false);
+        assertEquals(List.of("ALTER TABLE `test`.`Person` MODIFY COLUMN `id` INTEGER NOT NULL, ADD PRIMARY KEY (`id`)"),
+                modify(current, changed, "0"));
+    }
+
+    @Test
+    public void columnJoiningAnExistingKeyReplacesIt() throws SqlModellerException {
+        var table = new TestTable(db, "Person");
+        column(table, "id", JDBCType.INTEGER, true, false);
+        var current = column(new TestTable(db, "Person"), "code", JDBCType.INTEGER, false, false);
+        var changed = column(table, "code", JDBCType.INTEGER, true, false);
+        var sql = modify(current, changed, "1");
+        assertEquals(1, sql.size());
+        assertTrue(sql.getFirst().startsWith("ALTER TABLE `test`.`Person` MODIFY COLUMN `code` INTEGER NOT NULL, DROP PRIMARY KEY, ADD PRIMARY KEY ("), sql.getFirst());
+    }
+
+    @Test
+    public void columnLeavingTheKeyDropsIt() throws SqlModellerException {
+        var current = column(new TestTable(db, "Person"), "id", JDBCType.INTEGER, true, false);
+        var changed = column(new TestTable(db, "Person"), "id", JDBCType.INTEGER, false, false);
+        assertEquals(List.of("ALTER TABLE `test`.`Person` MODIFY COLUMN `id` INTEGER NOT NULL, DROP PRIMARY KEY"),
+                modify(current, changed, "1"));
+    }
+
+    @Test
+    public void keyIsNotDroppedWhenTheTableHasNone() throws SqlModellerException {
+        var current = column(new TestTable(db, "Person"), "id", JDBCType.INTEGER, true, false);
+        var changed = column(new TestTable(db, "Person"), "id", JDBCType.INTEGER, false, false);
+        assertEquals(List.of("ALTER TABLE `test`.`Person` MODIFY COLUMN `id` INTEGER NOT NULL"),
+                modify(current, changed, "0"));
+    }
+
+    private static List<String> modify(Column current, Column changed, String keys) throws SqlModellerException {
+        var con = new TestConnection().withResult("TABLE_CONSTRAINTS", List.of("COUNT"), List.of(List.of(keys)));
+        var modeller = new MysqlModeller(con::connection, false);
+        try (var session = modeller.openSession()) {
+            modeller.modifyColumn(session, current, changed);
+        }
+        return con.getExecuted();
+    }
+
+    private static Column column(TestTable table, String name, JDBCType type, boolean key, boolean autoIncrement) {
+        var column = new TestIntegerColumn(table, name, type, false, key, autoIncrement);
+        table.addColumn(column);
+        return column;
+    }
+}
@@ -0,0 +1,63 @@
+package com.heliorm.sql.mysql;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestServerVersion {
+
+    @Test
+    public void mysqlVersionIsTheFirstNumber() {
+        assertEquals(new ServerVersion(false, 8, 0, 35), ServerVersion.parse("MySQL", "8.0.35"));
+        assertEquals(new ServerVersion(false, 8, 0, 35), ServerVersion.parse("MySQL", "8.0.35-0ubuntu0.22.04.1"));
+    }
+
+    @Test
+    public void mariaDbVersionIsTheLastNumber() {
+        assertEquals(new ServerVersion(true, 10, 6, 12), ServerVersion.parse("MySQL", "5.5.5-10.6.12-MariaDB"));
+        assertEquals(new ServerVersion(true, 11, 2, 2), ServerVersion.parse("MariaDB", "11.2.2-MariaDB-1:11.2.2+maria~ubu2204"));
+    }
+
+    @Test
+    public void unknownVersionIsZero() {
+        assertEquals(new ServerVersion(false, 0, 0, 0), ServerVersion.parse("MySQL", "unknown"));
+    }
+
+    @Test
+    public void versionsAreComparedPartByPart() {
+        var version = ServerVersion.parse("MySQL", "8.0.12");
+        assertTrue(version.atLeast(8, 0, 12));
+        assertTrue(version.atLeast(8, 0, 3));
+        assertTrue(version.atLeast(5, 7, 40));
+        assertFalse(version.atLeast(8, 0, 13));
+        assertFalse(version.atLeast(8, 1, 0));
+    }
+
+    @Test
+    public void featuresFollowTheMysqlVersion() {
+        var old = ServerVersion.parse("MySQL", "5.7.44");
+        assertFalse(old.supportsInstant());
+        assertFalse(old.supportsRenameColumn());
+        var instant = ServerVersion.parse("MySQL", "8.0.12");
+        assertTrue(instant.supportsInstant());
+        assertTrue(instant.supportsRenameColumn());
+        assertFalse(instant.supportsInstantDropColumn());
+        assertFalse(instant.supportsNoCopy());
+        assertTrue(ServerVersion.parse("MySQL", "8.0.29").supportsInstantDropColumn());
+    }
+
+    @Test
+    public void featuresFollowTheMariaDbVersion() {
+        var old = ServerVersion.parse("MariaDB", "10.3.1-MariaDB");
+        assertFalse(old.supportsInstant());
+        assertFalse(old.supportsNoCopy());
+        var noCopy = ServerVersion.parse("MariaDB", "10.3.7-MariaDB");
+        assertTrue(noCopy.supportsInstant());
+        assertTrue(noCopy.supportsNoCopy());
+        assertFalse(noCopy.supportsInstantDropColumn());
+        assertFalse(ServerVersion.parse("MariaDB", "10.5.1-MariaDB").supportsRenameColumn());
+        assertTrue(ServerVersion.parse("MariaDB", "10.5.2-MariaDB").supportsRenameColumn());
+    }
+}
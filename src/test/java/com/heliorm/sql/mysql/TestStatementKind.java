@@ -0,0 +1,34 @@
+package com.heliorm.sql.mysql;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestStatementKind {
+
+    @Test
+    public void alterTableTakesAlgorithm() {
+        assertEquals(StatementKind.ALTER_TABLE, StatementKind.of("ALTER TABLE `test`.`Person` ADD COLUMN `age` INT"));
+    }
+
+    @Test
+    public void indexStatementsTakeAlgorithm() {
+        assertEquals(StatementKind.INDEX, StatementKind.of("CREATE INDEX `idx` on `test`.`Person` (`age`)"));
+        assertEquals(StatementKind.INDEX, StatementKind.of("CREATE UNIQUE INDEX `idx` on `test`.`Person` (`age`)"));
+        assertEquals(StatementKind.INDEX, StatementKind.of("DROP INDEX `idx` on `test`.`Person`"));
+    }
+
+    @Test
+    public void otherStatementsAreRunAsTheyAre() {
+        assertEquals(StatementKind.OTHER, StatementKind.of("CREATE TABLE `test`.`Person` (`id` INT)"));
+        assertEquals(StatementKind.OTHER, StatementKind.of("CREATE TRIGGER `Person_age_bfi` BEFORE INSERT ON `test`.`Person` FOR EACH ROW SET NEW.`age__new` = NEW.`age`"));
+        assertEquals(StatementKind.OTHER, StatementKind.of("DROP TRIGGER IF EXISTS `Person_age_bfi`"));
+        assertEquals(StatementKind.OTHER, StatementKind.of("LOCK TABLES `test`.`Person` WRITE"));
+        assertEquals(StatementKind.OTHER, StatementKind.of("DROP TABLE `test`.`Person`"));
+    }
+
+    @Test
+    public void statementsWithTheirOwnAlgorithmAreRunAsTheyAre() {
+        assertEquals(StatementKind.OTHER, StatementKind.of("ALTER TABLE `test`.`Person` MODIFY COLUMN `type` ENUM('A','B'), ALGORITHM=INSTANT"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.heliorm.sql.mysql;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestValueList {
+
+    private final MysqlModeller modeller = new MysqlModeller(() -> null, false);
+
+    @Test
+    public void valuesAreKeptInDeclarationOrder() {
+        assertEquals(List.of("COW", "APE", "BEAST"), List.copyOf(modeller.parseValueList("enum('COW','APE','BEAST')")));
+        assertEquals(List.of("LUNCH", "BREAKFAST"), List.copyOf(modeller.parseValueList("set('LUNCH','BREAKFAST')")));
+    }
+
+    @Test
+    public void escapedQuotesAndSeparatorsArePartOfTheValue() {
+        assertEquals(List.of("O'REILLY", "a,b", "(x)", "back\\slash", "it's"),
+                List.copyOf(modeller.parseValueList("enum('O''REILLY','a,b','(x)','back\\\\slash','it\\'s')")));
+    }
+
+    @Test
+    public void emptyValuesAreKept() {
+        assertEquals(List.of("", "A"), List.copyOf(modeller.parseValueList("enum('','A')")));
+    }
+
+    @Test
+    public void typeWithoutValueListHasNoValues() {
+        assertTrue(modeller.parseValueList("varchar").isEmpty());
+    }
+
+    @Test
+    public void quotedValuesParseBack() {
+        var values = List.of("APE", "O'REILLY", "back\\slash", "a,b", "");
+        var type = "enum(" + String.join(",", values.stream().map(modeller::quoteValue).toList()) + ")";
+        assertEquals(values, List.copyOf(modeller.parseValueList(type)));
+    }
+
+    @Test
+    public void quotesAndBackslashesAreEscaped() {
+        assertEquals("'O''REILLY'", modeller.quoteValue("O'REILLY"));
+        assertEquals("'back\\\\slash'", modeller.quoteValue("back\\slash"));
+    }
+}
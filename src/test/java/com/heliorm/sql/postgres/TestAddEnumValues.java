@@ -0,0 +1,60 @@
+package com.heliorm.sql.postgres;
+
+import com.heliorm.sql.EnumColumn;
+import com.heliorm.sql.TestDatabase;
+import com.heliorm.sql.TestEnumColumn;
+import com.heliorm.sql.TestTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestAddEnumValues {
+
+    private final PostgresModeller modeller = new PostgresModeller(() -> null);
+    private final TestTable table = new TestTable(new TestDatabase("test"), "Person");
+
+    @Test
+    public void valuesAtTheEndAreAppended() {
+        var column = column("APE", "BEAST", "COW");
+        assertEquals(List.of("ALTER TYPE \"Person_type\" ADD VALUE IF NOT EXISTS 'BEAST'",
+                        "ALTER TYPE \"Person_type\" ADD VALUE IF NOT EXISTS 'COW'"),
+                modeller.makeAddEnumValuesQueries(column, List.of("APE", "BEAST", "COW"), List.of("APE")));
+    }
+
+    @Test
+    public void valueAtTheStartGoesBeforeTheFirst() {
+        var column = column("APE", "BEAST");
+        assertEquals(List.of("ALTER TYPE \"Person_type\" ADD VALUE IF NOT EXISTS 'APE' BEFORE 'BEAST'"),
+                modeller.makeAddEnumValuesQueries(column, List.of("APE", "BEAST"), List.of("BEAST")));
+    }
+
+    @Test
+    public void valueInTheMiddleGoesAfterItsNeighbour() {
+        var column = column("APE", "BEAST", "COW");
+        assertEquals(List.of("ALTER TYPE \"Person_type\" ADD VALUE IF NOT EXISTS 'BEAST' AFTER 'APE'"),
+                modeller.makeAddEnumValuesQueries(column, List.of("APE", "BEAST", "COW"), List.of("APE", "COW")));
+    }
+
+    @Test
+    public void valuesAroundTheCurrentOnesArePositioned() {
+        var column = column("APE", "BEAST", "COW", "DOG", "EMU");
+        assertEquals(List.of("ALTER TYPE \"Person_type\" ADD VALUE IF NOT EXISTS 'APE' BEFORE 'BEAST'",
+                        "ALTER TYPE \"Person_type\" ADD VALUE IF NOT EXISTS 'COW' AFTER 'BEAST'",
+                        "ALTER TYPE \"Person_type\" ADD VALUE IF NOT EXISTS 'EMU'"),
+                modeller.makeAddEnumValuesQueries(column, List.of("APE", "BEAST", "COW", "DOG", "EMU"), List.of("BEAST", "DOG")));
+    }
+
+    @Test
+    public void quotesAreEscaped() {
+        var column = column("APE", "O'REILLY");
+        assertEquals(List.of("ALTER TYPE \"Person_type\" ADD VALUE IF NOT EXISTS 'O''REILLY'"),
+                modeller.makeAddEnumValuesQueries(column, List.of("APE", "O'REILLY"), List.of("APE")));
+    }
+
+    private EnumColumn column(String... values) {
+        return new TestEnumColumn(table, "type", true, new LinkedHashSet<>(List.of(values)));
+    }
+}
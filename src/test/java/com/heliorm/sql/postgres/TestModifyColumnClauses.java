@@ -0,0 +1,82 @@
+package com.heliorm.sql.postgres;
+
+import com.heliorm.sql.Column;
+import com.heliorm.sql.SqlModellerException;
+import com.heliorm.sql.TestDatabase;
+import com.heliorm.sql.TestIntegerColumn;
+import com.heliorm.sql.TestStringColumn;
+import com.heliorm.sql.TestTable;
+import org.junit.jupiter.api.Test;
+
+import java.sql.JDBCType;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestModifyColumnClauses {
+
+    private final PostgresModeller modeller = new PostgresModeller(() -> null);
+    private final TestTable table = new TestTable(new TestDatabase("test"), "Person");
+
+    @Test
+    public void unchangedColumnHasNoClauses() throws SqlModellerException {
+        assertEquals(List.of(), modeller.makeModifyColumnClauses(string(50, true, "x"), string(50, true, "x")));
+    }
+
+    @Test
+    public void nullabilityChangeOnlyChangesTheConstraint() throws SqlModellerException {
+        assertEquals(List.of("ALTER \"name\" SET NOT NULL"),
+                modeller.makeModifyColumnClauses(string(50, true, null), string(50, false, null)));
+        assertEquals(List.of("ALTER \"name\" DROP NOT NULL"),
+                modeller.makeModifyColumnClauses(string(50, false, null), string(50, true, null)));
+    }
+
+    @Test
+    public void defaultChangeOnlyChangesTheDefault() throws SqlModellerException {
+        assertEquals(List.of("ALTER \"name\" SET DEFAULT 'nobody'"),
+                modeller.makeModifyColumnClauses(string(50, true, null), string(50, true, "nobody")));
+        assertEquals(List.of("ALTER \"name\" SET DEFAULT 'O''Reilly'"),
+                modeller.makeModifyColumnClauses(string(50, true, "nobody"), string(50, true, "O'Reilly")));
+        assertEquals(List.of("ALTER \"name\" DROP DEFAULT"),
+                modeller.makeModifyColumnClauses(string(50, true, "nobody"), string(50, true, null)));
+    }
+
+    @Test
+    public void longerStringNeedsNoCast() throws SqlModellerException {
+        assertEquals(List.of("ALTER \"name\" TYPE VARCHAR(100)"),
+                modeller.makeModifyColumnClauses(string(50, true, "x"), string(100, true, "x")));
+        assertEquals(List.of("ALTER \"name\" TYPE TEXT"),
+                modeller.makeModifyColumnClauses(string(50, true, null), string(100000, true, null)));
+    }
+
+    @Test
+    public void shorterStringIsCastAndItsDefaultSetAgain() throws SqlModellerException {
+        assertEquals(List.of("ALTER \"name\" DROP DEFAULT",
+                        "ALTER \"name\" TYPE VARCHAR(10) USING(\"name\"::text::VARCHAR)",
+                        "ALTER \"name\" SET DEFAULT 'x'"),
+                modeller.makeModifyColumnClauses(string(50, true, "x"), string(10, true, "x")));
+    }
+
+    @Test
+    public void typeChangeIsCast() throws SqlModellerException {
+        assertEquals(List.of("ALTER \"age\" TYPE BIGINT USING(\"age\"::text::BIGINT)", "ALTER \"age\" SET NOT NULL"),
+                modeller.makeModifyColumnClauses(integer(JDBCType.INTEGER, true), integer(JDBCType.BIGINT, false)));
+    }
+
+    @Test
+    public void unknownCurrentColumnGetsEveryClause() throws SqlModellerException {
+        assertEquals(List.of("ALTER \"name\" DROP DEFAULT",
+                        "ALTER \"name\" TYPE VARCHAR(50) USING(\"name\"::text::VARCHAR)",
+                        "ALTER \"name\" SET NOT NULL",
+                        "ALTER \"name\" SET DEFAULT 'x'"),
+                modeller.makeModifyColumnClauses(null, string(50, false, "x")));
+    }
+
+    private Column string(int length, boolean nullable, String defaultValue) {
+        return new TestStringColumn(table, "name", JDBCType.VARCHAR, nullable, defaultValue, false, false, length);
+    }
+
+    private Column integer(JDBCType type, boolean nullable) {
+        return new TestIntegerColumn(table, "age", type, nullable, false, false);
+    }
+}